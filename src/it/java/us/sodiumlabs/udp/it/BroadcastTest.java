@@ -0,0 +1,139 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.MessageHandler;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.BroadcastResult;
+import us.sodiumlabs.udp.server.ClientSession;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BroadcastTest {
+    @Test
+    void broadcastReachesEveryClient() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19906;
+
+            final UUID firstId = UUID.randomUUID();
+            final UUID secondId = UUID.randomUUID();
+
+            final byte[] small = "state".getBytes();
+            final byte[] large = new byte[5_000];
+            new Random(22).nextBytes(large);
+
+            final BlockingQueue<byte[]> first = new LinkedBlockingQueue<>();
+            final BlockingQueue<byte[]> second = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, firstId, secondId).build();
+                 final UdpClient firstClient = ItFixture.client(port, firstId)
+                    .withMessageHandler(collectInto(first))
+                    .build();
+                 final UdpClient secondClient = ItFixture.client(port, secondId)
+                    .withMessageHandler(collectInto(second))
+                    .build()
+            ) {
+                server.initializeServer();
+                firstClient.initiateConnection();
+                secondClient.initiateConnection();
+
+                final BroadcastResult smallResult = server.broadcast(ByteBuffer.wrap(small));
+                assertEquals(2, smallResult.getSentCount(), smallResult::toString);
+                assertArrayEquals(small, first.take());
+                assertArrayEquals(small, second.take());
+
+                final BroadcastResult largeResult = server.broadcast(ByteBuffer.wrap(large));
+                assertTrue(largeResult.getFailures().isEmpty(), largeResult::toString);
+                assertArrayEquals(large, first.take());
+                assertArrayEquals(large, second.take());
+
+                assertEquals(0, firstClient.snapshotMetrics().getSignatureFailures());
+                assertTrue(server.snapshotMetrics().getPacketsOut().get(PacketType.DATA_NOACK) >= 2 + 2 * 4);
+            }
+        });
+    }
+
+    @Test
+    void reliableDataSurvivesBroadcasts() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19914;
+            final int messageCount = 200;
+
+            final UUID firstId = UUID.randomUUID();
+            final UUID secondId = UUID.randomUUID();
+
+            final BlockingQueue<byte[]> first = new LinkedBlockingQueue<>();
+            final BlockingQueue<byte[]> second = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, firstId, secondId).build();
+                 final UdpClient firstClient = ItFixture.client(port, firstId)
+                    .withMessageHandler(collectInto(first))
+                    .build();
+                 final UdpClient secondClient = ItFixture.client(port, secondId)
+                    .withMessageHandler(collectInto(second))
+                    .build()
+            ) {
+                server.initializeServer();
+                firstClient.initiateConnection();
+                // The clients' order counters start from the clock, so they are far apart.
+                TimeUnit.MILLISECONDS.sleep(20);
+                secondClient.initiateConnection();
+
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < messageCount; i++) {
+                    for(final ClientSession session : server.getSessions()) {
+                        sends.add(server.sendReliableDataAsync(
+                            ByteSource.wrap(ByteBuffer.allocate(5).put((byte) 'R').putInt(i).array()),
+                            session.getAddress()));
+                    }
+                    if(0 == i % 10) {
+                        server.broadcast(ByteBuffer.wrap(ByteBuffer.allocate(5).put((byte) 'B').putInt(i).array()));
+                    }
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+
+                for(final BlockingQueue<byte[]> received : Arrays.asList(first, second)) {
+                    final int[] deliveries = new int[messageCount];
+                    int broadcasts = 0;
+                    for(int taken = 0; taken < messageCount + messageCount / 10; taken++) {
+                        final ByteBuffer message = ByteBuffer.wrap(received.take());
+                        if('R' == message.get()) {
+                            deliveries[message.getInt()]++;
+                        } else {
+                            broadcasts++;
+                        }
+                    }
+                    for(int i = 0; i < messageCount; i++) {
+                        assertEquals(1, deliveries[i], "Reliable message " + i + " should arrive exactly once.");
+                    }
+                    assertEquals(messageCount / 10, broadcasts);
+                }
+            }
+        });
+    }
+
+    private static MessageHandler<UdpClient> collectInto(final BlockingQueue<byte[]> received) {
+        return (c, sender, message, source) -> {
+            final byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            received.add(bytes);
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ChannelReceiveTest {
+    @Test
+    void clientConnectsAndSendsThroughChannels() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19901;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withReceiveMode(ReceiveMode.DATAGRAM_CHANNEL)
+                    .withMessageHandler((s, sender, message, source) -> received.add(copy(message)))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withReceiveMode(ReceiveMode.DATAGRAM_CHANNEL)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final byte[] message = "channel".getBytes();
+                client.sendData(ByteSource.wrap(message));
+                assertArrayEquals(message, received.take());
+            }
+        });
+    }
+
+    private static byte[] copy(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,45 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoalescingTest {
+    @Test
+    void smallMessagesShareDatagrams() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19940;
+            final int messages = 200;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final CountDownLatch received = new CountDownLatch(messages);
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withMessageHandler((s, sender, message, source) -> received.countDown())
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                for(int i = 0; i < messages; i++) {
+                    client.sendCoalescedData(ByteSource.wrap(("telemetry " + i).getBytes()));
+                }
+
+                received.await();
+                assertTrue(client.snapshotMetrics().getPacketsOut().get(PacketType.DATA_NOACK) < messages / 10);
+            }
+        });
+    }
+}
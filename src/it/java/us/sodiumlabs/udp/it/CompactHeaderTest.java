@@ -0,0 +1,74 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.MetricsSnapshot;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactHeaderTest {
+    @Test
+    void compactPacketsAreDeliveredAndSmaller() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19970;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final byte[] small = "compact".getBytes();
+            final byte[] large = new byte[5_000];
+            new Random(14).nextBytes(large);
+
+            final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withCompactFormatEnabled(true)
+                    .withMessageHandler((s, sender, message, source) -> received.add(copy(message)))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withCompactFormatEnabled(true)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                client.sendData(ByteSource.wrap(small));
+                assertArrayEquals(small, received.take());
+
+                client.sendData(ByteSource.wrap(large));
+                assertArrayEquals(large, received.take());
+
+                MetricsSnapshot snapshot = server.snapshotMetrics();
+                while (snapshot.getPacketsOut().get(PacketType.PANG) < 1) {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                    snapshot = server.snapshotMetrics();
+                }
+                // ACCEPT carries the same timestamp payload as PING and PANG, in the full format.
+                final long fullSize = snapshot.getBytesOut().get(PacketType.ACCEPT);
+                assertTrue(snapshot.getBytesIn().get(PacketType.PING) / snapshot.getPacketsIn().get(PacketType.PING)
+                    < fullSize, snapshot::toString);
+                assertTrue(snapshot.getBytesOut().get(PacketType.PANG) / snapshot.getPacketsOut().get(PacketType.PANG)
+                    < fullSize, snapshot::toString);
+                assertTrue(snapshot.getSignatureFailures() == 0, snapshot::toString);
+            }
+        });
+    }
+
+    private static byte[] copy(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+}
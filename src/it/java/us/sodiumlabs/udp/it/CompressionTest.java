@@ -0,0 +1,66 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.DeflateCodec;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompressionTest {
+    @Test
+    void negotiatedCompressionShrinksPayloads() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19960;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final StringBuilder json = new StringBuilder("[");
+            for(int i = 0; i < 1_000; i++) {
+                json.append("{\"sensor\":\"temperature\",\"reading\":").append(i % 7).append("},");
+            }
+            final byte[] large = json.append("{}]").toString().getBytes();
+            final byte[] small = "{\"sensor\":\"door\"}".getBytes();
+
+            final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withPayloadCodec(new DeflateCodec())
+                    .withMessageHandler((s, sender, message, source) -> received.add(copy(message)))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withPayloadCodec(new DeflateCodec())
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                client.sendReliableData(ByteSource.wrap(large));
+                assertArrayEquals(large, received.take());
+
+                client.sendData(ByteSource.wrap(small));
+                assertArrayEquals(small, received.take());
+
+                final long dataBytes = server.snapshotMetrics().getBytesIn().get(PacketType.DATA_ACK)
+                    + server.snapshotMetrics().getBytesIn().get(PacketType.DATA_NOACK);
+                assertTrue(dataBytes < large.length / 5);
+            }
+        });
+    }
+
+    private static byte[] copy(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,65 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class FragmentationTest {
+    @Test
+    void largeMessagesAreReassembled() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19930;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final Random random = new Random(42);
+            final byte[] reliable = new byte[200_000];
+            final byte[] unreliable = new byte[5_000];
+            random.nextBytes(reliable);
+            random.nextBytes(unreliable);
+
+            final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withMessageHandler((s, sender, message, source) -> received.add(copy(message)))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                client.sendReliableData(ByteSource.wrap(reliable));
+                assertArrayEquals(reliable, received.take());
+
+                client.sendData(ByteSource.wrap(unreliable));
+                assertArrayEquals(unreliable, received.take());
+
+                // The message is returned to the budget once the handler is done with it.
+                while (0 != server.getReassembler().getBufferedBytes()) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+                assertEquals(0, server.getReassembler().getPendingCount());
+            }
+        });
+    }
+
+    private static byte[] copy(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+}
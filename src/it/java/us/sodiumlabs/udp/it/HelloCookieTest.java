@@ -0,0 +1,91 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.HelloPayload;
+import us.sodiumlabs.udp.common.MetricsSnapshot;
+import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HelloCookieTest {
+    @Test
+    void helloWithoutCookieLeavesNoState() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19904;
+
+            final UUID clientId = UUID.randomUUID();
+            final AtomicInteger keyLookups = new AtomicInteger();
+
+            try (final UdpServer server = ItFixture.server(port)
+                    .withClientKeyProvider(u -> {
+                        keyLookups.incrementAndGet();
+                        return u.equals(clientId) ? ItFixture.CLIENT_KEY : null;
+                    })
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .build();
+                 final DatagramSocket socket = new DatagramSocket()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+                assertEquals(1, server.getSessions().size());
+
+                final int lookups = keyLookups.get();
+                final long now = System.currentTimeMillis();
+                send(socket, port, hello(UUID.randomUUID(), now));
+                send(socket, port, hello(UUID.randomUUID(), now - TimeUnit.MINUTES.toMillis(5)));
+
+                final DatagramPacket reply = new DatagramPacket(new byte[1024], 1024);
+                socket.receive(reply);
+                assertTrue(reply.getLength() <= hello(clientId, now).length, "Cookies must not amplify.");
+
+                MetricsSnapshot snapshot = server.snapshotMetrics();
+                while (snapshot.getFilteredPackets() < 1) {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                    snapshot = server.snapshotMetrics();
+                }
+
+                assertEquals(2, (long) snapshot.getPacketsOut().get(PacketType.COOKIE), snapshot::toString);
+                assertEquals(1, (long) snapshot.getPacketsOut().get(PacketType.ACCEPT), snapshot::toString);
+                assertEquals(0, snapshot.getReplayedPackets(), snapshot::toString);
+                assertEquals(lookups, keyLookups.get());
+                assertEquals(1, server.getSessions().size());
+            }
+        });
+    }
+
+    private static byte[] hello(final UUID sender, final long timestampMillis) {
+        final ByteBuffer buffer = Packet.builder()
+            .withSenderId(sender)
+            .withType(PacketType.HELLO)
+            .withLength(HelloPayload.BYTE_SIZE)
+            .withCustomId(0)
+            .withOrderCount(1L)
+            .withSignature(ByteSource.wrap(new byte[32]))
+            .withPayload(HelloPayload.create(timestampMillis, null))
+            .build()
+            .toPacket();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void send(final DatagramSocket socket, final int port, final byte[] bytes) throws Exception {
+        socket.send(new DatagramPacket(bytes, bytes.length, InetAddress.getLoopbackAddress(), port));
+    }
+}
@@ -0,0 +1,150 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.ReliableChannel;
+import us.sodiumlabs.udp.common.ReorderBuffer;
+import us.sodiumlabs.udp.common.Reorderer;
+import us.sodiumlabs.udp.common.UdpMetrics;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InOrderDeliveryTest {
+    @Test
+    void messagesArriveInSendOrder() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19909;
+            final BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withMessageHandler((s, sender, message, source) -> received.add(message.getInt()))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withInOrderDelivery(true)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < 200; i++) {
+                    sends.add(client.sendReliableDataAsync(
+                        ByteSource.wrap(ByteBuffer.allocate(i % 2 == 0 ? 16 : 3_000).putInt(i).array())));
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+
+                for(int i = 0; i < 200; i++) {
+                    assertEquals(i, received.take().intValue());
+                }
+            }
+        });
+    }
+
+    @Test
+    void holeIsSkippedAfterTimeout() {
+        final UdpMetrics metrics = new UdpMetrics();
+        final List<Integer> delivered = new ArrayList<>();
+        final long timeout = TimeUnit.MILLISECONDS.toNanos(100);
+        final ReorderBuffer buffer = new ReorderBuffer(8, timeout, (m, f) -> delivered.add(m.getInt()), metrics);
+
+        final long start = System.nanoTime();
+        buffer.offer(0, message(0), 0, start);
+        buffer.offer(2, message(2), 0, start);
+        buffer.offer(3, message(3), 0, start);
+        assertEquals(Arrays.asList(0), delivered);
+
+        buffer.skipExpired(start + timeout - 1);
+        assertEquals(Arrays.asList(0), delivered);
+
+        buffer.skipExpired(start + timeout);
+        assertEquals(Arrays.asList(0, 2, 3), delivered);
+        assertFalse(buffer.offer(1, message(1), 0, start + timeout), "Late message should be dropped.");
+
+        buffer.offer(20, message(20), 0, start + timeout);
+        assertEquals(Arrays.asList(0, 2, 3, 20), delivered);
+        assertEquals(1 + 16, metrics.snapshot(0).getSkippedMessages());
+    }
+
+    @Test
+    void reliableMessageTheReceiverSkippedFailsTheSend() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19916;
+            final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+            final byte[] lost = "lost".getBytes();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withReorderer(new Reorderer(new UdpMetrics(), 16, 50, 50, TimeUnit.MILLISECONDS))
+                    .withMessageHandler((s, sender, message, source) ->
+                        received.add(StandardCharsets.UTF_8.decode(message).toString()))
+                    .build();
+                 // Loses the first message until the server has given up on it, as if the network had.
+                 final DatagramSocket socket = new DatagramSocket() {
+                     @Override
+                     public void send(final DatagramPacket packet) throws IOException {
+                         if(0 == server.snapshotMetrics().getSkippedMessages() && contains(packet, lost)) return;
+                         super.send(packet);
+                     }
+                 };
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withSocket(socket)
+                    .withReliableChannel(new ReliableChannel(256, 4, 32, 5, 20, 100, TimeUnit.MILLISECONDS))
+                    .withInOrderDelivery(true)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final CompletableFuture<Void> skipped = client.sendReliableDataAsync(ByteSource.wrap(lost));
+                client.sendReliableDataAsync(ByteSource.wrap("kept".getBytes())).get();
+                assertEquals("kept", received.take());
+
+                final ExecutionException failure = assertThrows(ExecutionException.class, skipped::get);
+                assertTrue(failure.getCause() instanceof TimeoutException);
+                assertTrue(received.isEmpty(), "The skipped message must not be delivered late.");
+            }
+        });
+    }
+
+    private static boolean contains(final DatagramPacket packet, final byte[] needle) {
+        final byte[] data = packet.getData();
+        outer:
+        for(int i = packet.getOffset(); i <= packet.getOffset() + packet.getLength() - needle.length; i++) {
+            for(int j = 0; j < needle.length; j++) {
+                if(data[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static ByteBuffer message(final int index) {
+        return (ByteBuffer) ByteBuffer.allocate(4).putInt(index).flip();
+    }
+}
@@ -0,0 +1,69 @@
+package us.sodiumlabs.udp.it;
+
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.common.BoundedDispatcher;
+import us.sodiumlabs.udp.common.ExecutorDispatcher;
+import us.sodiumlabs.udp.common.MetricsSnapshot;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.common.SheddingPolicy;
+import us.sodiumlabs.udp.common.UdpMetrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class IngressSheddingTest {
+    @Test
+    void priorityPolicyKeepsControlPackets() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final UdpMetrics metrics = new UdpMetrics();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final List<PacketType> handled = new CopyOnWriteArrayList<>();
+            final AtomicInteger released = new AtomicInteger();
+
+            try (final BoundedDispatcher dispatcher = new BoundedDispatcher(
+                    new ExecutorDispatcher(Executors.newSingleThreadExecutor()), 4, 1, SheddingPolicy.PRIORITY, metrics)
+            ) {
+                // Hold the only handler so that everything after it queues.
+                dispatcher.dispatch(0, PacketType.DATA_NOACK, () -> await(blocked), released::incrementAndGet);
+
+                for(int i = 0; i < 4; i++) {
+                    dispatcher.dispatch(i, PacketType.DATA_NOACK, () -> handled.add(PacketType.DATA_NOACK),
+                        released::incrementAndGet);
+                }
+                dispatcher.dispatch(5, PacketType.PING, () -> handled.add(PacketType.PING), released::incrementAndGet);
+                dispatcher.dispatch(6, PacketType.DISCONNECT, () -> handled.add(PacketType.DISCONNECT),
+                    released::incrementAndGet);
+                dispatcher.dispatch(7, PacketType.DATA_NOACK, () -> handled.add(PacketType.DATA_NOACK),
+                    released::incrementAndGet);
+
+                blocked.countDown();
+                while (handled.size() < 4) {
+                    Thread.sleep(10);
+                }
+
+                assertEquals(PacketType.PING, handled.get(0));
+                assertEquals(PacketType.DISCONNECT, handled.get(1));
+                assertEquals(3, released.get());
+
+                final MetricsSnapshot snapshot = metrics.snapshot(dispatcher.getQueueDepth());
+                assertEquals(3L, (long) snapshot.getShedPackets().get(PacketType.DATA_NOACK));
+                assertEquals(2L, snapshot.getEvictedPackets());
+            }
+        });
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
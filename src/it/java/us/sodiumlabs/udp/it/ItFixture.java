@@ -0,0 +1,56 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.collect.ImmutableSet;
+import us.sodiumlabs.udp.client.ImmutableUdpClient;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.PacketParser;
+import us.sodiumlabs.udp.server.ImmutableUdpServer;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The keys and builders the integration tests share. Every test still binds its own port, so tests never share a
+ * server, and each one finishes its builders with the options it is about.
+ */
+final class ItFixture {
+    static final SecretKeySpec CLIENT_KEY = new SecretKeySpec("client".getBytes(), PacketParser.HMAC_SHA_256);
+
+    static final SecretKeySpec SERVER_KEY = new SecretKeySpec("server".getBytes(), PacketParser.HMAC_SHA_256);
+
+    private ItFixture() {}
+
+    /**
+     * @return a builder for a server on the port that knows the client key for the given ids and no others.
+     */
+    static ImmutableUdpServer.Builder server(final int port, final UUID... clientIds) {
+        final Set<UUID> known = ImmutableSet.copyOf(clientIds);
+        return UdpServer.builder()
+            .withClientKeyProvider(u -> known.contains(u) ? CLIENT_KEY : null)
+            .withSecretKey(SERVER_KEY)
+            .withPort(port)
+            .withId(UUID.randomUUID());
+    }
+
+    /**
+     * @return a builder for a server on the port that has the client key for every id.
+     */
+    static ImmutableUdpServer.Builder serverForAnyClient(final int port) {
+        return server(port).withClientKeyProvider(u -> CLIENT_KEY);
+    }
+
+    /**
+     * @return a builder for a client of the server on the loopback port.
+     */
+    static ImmutableUdpClient.Builder client(final int port, final UUID clientId) {
+        return UdpClient.builder()
+            .withDestination(InetAddress.getLoopbackAddress())
+            .withPort(port)
+            .withId(clientId)
+            .withServerKey(SERVER_KEY)
+            .withSecretKey(CLIENT_KEY);
+    }
+}
@@ -0,0 +1,81 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.AimdController;
+import us.sodiumlabs.udp.common.Pacer;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PacingTest {
+    @Test
+    void burstIsSpreadAtThePacedRate() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19912;
+            final AtomicInteger received = new AtomicInteger();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withMessageHandler((s, sender, message, source) -> received.incrementAndGet())
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withPacer(Pacer.fixedRate(200_000, 10_000))
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final long start = System.nanoTime();
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < 50; i++) {
+                    sends.add(client.sendReliableDataAsync(ByteSource.wrap(new byte[1_300])));
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+                final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                assertEquals(50, received.get());
+                // 50 datagrams of 1,364 bytes, less the 10,000 byte burst, at 200,000 bytes a second.
+                assertTrue(elapsedMillis >= 250, () -> "Burst took only " + elapsedMillis + " ms.");
+                final InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+                assertEquals(200_000, client.getPacer().get().getRate(serverAddress), 0.5);
+            }
+        });
+    }
+
+    @Test
+    void aimdBacksOffOnLossAndGrowsOnAcks() {
+        final long rtt = TimeUnit.MILLISECONDS.toNanos(10);
+        long now = 0;
+        final AimdController controller = new AimdController(100_000, 10_000, 1_000_000, 1_000, now);
+
+        controller.onRtt(rtt, now);
+        controller.onLoss(now);
+        assertEquals(50_000, controller.getRate(), 0.5);
+
+        controller.onLoss(now + rtt / 2);
+        assertEquals(50_000, controller.getRate(), 0.5, "A second loss within a round trip should not count.");
+
+        now += rtt;
+        controller.onAck(1_000, rtt, now);
+        assertEquals(150_000, controller.getRate(), 0.5, "One datagram per 10 ms is 100,000 bytes a second.");
+
+        now += rtt;
+        controller.onRtt(4 * rtt, now);
+        assertTrue(controller.getRate() < 150_000, "A growing round trip time should slow the rate.");
+    }
+}
@@ -0,0 +1,91 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.PacketListener;
+import us.sodiumlabs.udp.common.PacketView;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PacketListenerTest {
+    @Test
+    void listenersReceiveEvents() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19905;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final Set<String> serverEvents = ConcurrentHashMap.newKeySet();
+            final Set<String> clientEvents = ConcurrentHashMap.newKeySet();
+            final AtomicInteger copiedPackets = new AtomicInteger();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withPacketHandler((s, p) -> copiedPackets.incrementAndGet())
+                    .addPacketListeners(new Recorder<>(serverEvents))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .addPacketListeners(new Recorder<>(clientEvents))
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+                client.sendReliableDataAsync(ByteSource.wrap("listened".getBytes())).get();
+
+                while (serverEvents.size() < 4 || clientEvents.size() < 3) {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                }
+
+                assertTrue(serverEvents.contains("connect " + clientId), serverEvents::toString);
+                assertTrue(serverEvents.contains("ping " + clientId), serverEvents::toString);
+                assertTrue(serverEvents.contains("pong " + clientId), serverEvents::toString);
+                assertTrue(serverEvents.contains("data DATA_ACK"), serverEvents::toString);
+                assertTrue(clientEvents.contains("ack ACK"), clientEvents::toString);
+                assertTrue(copiedPackets.get() > 0);
+            }
+        });
+    }
+
+    private static final class Recorder<T> implements PacketListener<T> {
+        private final Set<String> events;
+
+        private Recorder(final Set<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onConnect(final T endpoint, final UUID peerId, final InetSocketAddress source) {
+            events.add("connect " + peerId);
+        }
+
+        @Override
+        public void onPing(final T endpoint, final UUID peerId, final InetSocketAddress source) {
+            events.add("ping " + peerId);
+        }
+
+        @Override
+        public void onPong(final T endpoint, final UUID peerId, final InetSocketAddress source) {
+            events.add("pong " + peerId);
+        }
+
+        @Override
+        public void onData(final T endpoint, final PacketView packet, final InetSocketAddress source) {
+            events.add("data " + packet.getType());
+        }
+
+        @Override
+        public void onAck(final T endpoint, final PacketView packet, final InetSocketAddress source) {
+            events.add("ack " + packet.getType());
+        }
+    }
+}
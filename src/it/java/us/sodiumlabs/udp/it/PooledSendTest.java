@@ -0,0 +1,58 @@
+package us.sodiumlabs.udp.it;
+
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class PooledSendTest {
+    @Test
+    void bufferPayloadsAreSentThroughTheChannel() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19980;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withReceiveMode(ReceiveMode.DATAGRAM_CHANNEL)
+                    .withMessageHandler((s, sender, message, source) -> received.add(copy(message)))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withReceiveMode(ReceiveMode.DATAGRAM_CHANNEL)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final byte[] small = "pooled".getBytes();
+                final ByteBuffer payload = ByteBuffer.allocateDirect(small.length);
+                payload.put(small).flip();
+                client.sendData(payload);
+                assertArrayEquals(small, received.take());
+                assertEquals(small.length, payload.remaining());
+
+                final byte[] large = new byte[4_000];
+                client.sendData(ByteBuffer.wrap(large));
+                assertArrayEquals(large, received.take());
+            }
+        });
+    }
+
+    private static byte[] copy(final ByteBuffer message) {
+        final byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,90 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.common.MetricsSnapshot;
+import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.PreAuthFilter;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PreAuthFilterTest {
+    @Test
+    void junkIsDroppedBeforeVerifying() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19903;
+            final int burst = 20;
+
+            final AtomicInteger keyLookups = new AtomicInteger();
+
+            try (final UdpServer server = ItFixture.server(port)
+                    .withClientKeyProvider(u -> {
+                        keyLookups.incrementAndGet();
+                        return null;
+                    })
+                    .withPreAuthFilter(new PreAuthFilter(16, 1, burst, 16, Duration.ofMinutes(1)))
+                    .build();
+                 final DatagramSocket socket = new DatagramSocket()
+            ) {
+                server.initializeServer();
+
+                final UUID stranger = UUID.randomUUID();
+                send(socket, port, new byte[] { 1, 2, 3 });
+                send(socket, port, packet(stranger, PacketType.ACCEPT));
+                for(int i = 0; i < 5; i++) {
+                    send(socket, port, packet(stranger, PacketType.PING));
+                }
+                for(int i = 0; i < burst; i++) {
+                    send(socket, port, new byte[] { 1, 2, 3 });
+                }
+
+                MetricsSnapshot snapshot = server.snapshotMetrics();
+                while (snapshot.getFilteredPackets() + snapshot.getUnknownSenders() + snapshot.getRateLimitedPackets()
+                    < burst + 7)
+                {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                    snapshot = server.snapshotMetrics();
+                }
+
+                assertEquals(1, keyLookups.get(), snapshot::toString);
+                assertEquals(5, snapshot.getUnknownSenders(), snapshot::toString);
+                assertTrue(snapshot.getFilteredPackets() >= 2, snapshot::toString);
+                assertTrue(snapshot.getRateLimitedPackets() >= 7, snapshot::toString);
+                assertEquals(0, snapshot.getSignatureFailures(), snapshot::toString);
+            }
+        });
+    }
+
+    private static byte[] packet(final UUID sender, final PacketType type) {
+        final ByteBuffer buffer = Packet.builder()
+            .withSenderId(sender)
+            .withType(type)
+            .withLength(4)
+            .withCustomId(0)
+            .withOrderCount(1L)
+            .withSignature(ByteSource.wrap(new byte[32]))
+            .withPayload(ByteSource.wrap(new byte[4]))
+            .build()
+            .toPacket();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void send(final DatagramSocket socket, final int port, final byte[] bytes) throws Exception {
+        socket.send(new DatagramPacket(bytes, bytes.length, InetAddress.getLoopbackAddress(), port));
+    }
+}
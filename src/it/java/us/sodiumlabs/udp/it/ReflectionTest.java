@@ -0,0 +1,64 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ReflectionTest {
+    @Test
+    void reflectedDatagramDoesNotVerify() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19915;
+            final BlockingQueue<Packet> captured = new LinkedBlockingQueue<>();
+            final AtomicInteger delivered = new AtomicInteger();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withPacketHandler((s, p) -> {
+                        if(PacketType.DATA_ACK == p.getType()) captured.add(p);
+                    })
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withMessageHandler((c, sender, message, source) -> delivered.incrementAndGet())
+                    .build();
+                 final DatagramSocket reflector = new DatagramSocket()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                // DATA_ACK skips the replay pre-check, so only the signature stands between the copy and the client.
+                client.sendReliableData(ByteSource.wrap("mirror".getBytes()));
+                final Packet packet = captured.take();
+
+                final ByteBuffer datagram = ByteBuffer.allocate(packet.getLength() + 64);
+                packet.writeTo(datagram);
+                reflector.send(new DatagramPacket(datagram.array(), datagram.position(),
+                    InetAddress.getLoopbackAddress(), client.getSocket().getLocalPort()));
+
+                while (0 == client.snapshotMetrics().getSignatureFailures()) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+                assertEquals(1, client.snapshotMetrics().getSignatureFailures());
+                assertEquals(0, delivered.get());
+            }
+        });
+    }
+}
@@ -0,0 +1,104 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.MetricsSnapshot;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.common.ReliableChannel;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReliableDataTest {
+    @Test
+    void reliableDataIsAcknowledged() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19910;
+            final ConcurrentMap<String, Integer> received = new ConcurrentHashMap<>();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withMessageHandler((s, sender, message, source) ->
+                        received.merge(StandardCharsets.UTF_8.decode(message).toString(), 1, Integer::sum))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                for(int i = 0; i < 50; i++) {
+                    client.sendReliableData(ByteSource.wrap(("message " + i).getBytes()));
+                }
+
+                final InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+                while (0 != client.getReliableChannel().getOutstandingCount(serverAddress)) {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                }
+
+                // Messages are handed over before they are acknowledged, so every one is in by now.
+                assertEquals(50, received.size());
+                for(int i = 0; i < 50; i++) {
+                    assertEquals(Integer.valueOf(1), received.get("message " + i), "message " + i);
+                }
+
+                final MetricsSnapshot metrics = server.snapshotMetrics();
+                assertTrue(metrics.getPacketsIn().get(PacketType.DATA_ACK) >= 50);
+                assertTrue(metrics.getPacketsOut().get(PacketType.ACK) > 0);
+                assertEquals(0, metrics.getSignatureFailures());
+            }
+        });
+    }
+
+    @Test
+    void asyncSendsCompleteOnAckAndFailOnTimeout() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19911;
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withReliableChannel(new ReliableChannel(256, 2, 32, 5, 20, 50, TimeUnit.MILLISECONDS))
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < 50; i++) {
+                    sends.add(client.sendReliableDataAsync(ByteSource.wrap(("message " + i).getBytes())));
+                }
+                sends.add(client.sendDataAsync(ByteSource.wrap("unreliable".getBytes())));
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+                assertEquals(0, client.getReliableChannel().getOutstandingCount(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+
+                final InetSocketAddress nobody = new InetSocketAddress(InetAddress.getLoopbackAddress(), port + 1);
+                final ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> client.sendReliableDataAsync(ByteSource.wrap("lost".getBytes()), nobody).get());
+                assertTrue(failure.getCause() instanceof TimeoutException);
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ReplayTest {
+    @Test
+    void resentDatagramIsDropped() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19913;
+            final BlockingQueue<Packet> captured = new LinkedBlockingQueue<>();
+            final AtomicInteger delivered = new AtomicInteger();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withPacketHandler((s, p) -> {
+                        if(PacketType.DATA_NOACK == p.getType()) captured.add(p);
+                    })
+                    .withMessageHandler((s, sender, message, source) -> delivered.incrementAndGet())
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId).build();
+                 final DatagramSocket attacker = new DatagramSocket()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                client.sendData(ByteSource.wrap("once".getBytes()));
+                final Packet packet = captured.take();
+                while (0 == delivered.get()) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+                final long replaysBefore = server.snapshotMetrics().getReplayedPackets();
+
+                final ByteBuffer datagram = ByteBuffer.allocate(packet.getLength() + 64);
+                packet.writeTo(datagram);
+                attacker.send(new DatagramPacket(datagram.array(), datagram.position(),
+                    InetAddress.getLoopbackAddress(), port));
+
+                while (server.snapshotMetrics().getReplayedPackets() == replaysBefore) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+                assertEquals(replaysBefore + 1, server.snapshotMetrics().getReplayedPackets());
+                assertEquals(1, delivered.get());
+                assertEquals(0, captured.size());
+            }
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.Pacer;
+import us.sodiumlabs.udp.common.PacketListener;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class SessionExpiryTest {
+    @Test
+    void expiredSessionForgetsItsAddress() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19917;
+            final CountDownLatch disconnected = new CountDownLatch(1);
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withSessionTimeout(Duration.ofSeconds(1))
+                    .withSessionSweepInterval(Duration.ofMillis(20))
+                    .withPacer(Pacer.fixedRate(1_000_000, 100_000))
+                    .addPacketListeners(new PacketListener<UdpServer>() {
+                        @Override
+                        public void onDisconnect(final UdpServer s, final UUID peerId, final InetSocketAddress source) {
+                            disconnected.countDown();
+                        }
+                    })
+                    .build()
+            ) {
+                server.initializeServer();
+                final InetSocketAddress clientAddress;
+                try (final UdpClient client = ItFixture.client(port, clientId).build()
+                ) {
+                    client.initiateConnection();
+                    clientAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        client.getSocket().getLocalPort());
+                    server.sendReliableData(ByteSource.wrap("hello".getBytes()), clientAddress);
+                    assertEquals(1_000_000, server.getPacer().get().getRate(clientAddress), 0.5);
+                }
+
+                // The client went away without a DISCONNECT, so only the timeout ends its session.
+                disconnected.await();
+                assertEquals(0, server.getSessions().size());
+                assertEquals(-1, server.getPacer().get().getRate(clientAddress), 0.5);
+            }
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package us.sodiumlabs.udp.it;
+
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ShardedServerTest {
+    @Test
+    void clientsConnectToShardedServer() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19920;
+
+            final List<UdpClient> clients = new ArrayList<>();
+            try (final UdpServer server = ItFixture.serverForAnyClient(port)
+                    .withReceiveMode(ReceiveMode.DATAGRAM_CHANNEL)
+                    .withShardCount(4)
+                    .build()
+            ) {
+                server.initializeServer();
+
+                for(int i = 0; i < 8; i++) {
+                    final UdpClient client = ItFixture.client(port, UUID.randomUUID())
+                        .build();
+                    clients.add(client);
+                    client.initiateConnection();
+                }
+
+                assertEquals(8, server.getSessions().size());
+            } finally {
+                for(final UdpClient client : clients) {
+                    client.close();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.MessageHandler;
+import us.sodiumlabs.udp.common.StreamConfig;
+import us.sodiumlabs.udp.common.StreamMode;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamTest {
+    private static final int CONTROL = 1;
+
+    private static final int BULK = 2;
+
+    private static final int ORDERED = 3;
+
+    private static final List<StreamConfig> STREAMS = streams();
+
+    @Test
+    void orderedStreamDeliversInOrder() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19907;
+            final BlockingQueue<int[]> received = new LinkedBlockingQueue<>();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .addAllStreams(STREAMS)
+                    .withMessageHandler(recordStreams(received))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId).addAllStreams(STREAMS).build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < 200; i++) {
+                    sends.add(client.sendStream(ORDERED, message(i, 1_000 + i * 7)));
+                }
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+
+                for(int i = 0; i < 200; i++) {
+                    final int[] message = received.take();
+                    assertEquals(ORDERED, message[0]);
+                    assertEquals(i, message[1]);
+                }
+            }
+        });
+    }
+
+    @Test
+    void controlMessageOvertakesBulkTransfer() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19908;
+            final BlockingQueue<int[]> received = new LinkedBlockingQueue<>();
+
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .addAllStreams(STREAMS)
+                    .withMessageHandler(recordStreams(received))
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId).addAllStreams(STREAMS).build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                final int bulkCount = 300;
+                final List<CompletableFuture<Void>> sends = new ArrayList<>();
+                for(int i = 0; i < bulkCount; i++) {
+                    sends.add(client.sendStream(BULK, message(i, 4_000)));
+                }
+                sends.add(client.sendStream(CONTROL, message(0, 16)));
+                CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get();
+
+                int bulkBeforeControl = 0;
+                for(int i = 0; i <= bulkCount; i++) {
+                    final int[] message = received.take();
+                    if(CONTROL == message[0]) break;
+                    bulkBeforeControl++;
+                }
+                assertTrue(bulkBeforeControl < bulkCount / 2,
+                    () -> "Control message waited for the bulk transfer.");
+            }
+        });
+    }
+
+    private static List<StreamConfig> streams() {
+        final List<StreamConfig> streams = new ArrayList<>();
+        streams.add(StreamConfig.builder().withId(CONTROL).withMode(StreamMode.RELIABLE).withPriority(10).build());
+        streams.add(StreamConfig.builder().withId(BULK).withMode(StreamMode.RELIABLE).build());
+        streams.add(StreamConfig.builder().withId(ORDERED).withMode(StreamMode.RELIABLE_ORDERED).build());
+        return streams;
+    }
+
+    /**
+     * @return a message that starts with its index.
+     */
+    private static ByteSource message(final int index, final int size) {
+        return ByteSource.wrap(ByteBuffer.allocate(size).putInt(index).array());
+    }
+
+    /**
+     * @return a handler that records the stream and index of each message.
+     */
+    private static MessageHandler<UdpServer> recordStreams(final BlockingQueue<int[]> received) {
+        return new MessageHandler<UdpServer>() {
+            @Override
+            public void onMessage(UdpServer server, UUID senderId, ByteBuffer message, InetSocketAddress source) {
+                throw new AssertionError("Message arrived without its stream.");
+            }
+
+            @Override
+            public void onMessage(UdpServer server, UUID senderId, int streamId, ByteBuffer message,
+                                  InetSocketAddress source) {
+                received.add(new int[] { streamId, message.getInt() });
+            }
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package us.sodiumlabs.udp.it;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.ThreadMode;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadTest {
+    @Test
+    void blockingHandlersDoNotHoldUpEachOther() {
+        assumeTrue(ThreadMode.VIRTUAL.isSupported(), "Virtual threads need Java 21.");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19990;
+            final int messages = 200;
+
+            final UUID clientId = UUID.randomUUID();
+
+            final CountDownLatch handled = new CountDownLatch(messages);
+
+            try (final UdpServer server = ItFixture.server(port, clientId)
+                    .withThreadMode(ThreadMode.VIRTUAL)
+                    .withMessageHandler((s, sender, message, source) -> {
+                        try {
+                            // Stands in for a blocking lookup.
+                            TimeUnit.MILLISECONDS.sleep(500);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        handled.countDown();
+                    })
+                    .build();
+                 final UdpClient client = ItFixture.client(port, clientId)
+                    .withThreadMode(ThreadMode.VIRTUAL)
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+
+                for(int i = 0; i < messages; i++) {
+                    client.sendData(ByteSource.wrap(("message " + i).getBytes()));
+                }
+
+                // Two platform handler threads would need 50 seconds.
+                handled.await();
+            }
+        });
+    }
+}
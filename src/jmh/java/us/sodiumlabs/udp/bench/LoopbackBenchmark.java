@@ -0,0 +1,104 @@
+package us.sodiumlabs.udp.bench;
+
+import com.google.common.io.ByteSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.common.PacketParser;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.common.ReliableChannel;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a DATA_ACK round trip over loopback: the client sends, the server acknowledges, and the client sees its
+ * window drain. Acknowledgements are not delayed, so this is the latency of a single exchange.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoopbackBenchmark {
+    private static final int PORT = 19950;
+
+    @Param({"DATAGRAM_SOCKET", "DATAGRAM_CHANNEL"})
+    public ReceiveMode receiveMode;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private UdpServer server;
+
+    private UdpClient client;
+
+    private InetSocketAddress serverAddress;
+
+    private ByteSource payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        final UUID clientId = UUID.randomUUID();
+        final SecretKeySpec clientKey = new SecretKeySpec("client".getBytes(), PacketParser.HMAC_SHA_256);
+        final SecretKeySpec serverKey = new SecretKeySpec("server".getBytes(), PacketParser.HMAC_SHA_256);
+
+        server = UdpServer.builder()
+            .withClientKeyProvider(u -> clientKey)
+            .withSecretKey(serverKey)
+            .withPort(PORT)
+            .withId(UUID.randomUUID())
+            .withReceiveMode(receiveMode)
+            .withReliableChannel(immediateAcks())
+            .build();
+        server.initializeServer();
+
+        client = UdpClient.builder()
+            .withDestination(InetAddress.getLoopbackAddress())
+            .withPort(PORT)
+            .withId(clientId)
+            .withServerKey(serverKey)
+            .withSecretKey(clientKey)
+            .withReceiveMode(receiveMode)
+            .withReliableChannel(immediateAcks())
+            .build();
+        client.initiateConnection();
+
+        serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT);
+        payload = ByteSource.wrap(new byte[payloadSize]);
+    }
+
+    private static ReliableChannel immediateAcks() {
+        return new ReliableChannel(256, 8, 1, 1, 20, 2_000, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void reliableRoundTrip() throws IOException {
+        client.sendReliableData(payload);
+        while (0 != client.getReliableChannel().getOutstandingCount(serverAddress)) {
+            Thread.yield();
+        }
+    }
+}
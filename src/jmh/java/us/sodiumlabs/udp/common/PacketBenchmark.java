@@ -0,0 +1,124 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.io.ByteSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Benchmarks the packet encode, decode and signing paths across payload sizes. Run with the GC profiler to see the
+ * allocation rate of each path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketBenchmark {
+    @Param({"16", "512", "1400", "8192", "65000"})
+    public int payloadSize;
+
+    private PacketParser packetParser;
+
+    private UUID id;
+
+    private InetSocketAddress destination;
+
+    private SecretKeySpec key;
+
+    private Function<UUID, SecretKeySpec> keyProvider;
+
+    private ByteSource payload;
+
+    private ByteSource signable;
+
+    private Packet packet;
+
+    private ByteBuffer heapPacket;
+
+    private ByteBuffer directPacket;
+
+    private ByteBuffer directPayload;
+
+    private ByteBuffer sendBuffer;
+
+    @Setup
+    public void setUp() {
+        packetParser = new PacketParser(LoggerFactory.getLogger(PacketBenchmark.class));
+        id = UUID.randomUUID();
+        destination = new InetSocketAddress(InetAddress.getLoopbackAddress(), 19951);
+        key = new SecretKeySpec("benchmark".getBytes(), PacketParser.HMAC_SHA_256);
+        keyProvider = u -> key;
+
+        final byte[] bytes = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(bytes);
+        payload = ByteSource.wrap(bytes);
+        signable = ByteSource.wrap(new byte[Packet.LOWER_HEADER_BYTE_SIZE + payloadSize]);
+
+        packet = packetParser.createPacket(PacketType.DATA_NOACK, id, destination, payload, key);
+        heapPacket = packet.toPacket();
+        directPacket = ByteBuffer.allocateDirect(heapPacket.remaining());
+        directPacket.put(heapPacket.duplicate());
+        directPacket.flip();
+
+        directPayload = ByteBuffer.allocateDirect(payloadSize);
+        directPayload.put(bytes);
+        directPayload.flip();
+        sendBuffer = ByteBuffer.allocateDirect(Packet.HEADER_BYTE_SIZE + payloadSize);
+    }
+
+    @Benchmark
+    public Packet createPacket() {
+        return packetParser.createPacket(PacketType.DATA_NOACK, id, destination, payload, key);
+    }
+
+    @Benchmark
+    public ByteBuffer toPacket() {
+        return packet.toPacket();
+    }
+
+    @Benchmark
+    public ByteBuffer writePacket() {
+        sendBuffer.clear();
+        packetParser.writePacket(sendBuffer, PacketType.DATA_NOACK, id, packetParser.nextOrderCount(destination), 0, 0,
+            directPayload, key);
+        return sendBuffer;
+    }
+
+    @Benchmark
+    public Packet readPacket() {
+        return packetParser.parsePacket(heapPacket.duplicate(), keyProvider);
+    }
+
+    @Benchmark
+    public PacketView parsePacketView() {
+        return packetParser.parsePacketView(directPacket.duplicate(), keyProvider);
+    }
+
+    @Benchmark
+    public ByteSource signPayload() throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return packetParser.signPayload(id, signable, key);
+    }
+}
@@ -1,8 +1,17 @@
 package us.sodiumlabs.udp.client;
 
+import com.google.common.io.ByteSource;
 import org.immutables.value.Value;
+import us.sodiumlabs.udp.common.CompactHeader;
+import us.sodiumlabs.udp.common.CompactSession;
+import us.sodiumlabs.udp.common.HelloPayload;
 import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketRouter;
 import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.common.PacketView;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.common.ReplayWindow;
+import us.sodiumlabs.udp.common.RttHistogram;
 import us.sodiumlabs.udp.common.UdpCommon;
 import us.sodiumlabs.udp.immutables.Style;
 
@@ -10,10 +19,13 @@ import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Objects.requireNonNull;
 
@@ -24,18 +36,47 @@ public abstract class UdpClient
 {
     public abstract SecretKeySpec getServerKey();
 
+    /**
+     * Reads through the socket time out after a second, so that a handshake with a server that never answers fails.
+     */
     @Value.Default
     public DatagramSocket getSocket() {
         try {
-            final DatagramSocket socket = new DatagramSocket();
+            final DatagramSocket socket = ReceiveMode.DATAGRAM_CHANNEL == getReceiveMode()
+                ? DatagramChannel.open().bind(null).socket()
+                : new DatagramSocket();
             socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(1));
-            return new DatagramSocket();
-        } catch (SocketException e) {
+            return socket;
+        } catch (IOException e) {
             throw new RuntimeException("Unable to create socket.", e);
         }
     }
 
-    private AtomicBoolean initiated = new AtomicBoolean(false);
+    /**
+     * How many cookies the client echoes before giving up on the handshake. More than one is only needed when a cookie
+     * expires on its way back to the server.
+     */
+    private static final int MAX_COOKIE_ROUNDS = 2;
+
+    private final Connection connection = new Connection();
+
+    private final ReplayWindow serverReplayWindow = new ReplayWindow();
+
+    /**
+     * Broadcasts are numbered apart from the server's other packets to this client.
+     */
+    private final ReplayWindow broadcastReplayWindow = new ReplayWindow();
+
+    private final PacketRouter<UdpClient> router = PacketRouter.<UdpClient>builder()
+        .withRoute(PacketType.PANG, (client, packet, source) -> onPang(packet, source))
+        .withRoute(PacketType.REJECT, (client, packet, source) -> fireDisconnect(packet.getSenderId(), source))
+        .withRoute(PacketType.DATA_ACK, (client, packet, source) -> {
+            if(!onReliableDataPacket(packet, source)) serverReplayWindow.unmark(packet.getOrderCount());
+        })
+        .withRoute(PacketType.DATA_NOACK, (client, packet, source) -> onDataPacket(packet, source))
+        .withRoute(PacketType.ACK, (client, packet, source) -> onAckPacket(packet, source))
+        .withRoute(PacketType.BAD_ACK, (client, packet, source) -> onBadAckPacket(packet, source))
+        .build();
 
     // Receive packets
     private Packet receivePacket() {
@@ -49,34 +90,111 @@ public abstract class UdpClient
         }
     }
 
-    protected void handlePacket(final DatagramPacket packet) {
+    protected void handlePacket(final ByteBuffer packet, final InetSocketAddress source) {
         try {
-            final Packet parsedPacket = getPacketParser().parsePacket(ByteBuffer.wrap(packet.getData()), id -> getServerKey());
+            final PacketView parsedPacket = wrapPacket(packet, source);
+            final ReplayWindow replayWindow = 0 != (parsedPacket.getFlags() & Packet.FLAG_BROADCAST)
+                ? broadcastReplayWindow
+                : serverReplayWindow;
+
+            // A repeated DATA_ACK is still verified and acknowledged, since its ACK may have been the packet lost.
+            if(PacketType.DATA_ACK != parsedPacket.getType()
+                && ReplayWindow.Result.ACCEPTED != replayWindow.check(parsedPacket.getOrderCount()))
+            {
+                getMetrics().recordReplay();
+                return;
+            }
+
+            if(!getPacketParser().isSignatureValid(parsedPacket, id -> getServerKey())) {
+                getMetrics().recordSignatureFailure();
+                getLogger().debug("Dropped packet with an invalid signature.");
+                if(PacketType.DATA_ACK == parsedPacket.getType() && getServerAddress().equals(source)) {
+                    getReliableChannel().sendBadAck(parsedPacket, source);
+                }
+                return;
+            }
 
             if(!parsedPacket.getType().isSentFromServer()) {
                 if(getLogger().isDebugEnabled()) {
-                    getLogger().debug(
-                        String.format("Received type that is not handled by the server [%s].", parsedPacket.getType()));
+                    getLogger().debug("Received type that is not handled by the client [{}].", parsedPacket.getType());
                 }
                 return;
             }
 
-            if(PacketType.PANG == parsedPacket.getType()) {
-                sendPongPacket();
-                // TODO: add listener event here.
-                getLogger().trace("Client has received pang from server.");
+            final ReplayWindow.Result replay = replayWindow.update(parsedPacket.getOrderCount());
+            if(ReplayWindow.Result.ACCEPTED != replay) {
+                getMetrics().recordReplay();
+                // Only a duplicate is known to have been delivered, so only a duplicate is acknowledged again.
+                if(PacketType.DATA_ACK == parsedPacket.getType() && ReplayWindow.Result.DUPLICATE == replay) {
+                    getReliableChannel().onData(parsedPacket, source);
+                }
+                return;
             }
+
+            notifyPacketHandler(parsedPacket);
+            router.route(this, parsedPacket, source);
         } catch (IOException | RuntimeException e) {
+            getMetrics().recordHandlerFailure();
             if(getLogger().isDebugEnabled()) getLogger().debug("Failed to handle packet.", e);
         }
     }
 
+    private void onPang(final PacketView packet, final InetSocketAddress source) throws IOException {
+        recordPang();
+        sendPongPacket();
+        getLogger().trace("Client has received pang from server.");
+        firePong(packet.getSenderId(), source);
+    }
+
+    private void recordPang() {
+        final long sentNanos = connection.pingSentNanos.getAndSet(0);
+        if(0 == sentNanos) return;
+
+        final long rttNanos = System.nanoTime() - sentNanos;
+        final RttHistogram histogram = connection.serverRtt;
+        if(null != histogram) histogram.record(rttNanos);
+        onRttSample(getServerAddress(), rttNanos);
+    }
+
     // Send packets
-    private void sendHelloPacket() throws IOException {
-        sendTimestampPacket(PacketType.HELLO, getDestination(), getPort());
+    public void sendData(final ByteSource payload) throws IOException {
+        sendData(payload, getServerAddress());
+    }
+
+    public void sendData(final ByteBuffer payload) throws IOException {
+        sendData(payload, getServerAddress());
+    }
+
+    public void sendReliableData(final ByteSource payload) throws IOException {
+        sendReliableData(payload, getServerAddress());
+    }
+
+    public CompletableFuture<Void> sendDataAsync(final ByteSource payload) {
+        return sendDataAsync(payload, getServerAddress());
+    }
+
+    public CompletableFuture<Void> sendReliableDataAsync(final ByteSource payload) {
+        return sendReliableDataAsync(payload, getServerAddress());
+    }
+
+    public void sendCoalescedData(final ByteSource payload) throws IOException {
+        sendCoalescedData(payload, getServerAddress());
+    }
+
+    public CompletableFuture<Void> sendStream(final int streamId, final ByteSource payload) {
+        return sendStream(streamId, payload, getServerAddress());
+    }
+
+    /**
+     * @param cookie the cookie from the server's last COOKIE packet, or null if there is none yet.
+     */
+    private void sendHelloPacket(final long orderCount, final byte[] cookie) throws IOException {
+        sendControlPacket(PacketType.HELLO, getServerAddress(), getCapabilities(), orderCount,
+            HelloPayload.create(System.currentTimeMillis(), cookie));
     }
 
     private void sendPingPacket() throws IOException {
+        connection.pingSentNanos.set(System.nanoTime());
         sendTimestampPacket(PacketType.PING, getDestination(), getPort());
     }
 
@@ -84,16 +202,26 @@ public abstract class UdpClient
         sendTimestampPacket(PacketType.PONG, getDestination(), getPort());
     }
 
+    private InetSocketAddress getServerAddress() {
+        return new InetSocketAddress(getDestination(), getPort());
+    }
+
     // Initialization and closing.
     public synchronized void initiateConnection() throws IOException {
-        if(initiated.get()) throw new RuntimeException("Already initiated.");
+        if(connection.initiated.get()) throw new RuntimeException("Already initiated.");
 
         getLogger().info("Connecting to server...");
-        // Send HELLO packet.
-        sendHelloPacket();
+        // Send HELLO packet, and again with the cookie if the server answers with one.
+        long helloOrderCount = reserveOrderCount(getServerAddress());
+        sendHelloPacket(helloOrderCount, null);
 
         // Receive ACCEPT or REJECT packet.
-        final Packet reply = receivePacket();
+        Packet reply = receivePacket();
+        for(int i = 0; PacketType.COOKIE == reply.getType() && i < MAX_COOKIE_ROUNDS; i++) {
+            helloOrderCount = reserveOrderCount(getServerAddress());
+            sendHelloPacket(helloOrderCount, reply.getPayload().read());
+            reply = receivePacket();
+        }
 
         if(PacketType.ACCEPT != reply.getType()) {
             throw new RuntimeException(
@@ -102,14 +230,35 @@ public abstract class UdpClient
 
         getLogger().info("Connected!");
 
-        // TODO: Initialize read thread.
-        new Thread(getReaderThreadProvider().apply(this), "ClientReader").start();
+        connection.serverRtt = getMetrics().registerPeer(reply.getSenderId());
+        serverReplayWindow.startAt(reply.getOrderCount());
+        final ByteBuffer acceptPayload = ByteBuffer.wrap(reply.getPayload().read());
+        broadcastReplayWindow.startAt(acceptPayload.getLong() - 1);
+        if(0 != (agreeCapabilities(getServerAddress(), reply.getCustomId()) & CompactHeader.CAPABILITY)
+            && acceptPayload.remaining() >= 4)
+        {
+            agreeCompactSession(getServerAddress(), new CompactSession(acceptPayload.getInt(),
+                reply.getSenderId(), helloOrderCount, reply.getOrderCount()));
+        }
+
+        getReliableChannel().start(this);
+        getCoalescer().start(this);
+        getStreamScheduler().start(this);
+        getAsyncWriter().start(this);
+        getPacer().ifPresent(p -> p.start(this));
+        getDispatcher().start(this);
+        getReorderer().start(this);
+        getReassembler().start(this);
 
-        // TODO: Initialize ping thread.
-        new Thread(new PingThread(this), "ClientPingThread").start();
+        startThread(getReaderThreadProvider().apply(this), "ClientReader");
 
-        initiated.set(true);
+        final PingThread pingThread = new PingThread(this);
+        connection.pingThread = pingThread;
+        pingThread.thread = startThread(pingThread, "ClientPingThread");
+
+        connection.initiated.set(true);
         getLogger().info("Initialization completed!");
+        fireConnect(reply.getSenderId(), getServerAddress());
     }
 
     public static class PingThread implements Runnable, AutoCloseable {
@@ -121,9 +270,13 @@ public abstract class UdpClient
             this.client = requireNonNull(client);
         }
 
+        private volatile Thread thread;
+
         @Override
-        public void close() throws Exception {
+        public void close() {
             open.set(false);
+            final Thread running = thread;
+            if(null != running) running.interrupt();
         }
 
         @Override
@@ -133,6 +286,7 @@ public abstract class UdpClient
                     TimeUnit.MILLISECONDS.sleep(500);
                 } catch (final InterruptedException e) {
                     if (client.getLogger().isTraceEnabled()) client.getLogger().trace("Ping thread interrupted.", e);
+                    continue;
                 }
 
                 try {
@@ -144,6 +298,27 @@ public abstract class UdpClient
         }
     }
 
+    /**
+     * The state of the connection to the server. It is kept out of the value type's own fields, which Immutables
+     * expects to be the configured attributes only.
+     */
+    private static final class Connection {
+        private final AtomicBoolean initiated = new AtomicBoolean(false);
+
+        private final AtomicLong pingSentNanos = new AtomicLong();
+
+        private volatile RttHistogram serverRtt;
+
+        private volatile PingThread pingThread;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final PingThread ping = connection.pingThread;
+        if(null != ping) ping.close();
+        super.close();
+    }
+
     public static ImmutableUdpClient.Builder builder() {
         return ImmutableUdpClient.builder();
     }
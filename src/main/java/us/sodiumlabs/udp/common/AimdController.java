@@ -0,0 +1,111 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease on the sending rate.
+ *
+ * While data is being acknowledged, the rate grows by one datagram per round trip, at most once per round trip. A loss
+ * halves it, and a round trip time that has grown well past the lowest seen, which means a queue is building up on the
+ * path, cuts it by a smaller factor; either happens at most once per round trip, so a burst of losses counts once. The
+ * rate is kept between its minimum and maximum.
+ */
+public class AimdController implements CongestionController {
+    private static final double LOSS_DECREASE = 0.5;
+
+    private static final double DELAY_DECREASE = 0.85;
+
+    private static final long MIN_QUEUE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final long INITIAL_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long MIN_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final double minRate;
+
+    private final double maxRate;
+
+    private final int datagramBytes;
+
+    private double rate;
+
+    private long smoothedRttNanos = -1;
+
+    private long minRttNanos = Long.MAX_VALUE;
+
+    private long lastIncreaseNanos;
+
+    private long lastDecreaseNanos;
+
+    private boolean decreased;
+
+    /**
+     * @param initialRate   the rate to start at, in bytes per second.
+     * @param datagramBytes how much the rate grows per round trip, as bytes per round trip.
+     */
+    public AimdController(
+        final double initialRate,
+        final double minRate,
+        final double maxRate,
+        final int datagramBytes,
+        final long nowNanos
+    ) {
+        Preconditions.checkArgument(minRate > 0, "Minimum rate must be positive.");
+        Preconditions.checkArgument(minRate <= initialRate && initialRate <= maxRate,
+            "Initial rate must be between the minimum and maximum.");
+        Preconditions.checkArgument(datagramBytes > 0, "Datagrams must have some size.");
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.datagramBytes = datagramBytes;
+        this.rate = initialRate;
+        this.lastIncreaseNanos = nowNanos;
+    }
+
+    @Override
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    @Override
+    public synchronized void onAck(final int bytes, final long rttNanos, final long nowNanos) {
+        if(rttNanos >= 0) sample(rttNanos, nowNanos);
+
+        final long rtt = roundTrip();
+        if(nowNanos - lastIncreaseNanos < rtt) return;
+        lastIncreaseNanos = nowNanos;
+        rate = Math.min(maxRate, rate + datagramBytes * (double) TimeUnit.SECONDS.toNanos(1) / rtt);
+    }
+
+    @Override
+    public synchronized void onRtt(final long rttNanos, final long nowNanos) {
+        sample(rttNanos, nowNanos);
+    }
+
+    @Override
+    public synchronized void onLoss(final long nowNanos) {
+        decrease(LOSS_DECREASE, nowNanos);
+    }
+
+    private void sample(final long rttNanos, final long nowNanos) {
+        if(rttNanos < 0) return;
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+        smoothedRttNanos = smoothedRttNanos < 0 ? rttNanos : smoothedRttNanos + ((rttNanos - smoothedRttNanos) >> 3);
+
+        final long queueDelay = rttNanos - minRttNanos;
+        if(queueDelay > minRttNanos && queueDelay > MIN_QUEUE_DELAY_NANOS) decrease(DELAY_DECREASE, nowNanos);
+    }
+
+    private void decrease(final double factor, final long nowNanos) {
+        if(decreased && nowNanos - lastDecreaseNanos < roundTrip()) return;
+        decreased = true;
+        lastDecreaseNanos = nowNanos;
+        lastIncreaseNanos = nowNanos;
+        rate = Math.max(minRate, rate * factor);
+    }
+
+    private long roundTrip() {
+        return smoothedRttNanos < 0 ? INITIAL_RTT_NANOS : Math.max(MIN_RTT_NANOS, smoothedRttNanos);
+    }
+}
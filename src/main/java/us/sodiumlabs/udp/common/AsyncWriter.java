@@ -0,0 +1,172 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes queued sends on a single thread, so that callers never block on the socket.
+ *
+ * Each send returns a future that completes once the send has finished: when the datagram is written for a DATA_NOACK
+ * send, or when the peer acknowledges it for a DATA_ACK send. Sends that are still queued when the timeout runs out
+ * fail with a {@link TimeoutException} right then, and are skipped once they reach the writer. Sends that do not fit
+ * in the queue fail with a {@link RejectedExecutionException}.
+ *
+ * Nothing is started until the first send is queued. The writer and timeout threads are of the owner's thread mode
+ * once the writer has been {@link #start(UdpCommon) started}, and platform threads otherwise.
+ */
+public class AsyncWriter implements AutoCloseable {
+    private final int maxQueuedSends;
+
+    private final long timeoutNanos;
+
+    private volatile ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    private ThreadPoolExecutor writerThread;
+
+    private ScheduledThreadPoolExecutor timeoutThread;
+
+    private boolean closed;
+
+    /**
+     * @param maxQueuedSends how many sends may wait to be written.
+     * @param timeout        how long a send may wait to be written.
+     */
+    public AsyncWriter(final int maxQueuedSends, final long timeout, final TimeUnit unit) {
+        Preconditions.checkArgument(maxQueuedSends > 0, "Queue must hold at least one send.");
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive.");
+        this.maxQueuedSends = maxQueuedSends;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public static AsyncWriter withDefaults() {
+        return new AsyncWriter(4_096, 5, TimeUnit.SECONDS);
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.threadMode = owner.getThreadMode();
+    }
+
+    /**
+     * Queues a send.
+     *
+     * @return a future that completes along with the future the send returns, or fails if the send throws.
+     */
+    public CompletableFuture<Void> submit(final Send send) {
+        final Task task = new Task(send, System.nanoTime() + timeoutNanos);
+        try {
+            final ThreadPoolExecutor writer = writerThread();
+            task.timeout = timeoutThread.schedule(task::expire, timeoutNanos, TimeUnit.NANOSECONDS);
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.fail(e);
+        }
+        return task.result;
+    }
+
+    public synchronized int getQueuedCount() {
+        return null == writerThread ? 0 : writerThread.getQueue().size();
+    }
+
+    private synchronized ThreadPoolExecutor writerThread() {
+        if(closed) throw new RejectedExecutionException("Writer is closed.");
+        if(null == writerThread) {
+            writerThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.NANOSECONDS,
+                new ArrayBlockingQueue<>(maxQueuedSends), r -> threadMode.newDaemonThread(r, "UdpWriter"));
+            timeoutThread = new ScheduledThreadPoolExecutor(1, r -> threadMode.newDaemonThread(r, "UdpWriterTimeout"));
+            timeoutThread.setRemoveOnCancelPolicy(true);
+        }
+        return writerThread;
+    }
+
+    /**
+     * Stops the writer. Sends that have not been written yet fail.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if(null == writerThread) return;
+
+        timeoutThread.shutdownNow();
+        final List<Runnable> unsent = writerThread.shutdownNow();
+        final RejectedExecutionException reason = new RejectedExecutionException("Writer is closed.");
+        for(final Runnable task : unsent) {
+            ((Task) task).fail(reason);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Send {
+        /**
+         * @return a future that completes once the send has finished.
+         */
+        CompletableFuture<Void> run() throws IOException;
+    }
+
+    private final class Task implements Runnable {
+        private final Send send;
+
+        private final long deadlineNanos;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        /**
+         * Set by whichever of the writer and the timeout gets to the send first.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        private volatile ScheduledFuture<?> timeout;
+
+        private Task(final Send send, final long deadlineNanos) {
+            this.send = send;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void expire() {
+            fail(new TimeoutException("Send waited too long to be written."));
+        }
+
+        private void fail(final Throwable reason) {
+            if(!claimed.compareAndSet(false, true)) return;
+            cancelTimeout();
+            result.completeExceptionally(reason);
+        }
+
+        private void cancelTimeout() {
+            final ScheduledFuture<?> scheduled = timeout;
+            if(null != scheduled) scheduled.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            if(System.nanoTime() - deadlineNanos > 0) {
+                expire();
+                return;
+            }
+            if(!claimed.compareAndSet(false, true)) return;
+            cancelTimeout();
+
+            try {
+                send.run().whenComplete((ignored, failure) -> {
+                    if(null == failure) {
+                        result.complete(null);
+                    } else {
+                        result.completeExceptionally(failure);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Puts a bounded queue in front of another dispatcher, so that a traffic spike sheds datagrams instead of queueing them
+ * without limit.
+ *
+ * At most {@code maxRunning} tasks are handed to the delegate at a time; the rest wait here, and the next one is handed
+ * over as each task finishes. Once {@code maxQueued} tasks are waiting, the {@link SheddingPolicy} picks one to drop.
+ * A dropped task never runs; its shed action runs instead, so that a pooled buffer can be returned. Every drop is
+ * counted in {@link UdpMetrics#recordShed(PacketType, boolean)}.
+ */
+public class BoundedDispatcher implements Dispatcher {
+    static final int PRIORITY_LEVELS = 5;
+
+    private static final Runnable NOTHING = () -> {};
+
+    private final Dispatcher delegate;
+
+    private final int maxQueued;
+
+    private final int maxRunning;
+
+    private final SheddingPolicy policy;
+
+    private final UdpMetrics metrics;
+
+    private final ArrayDeque<Entry>[] waiting;
+
+    private int queued;
+
+    private int running;
+
+    private boolean closed;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BoundedDispatcher(
+        final Dispatcher delegate,
+        final int maxQueued,
+        final int maxRunning,
+        final SheddingPolicy policy,
+        final UdpMetrics metrics
+    ) {
+        Preconditions.checkArgument(maxQueued > 0, "Queue must hold at least one task.");
+        Preconditions.checkArgument(maxRunning > 0, "At least one task must be able to run.");
+        this.delegate = requireNonNull(delegate, "delegate");
+        this.maxQueued = maxQueued;
+        this.maxRunning = maxRunning;
+        this.policy = requireNonNull(policy, "policy");
+        this.metrics = requireNonNull(metrics, "metrics");
+
+        this.waiting = new ArrayDeque[SheddingPolicy.PRIORITY == policy ? PRIORITY_LEVELS : 1];
+        for(int i = 0; i < waiting.length; i++) {
+            waiting[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Ranks packet types for the {@link SheddingPolicy#PRIORITY} policy. Connection control and pings rank highest, so
+     * that sessions stay alive under load, then acknowledgements, which free the peer's send window, then DATA_ACK,
+     * which the peer would retransmit, then DATA_NOACK. Datagrams without a valid type rank lowest.
+     */
+    public static int priorityOf(final PacketType type) {
+        if(null == type) return 0;
+        switch (type) {
+            case INVALID:
+                return 0;
+            case DATA_NOACK:
+                return 1;
+            case DATA_ACK:
+                return 2;
+            case ACK:
+            case BAD_ACK:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    @Override
+    public void dispatch(final long key, final Runnable task) {
+        dispatch(key, null, task, NOTHING);
+    }
+
+    @Override
+    public void start(final UdpCommon<?> owner) {
+        delegate.start(owner);
+    }
+
+    @Override
+    public void dispatch(final long key, final PacketType type, final Runnable task, final Runnable onShed) {
+        final boolean runNow;
+        Entry entry = null;
+        Entry shed = null;
+        synchronized (this) {
+            if(closed) throw new RejectedExecutionException("Dispatcher is closed.");
+
+            runNow = running < maxRunning && 0 == queued;
+            if(runNow) {
+                running++;
+            } else {
+                entry = new Entry(key, type, task, onShed);
+                shed = enqueue(entry);
+            }
+        }
+
+        // A task that runs straight away needs no entry.
+        if(runNow) {
+            handOver(key, task, onShed, true);
+        } else if(null != shed) {
+            shed(shed, shed != entry);
+        }
+    }
+
+    /**
+     * Queues the entry, dropping one if the queue is full.
+     *
+     * @return the entry that was dropped, possibly the one given, or null if nothing was.
+     */
+    private Entry enqueue(final Entry entry) {
+        final int level = levelOf(entry);
+        if(queued < maxQueued) {
+            waiting[level].addLast(entry);
+            queued++;
+            return null;
+        }
+
+        switch (policy) {
+            case DROP_NEWEST:
+                return entry;
+            case DROP_OLDEST: {
+                final Entry oldest = waiting[0].pollFirst();
+                waiting[0].addLast(entry);
+                return oldest;
+            }
+            default: {
+                for(int i = 0; i < level; i++) {
+                    if(!waiting[i].isEmpty()) {
+                        final Entry lowest = waiting[i].pollFirst();
+                        waiting[level].addLast(entry);
+                        return lowest;
+                    }
+                }
+                return entry;
+            }
+        }
+    }
+
+    private int levelOf(final Entry entry) {
+        return 1 == waiting.length ? 0 : priorityOf(entry.type);
+    }
+
+    /**
+     * Hands a task to the delegate. Its running slot is passed on to the next waiting task when it finishes.
+     */
+    private void handOver(final long key, final Runnable task, final Runnable onShed, final boolean fromReader) {
+        try {
+            delegate.dispatch(key, () -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                running--;
+            }
+            onShed.run();
+            if(fromReader) throw e;
+            metrics.recordDispatchRejection();
+        }
+    }
+
+    private void finished() {
+        final Entry next;
+        synchronized (this) {
+            next = closed ? null : poll();
+            if(null == next) running--;
+        }
+        if(null != next) handOver(next.key, next.task, next.onShed, false);
+    }
+
+    private Entry poll() {
+        for(int i = waiting.length - 1; i >= 0; i--) {
+            final Entry entry = waiting[i].pollFirst();
+            if(null != entry) {
+                queued--;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void shed(final Entry entry, final boolean evicted) {
+        metrics.recordShed(null == entry.type ? PacketType.INVALID : entry.type, evicted);
+        entry.onShed.run();
+    }
+
+    @Override
+    public synchronized int getQueueDepth() {
+        return queued + delegate.getQueueDepth();
+    }
+
+    /**
+     * Closes the delegate. Tasks still waiting are dropped without being counted.
+     */
+    @Override
+    public void close() {
+        final ArrayDeque<Entry> dropped = new ArrayDeque<>();
+        synchronized (this) {
+            closed = true;
+            for(final ArrayDeque<Entry> level : waiting) {
+                dropped.addAll(level);
+                level.clear();
+            }
+            queued = 0;
+        }
+        for(final Entry entry : dropped) {
+            entry.onShed.run();
+        }
+        delegate.close();
+    }
+
+    private static final class Entry {
+        private final long key;
+
+        private final PacketType type;
+
+        private final Runnable task;
+
+        private final Runnable onShed;
+
+        private Entry(final long key, final PacketType type, final Runnable task, final Runnable onShed) {
+            this.key = key;
+            this.type = type;
+            this.task = requireNonNull(task, "task");
+            this.onShed = requireNonNull(onShed, "onShed");
+        }
+    }
+}
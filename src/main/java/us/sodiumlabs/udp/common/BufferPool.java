@@ -0,0 +1,107 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte buffers that are reused between datagrams. Buffers are direct unless the pool is built for heap
+ * buffers, which a {@link java.net.DatagramSocket} needs in order to send without copying.
+ *
+ * Buffers are allocated lazily, so an idle pool costs nothing. At most {@code maxPooledBuffers} idle buffers are kept;
+ * buffers released beyond that are left to the garbage collector. {@link #tryAcquire()} also caps how many buffers may
+ * be out at once, so a backlog of queued datagrams cannot pin unbounded memory. {@link #acquire()} does not, and is
+ * meant for callers that hand the buffer back before they return.
+ */
+public class BufferPool {
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final int bufferSize;
+
+    private final int maxOutstandingBuffers;
+
+    private final boolean direct;
+
+    public BufferPool(final int bufferSize, final int maxPooledBuffers) {
+        this(bufferSize, maxPooledBuffers, true);
+    }
+
+    public BufferPool(final int bufferSize, final int maxPooledBuffers, final boolean direct) {
+        this(bufferSize, maxPooledBuffers, Integer.MAX_VALUE, direct);
+    }
+
+    public BufferPool(
+        final int bufferSize,
+        final int maxPooledBuffers,
+        final int maxOutstandingBuffers,
+        final boolean direct
+    ) {
+        Preconditions.checkArgument(bufferSize > 0, "Buffer size must be positive.");
+        Preconditions.checkArgument(maxPooledBuffers > 0, "Pool must hold at least one buffer.");
+        Preconditions.checkArgument(maxOutstandingBuffers >= maxPooledBuffers,
+            "Pool must be able to hand out every buffer it holds.");
+        this.bufferSize = bufferSize;
+        this.maxOutstandingBuffers = maxOutstandingBuffers;
+        this.direct = direct;
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * @return a cleared buffer. It must be handed back with {@link #release(ByteBuffer)} once it is no longer read.
+     */
+    public ByteBuffer acquire() {
+        outstanding.incrementAndGet();
+        return take();
+    }
+
+    /**
+     * @return a cleared buffer, or null if {@link #getMaxOutstandingBuffers()} buffers are already out.
+     */
+    public ByteBuffer tryAcquire() {
+        int count;
+        do {
+            count = outstanding.get();
+            if(count >= maxOutstandingBuffers) return null;
+        } while (!outstanding.compareAndSet(count, count + 1));
+        return take();
+    }
+
+    public void release(final ByteBuffer buffer) {
+        if(null == buffer || buffer.capacity() != bufferSize || buffer.isDirect() != direct) return;
+        outstanding.decrementAndGet();
+        buffers.offer(buffer);
+    }
+
+    private ByteBuffer take() {
+        final ByteBuffer buffer = buffers.poll();
+        if(null == buffer) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxOutstandingBuffers() {
+        return maxOutstandingBuffers;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int getPooledCount() {
+        return buffers.size();
+    }
+
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+}
@@ -0,0 +1,29 @@
+package us.sodiumlabs.udp.common;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes into a buffer, so that {@link com.google.common.io.ByteSource#copyTo(OutputStream)} can fill a datagram
+ * without an intermediate array. Writing past the limit of the buffer throws a
+ * {@link java.nio.BufferOverflowException}.
+ */
+final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferOutputStream(final ByteBuffer buffer) {
+        this.buffer = requireNonNull(buffer, "buffer");
+    }
+
+    @Override
+    public void write(final int b) {
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        buffer.put(b, off, len);
+    }
+}
@@ -0,0 +1,111 @@
+package us.sodiumlabs.udp.common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads datagrams from a {@link DatagramChannel} into buffers borrowed from {@link UdpCommon#getBufferPool()}.
+ *
+ * Each buffer is flipped so that its limit is the datagram length, and is returned to the pool as soon as the handler
+ * returns. Handlers must not keep a reference to it. When the pool has no buffer to spare the datagram is read into a
+ * scratch buffer and dropped, counted as shed.
+ */
+public class ChannelReaderThread extends UdpCommon.ReaderThread {
+    private final DatagramChannel channel;
+
+    private final Dispatcher dispatcher;
+
+    private final BiConsumer<ByteBuffer, InetSocketAddress> handler;
+
+    private ByteBuffer scratch;
+
+    /**
+     * Reads from the channel behind {@link UdpCommon#getSocket()} and handles packets with
+     * {@link UdpCommon#handlePacket(ByteBuffer, InetSocketAddress)} on {@link UdpCommon#getDispatcher()}.
+     */
+    public ChannelReaderThread(final UdpCommon<?> udpCommon) {
+        this(udpCommon, udpCommon.getSocket().getChannel(), udpCommon.getDispatcher(), udpCommon::handlePacket);
+    }
+
+    public ChannelReaderThread(
+        final UdpCommon<?> udpCommon,
+        final DatagramChannel channel,
+        final Dispatcher dispatcher,
+        final BiConsumer<ByteBuffer, InetSocketAddress> handler
+    ) {
+        super(udpCommon);
+        if(null == channel) {
+            throw new IllegalStateException("Socket was not created from a DatagramChannel.");
+        }
+        this.channel = channel;
+        this.dispatcher = requireNonNull(dispatcher, "dispatcher");
+        this.handler = requireNonNull(handler, "handler");
+    }
+
+    @Override
+    public void run() {
+        final BufferPool bufferPool = udpCommon.getBufferPool();
+        while (isOpen()) {
+            final ByteBuffer buffer = bufferPool.tryAcquire();
+            if(null == buffer) {
+                if(!drop(bufferPool)) return;
+                continue;
+            }
+            try {
+                final InetSocketAddress source = (InetSocketAddress) channel.receive(buffer);
+                buffer.flip();
+                final CompactSession compactSession = udpCommon.compactSessionOf(buffer, source);
+                final PacketType type = PacketView.peekType(buffer, null != compactSession);
+
+                dispatcher.dispatch(Dispatcher.senderKey(buffer, compactSession), type, () -> {
+                    try {
+                        handler.accept(buffer, source);
+                    } finally {
+                        bufferPool.release(buffer);
+                    }
+                }, () -> bufferPool.release(buffer));
+            } catch (ClosedChannelException e) {
+                bufferPool.release(buffer);
+                udpCommon.getLogger().debug("Channel closed, stopping reader.");
+                return;
+            } catch (IOException e) {
+                bufferPool.release(buffer);
+                udpCommon.getLogger().debug("Unable to read from channel.", e);
+            } catch (RejectedExecutionException e) {
+                bufferPool.release(buffer);
+                udpCommon.getMetrics().recordDispatchRejection();
+                udpCommon.getLogger().debug("Dispatcher rejected packet.", e);
+            }
+        }
+    }
+
+    /**
+     * @return false if the channel has closed.
+     */
+    private boolean drop(final BufferPool bufferPool) {
+        if(null == scratch) {
+            scratch = ByteBuffer.allocateDirect(bufferPool.getBufferSize());
+        }
+        scratch.clear();
+        try {
+            final InetSocketAddress source = (InetSocketAddress) channel.receive(scratch);
+            scratch.flip();
+            final boolean compact = null != udpCommon.compactSessionOf(scratch, source);
+            udpCommon.getMetrics().recordShed(PacketView.peekType(scratch, compact), false);
+            return true;
+        } catch (ClosedChannelException e) {
+            udpCommon.getLogger().debug("Channel closed, stopping reader.");
+            return false;
+        } catch (IOException e) {
+            udpCommon.getLogger().debug("Unable to read from channel.", e);
+            return true;
+        }
+    }
+}
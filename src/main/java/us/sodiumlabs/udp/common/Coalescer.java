@@ -0,0 +1,199 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Packs small DATA_NOACK messages to the same destination into one signed datagram.
+ *
+ * Messages are appended to a per destination batch, each prefixed by its length as an unsigned short, and the batch is
+ * sent as a single packet with the BATCH flag once the next message would not fit in it, or once the oldest message in
+ * it has waited for the flush delay. A batch is never larger than the owner's MTU, so it is never fragmented. The
+ * receiver hands each message to its message handler separately.
+ *
+ * Nothing is started until the first message is queued.
+ */
+public class Coalescer implements AutoCloseable {
+    private static final int LENGTH_PREFIX_BYTE_SIZE = 2;
+
+    private final int maxBatchBytes;
+
+    private final long flushDelayNanos;
+
+    private final ConcurrentMap<InetSocketAddress, Batch> batches = new ConcurrentHashMap<>();
+
+    private volatile UdpCommon<?> owner;
+
+    private ScheduledExecutorService flushThread;
+
+    /**
+     * @param maxBatchBytes the largest batch payload. It is capped by the owner's MTU.
+     * @param flushDelay    how long a message may wait for others to join it.
+     */
+    public Coalescer(final int maxBatchBytes, final long flushDelay, final TimeUnit unit) {
+        Preconditions.checkArgument(maxBatchBytes > LENGTH_PREFIX_BYTE_SIZE, "Batches must be able to hold a message.");
+        Preconditions.checkArgument(flushDelay > 0, "Flush delay must be positive.");
+        this.maxBatchBytes = maxBatchBytes;
+        this.flushDelayNanos = unit.toNanos(flushDelay);
+    }
+
+    public static Coalescer withDefaults() {
+        return new Coalescer(Integer.MAX_VALUE, 1, TimeUnit.MILLISECONDS);
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.owner = requireNonNull(owner, "owner");
+    }
+
+    /**
+     * Queues a message for the destination. Messages too large to share a datagram are sent straight away.
+     */
+    public void send(final ByteSource message, final InetSocketAddress destination) throws IOException {
+        final UdpCommon<?> udpCommon = checkStarted();
+        final int capacity = Math.min(maxBatchBytes, udpCommon.getMaxFragmentPayload());
+        final long size = message.size();
+        if(size + LENGTH_PREFIX_BYTE_SIZE > capacity) {
+            udpCommon.sendData(message, destination);
+            return;
+        }
+
+        final Batch batch = batches.computeIfAbsent(destination, d -> new Batch(d, capacity));
+        byte[] full = null;
+        boolean schedule = false;
+        synchronized (batch) {
+            if(batch.buffer.remaining() < size + LENGTH_PREFIX_BYTE_SIZE) {
+                full = batch.drain();
+            }
+            if(0 == batch.buffer.position() && !batch.flushScheduled) {
+                batch.flushScheduled = true;
+                schedule = true;
+            }
+            final ByteBuffer buffer = batch.buffer;
+            buffer.putShort((short) size);
+            try (final InputStream in = message.openStream()) {
+                ByteStreams.readFully(in, buffer.array(), buffer.position(), (int) size);
+            }
+            buffer.position(buffer.position() + (int) size);
+        }
+
+        if(schedule) scheduleFlush(batch);
+        if(null != full) sendBatch(udpCommon, full, destination);
+    }
+
+    /**
+     * Sends every queued message now.
+     */
+    public void flush() {
+        batches.values().forEach(this::flush);
+    }
+
+    private void flush(final Batch batch) {
+        final byte[] contents;
+        synchronized (batch) {
+            batch.flushScheduled = false;
+            contents = batch.drain();
+        }
+        if(null == contents) return;
+
+        try {
+            sendBatch(owner, contents, batch.destination);
+        } catch (IOException | RuntimeException e) {
+            owner.getLogger().debug("Failed to send coalesced packet.", e);
+        }
+    }
+
+    /**
+     * Drops the batch for a destination that is no longer connected, along with the messages queued in it.
+     */
+    public void forget(final InetSocketAddress destination) {
+        final Batch batch = batches.remove(destination);
+        if(null == batch) return;
+        synchronized (batch) {
+            batch.buffer.clear();
+        }
+    }
+
+    private void sendBatch(final UdpCommon<?> udpCommon, final byte[] contents, final InetSocketAddress destination)
+        throws IOException
+    {
+        udpCommon.sendData(ByteSource.wrap(contents), destination, Packet.FLAG_BATCH);
+    }
+
+    private synchronized void scheduleFlush(final Batch batch) {
+        if(null == flushThread) {
+            final ThreadMode threadMode = checkStarted().getThreadMode();
+            flushThread = Executors.newSingleThreadScheduledExecutor(r -> threadMode.newDaemonThread(r, "Coalescer"));
+        }
+        flushThread.schedule(() -> flush(batch), flushDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private UdpCommon<?> checkStarted() {
+        final UdpCommon<?> udpCommon = owner;
+        if(null == udpCommon) throw new IllegalStateException("Coalescer has not been started.");
+        return udpCommon;
+    }
+
+    /**
+     * Calls the handler once for each message in the payload of a packet with the BATCH flag.
+     *
+     * @throws IllegalArgumentException if a message runs past the end of the payload.
+     */
+    public static void unpack(final ByteBuffer payload, final Consumer<ByteBuffer> handler) {
+        final ByteBuffer messages = payload.duplicate();
+        while (messages.hasRemaining()) {
+            Preconditions.checkArgument(messages.remaining() >= LENGTH_PREFIX_BYTE_SIZE, "Truncated batch.");
+            final int length = Packet.UNSIGNED_SHORT_BITMASK & messages.getShort();
+            Preconditions.checkArgument(messages.remaining() >= length, "Truncated batch.");
+
+            final ByteBuffer message = messages.slice();
+            message.limit(length);
+            handler.accept(message);
+            messages.position(messages.position() + length);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if(null != owner) flush();
+        if(null != flushThread) flushThread.shutdownNow();
+        batches.clear();
+    }
+
+    private static final class Batch {
+        private final InetSocketAddress destination;
+
+        private final ByteBuffer buffer;
+
+        private boolean flushScheduled;
+
+        private Batch(final InetSocketAddress destination, final int capacity) {
+            this.destination = destination;
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * @return the queued messages, or null if there are none.
+         */
+        private byte[] drain() {
+            if(0 == buffer.position()) return null;
+            final byte[] contents = Arrays.copyOf(buffer.array(), buffer.position());
+            buffer.clear();
+            return contents;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package us.sodiumlabs.udp.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The compact wire format, used between peers that agreed on it during the handshake.
+ *
+ * <pre>
+ * | 0x80 | TYPE | FLAGS |      SESSION ID       | ORDER COUNT DELTA ... | CUSTOM ID ... | (FI | FC) |
+ * | DATA ...
+ * | TRUNCATED HMAC (16 bytes)
+ * </pre>
+ *
+ * The first byte marks the packet as compact. The session id replaces the 16 byte sender UUID; the server assigns it,
+ * and sends it after the broadcast order count in the ACCEPT payload. The order count is sent as an unsigned varint of
+ * its distance from the order count the sender used in the handshake. The custom ID is also a varint, and the fragment
+ * index and count only follow when the FRAGMENT flag is set. There is no length field; the payload runs up to the MAC.
+ * The MAC is the first 16 bytes of the HMAC-SHA256 of everything before it.
+ *
+ * A full format packet can start with the same byte as a compact one, since it starts with its signature. Receivers
+ * only read a datagram as compact when it also carries the session id they agreed on with its source.
+ */
+public final class CompactHeader {
+    /**
+     * The capability bit advertised in the custom ID of HELLO and ACCEPT packets.
+     */
+    public static final int CAPABILITY = 0x02;
+
+    public static final int MAC_BYTE_SIZE = 16;
+
+    static final int MARKER = 0x80;
+
+    static final int TYPE_OFFSET = 1;
+
+    static final int FLAGS_OFFSET = 2;
+
+    static final int SESSION_ID_OFFSET = 3;
+
+    static final int ORDER_COUNT_OFFSET = SESSION_ID_OFFSET + 4;
+
+    private static final int MAX_VARINT_BYTE_SIZE = 10;
+
+    /**
+     * The most header bytes a compact packet can have, MAC included.
+     */
+    static final int MAX_OVERHEAD_BYTE_SIZE = ORDER_COUNT_OFFSET + MAX_VARINT_BYTE_SIZE + 3 + 2 + MAC_BYTE_SIZE;
+
+    private CompactHeader() {}
+
+    /**
+     * Only packets without acknowledgements use the compact format; the reliable channel identifies DATA_ACK packets
+     * by their full signatures.
+     */
+    public static boolean isCompactable(final PacketType type) {
+        return PacketType.PING == type
+            || PacketType.PANG == type
+            || PacketType.PONG == type
+            || PacketType.DATA_NOACK == type;
+    }
+
+    /**
+     * @return true if the datagram may be compact. It may also be a full format packet.
+     */
+    static boolean mightBeCompact(final ByteBuffer packet) {
+        return packet.remaining() >= ORDER_COUNT_OFFSET + 2 + MAC_BYTE_SIZE
+            && MARKER == (0xff & packet.get(packet.position()));
+    }
+
+    /**
+     * @param session the compact session agreed on with the datagram's source, or null if there is none.
+     * @return true if the datagram is a compact packet of the session. A full packet is only taken for one if its
+     * signature happens to start with the marker and the session id.
+     */
+    static boolean isPacketOf(final ByteBuffer packet, final CompactSession session) {
+        return null != session
+            && mightBeCompact(packet)
+            && session.getSessionId() == packet.getInt(packet.position() + SESSION_ID_OFFSET);
+    }
+
+    static int fold(final long mostSignificantBits, final long leastSignificantBits) {
+        final long folded = mostSignificantBits ^ leastSignificantBits;
+        return (int) (folded ^ (folded >>> 32));
+    }
+
+    static void putVarLong(final ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint at the index.
+     *
+     * @return the value, with the index after it in {@code end[0]}.
+     * @throws IllegalArgumentException if the varint is truncated or too long.
+     */
+    static long getVarLong(final ByteBuffer buffer, final int index, final int limit, final int[] end) {
+        long value = 0;
+        for(int i = 0; i < MAX_VARINT_BYTE_SIZE; i++) {
+            if(index + i >= limit) break;
+            final byte b = buffer.get(index + i);
+            value |= (long) (b & 0x7f) << (7 * i);
+            if(b >= 0) {
+                end[0] = index + i + 1;
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+}
@@ -0,0 +1,55 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.UUID;
+
+/**
+ * What both ends of a connection agreed on for the compact format: the session id, and the order counts each of them
+ * used in the handshake, which compact order counts are relative to.
+ */
+public final class CompactSession {
+    private final int sessionId;
+
+    private final UUID peerId;
+
+    private final long localBase;
+
+    private final long remoteBase;
+
+    /**
+     * @param peerId     the id the peer's packets are verified against.
+     * @param localBase  the order count of this end's HELLO or ACCEPT.
+     * @param remoteBase the order count of the peer's HELLO or ACCEPT.
+     */
+    public CompactSession(final int sessionId, final UUID peerId, final long localBase, final long remoteBase) {
+        this.sessionId = sessionId;
+        this.peerId = peerId;
+        this.localBase = localBase;
+        this.remoteBase = remoteBase;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public UUID getPeerId() {
+        return peerId;
+    }
+
+    public long getLocalBase() {
+        return localBase;
+    }
+
+    public long getRemoteBase() {
+        return remoteBase;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this.getClass())
+            .add("Session Id", sessionId)
+            .add("Peer Id", peerId)
+            .toString();
+    }
+}
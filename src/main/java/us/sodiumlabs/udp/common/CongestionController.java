@@ -0,0 +1,31 @@
+package us.sodiumlabs.udp.common;
+
+/**
+ * Sets the rate a {@link Pacer} sends to one peer at, from the round trip times and losses seen on the connection.
+ *
+ * A controller only ever sees one peer. Signals may arrive from several threads at once.
+ */
+public interface CongestionController {
+    /**
+     * @return the rate to send at, in bytes per second.
+     */
+    double getRate();
+
+    /**
+     * Called when the peer acknowledges data.
+     *
+     * @param bytes    the size of the acknowledged datagram.
+     * @param rttNanos the round trip time of the datagram, or -1 if it was retransmitted, which makes it ambiguous.
+     */
+    void onAck(int bytes, long rttNanos, long nowNanos);
+
+    /**
+     * Called with a round trip time measured by PING, PANG and PONG packets.
+     */
+    void onRtt(long rttNanos, long nowNanos);
+
+    /**
+     * Called when a datagram to the peer is taken to be lost.
+     */
+    void onLoss(long nowNanos);
+}
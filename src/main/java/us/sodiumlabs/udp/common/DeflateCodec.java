@@ -0,0 +1,163 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payloads with the JDK's deflate.
+ *
+ * Deflaters and inflaters hold native memory and are slow to create, so they are leased from small pools along with
+ * their scratch buffers, which grow to the largest payload seen and are then reused.
+ */
+public class DeflateCodec implements PayloadCodec {
+    public static final int CAPABILITY = 0x01;
+
+    private static final int IDLE_LEASES = 8;
+
+    private final int level;
+
+    private final int minimumBytes;
+
+    private final int maxInflatedBytes;
+
+    private final ArrayBlockingQueue<DeflateLease> deflaters = new ArrayBlockingQueue<>(IDLE_LEASES);
+
+    private final ArrayBlockingQueue<InflateLease> inflaters = new ArrayBlockingQueue<>(IDLE_LEASES);
+
+    /**
+     * @param level            the deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @param minimumBytes     payloads smaller than this are not compressed.
+     * @param maxInflatedBytes compressed payloads that inflate to more than this are rejected.
+     */
+    public DeflateCodec(final int level, final int minimumBytes, final int maxInflatedBytes) {
+        Preconditions.checkArgument(maxInflatedBytes > 0, "Inflated payloads must be allowed some bytes.");
+        this.level = level;
+        this.minimumBytes = minimumBytes;
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED, 256, 4 * 1024 * 1024);
+    }
+
+    @Override
+    public int getCapability() {
+        return CAPABILITY;
+    }
+
+    @Override
+    public byte[] compress(final ByteSource payload) throws IOException {
+        final long size = payload.size();
+        if(size < minimumBytes || size > Integer.MAX_VALUE / 2) return null;
+
+        final DeflateLease lease = acquireDeflater();
+        try {
+            final int length = (int) size;
+            lease.input = ensureCapacity(lease.input, length);
+            try (final InputStream in = payload.openStream()) {
+                ByteStreams.readFully(in, lease.input, 0, length);
+            }
+
+            // Anything that does not fit in one byte less than the input is not worth sending compressed.
+            lease.output = ensureCapacity(lease.output, length);
+            lease.deflater.setInput(lease.input, 0, length);
+            lease.deflater.finish();
+            final int compressed = lease.deflater.deflate(lease.output, 0, length);
+            if(!lease.deflater.finished() || compressed >= length) return null;
+
+            return Arrays.copyOf(lease.output, compressed);
+        } finally {
+            releaseDeflater(lease);
+        }
+    }
+
+    @Override
+    public void decompress(final ByteBuffer compressed, final Consumer<ByteBuffer> consumer) {
+        final InflateLease lease = acquireInflater();
+        try {
+            final int length = compressed.remaining();
+            lease.input = ensureCapacity(lease.input, length);
+            compressed.duplicate().get(lease.input, 0, length);
+            lease.inflater.setInput(lease.input, 0, length);
+
+            int inflated = 0;
+            while (!lease.inflater.finished()) {
+                if(inflated == lease.output.length) {
+                    Preconditions.checkArgument(inflated < maxInflatedBytes, "Payload inflates past the limit.");
+                    lease.output = Arrays.copyOf(lease.output,
+                        (int) Math.min(maxInflatedBytes, Math.max(1024L, 2L * lease.output.length)));
+                }
+                final int n = lease.inflater.inflate(lease.output, inflated, lease.output.length - inflated);
+                if(0 == n && (lease.inflater.needsInput() || lease.inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Compressed payload is truncated.");
+                }
+                inflated += n;
+            }
+
+            consumer.accept(ByteBuffer.wrap(lease.output, 0, inflated).asReadOnlyBuffer());
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed payload is corrupt.", e);
+        } finally {
+            releaseInflater(lease);
+        }
+    }
+
+    private static byte[] ensureCapacity(final byte[] buffer, final int length) {
+        return buffer.length >= length ? buffer : new byte[length];
+    }
+
+    private DeflateLease acquireDeflater() {
+        final DeflateLease lease = deflaters.poll();
+        return null == lease ? new DeflateLease(new Deflater(level)) : lease;
+    }
+
+    private void releaseDeflater(final DeflateLease lease) {
+        lease.deflater.reset();
+        if(!deflaters.offer(lease)) lease.deflater.end();
+    }
+
+    private InflateLease acquireInflater() {
+        final InflateLease lease = inflaters.poll();
+        return null == lease ? new InflateLease(new Inflater()) : lease;
+    }
+
+    private void releaseInflater(final InflateLease lease) {
+        lease.inflater.reset();
+        if(!inflaters.offer(lease)) lease.inflater.end();
+    }
+
+    private static final class DeflateLease {
+        private final Deflater deflater;
+
+        private byte[] input = new byte[0];
+
+        private byte[] output = new byte[0];
+
+        private DeflateLease(final Deflater deflater) {
+            this.deflater = deflater;
+        }
+    }
+
+    private static final class InflateLease {
+        private final Inflater inflater;
+
+        private byte[] input = new byte[0];
+
+        private byte[] output = new byte[0];
+
+        private InflateLease(final Inflater inflater) {
+            this.inflater = inflater;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package us.sodiumlabs.udp.common;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands received datagrams from a reader thread to the threads that handle them.
+ */
+public interface Dispatcher extends AutoCloseable {
+    /**
+     * Called by the client or server that reads into this dispatcher before its first datagram. Dispatchers that count
+     * what they shed record it in the owner's metrics.
+     */
+    default void start(final UdpCommon<?> owner) {}
+
+    /**
+     * @param key identifies the sender. Implementations that preserve order do so for tasks with the same key.
+     * @throws RejectedExecutionException if the dispatcher has been closed.
+     */
+    void dispatch(long key, Runnable task);
+
+    /**
+     * Dispatches the task for a datagram of the given type. Dispatchers that shed load use the type to choose what to
+     * drop; others ignore it.
+     *
+     * @param type   the type read from the datagram, or null if it is not known.
+     * @param onShed run instead of the task if the task is dropped.
+     * @throws RejectedExecutionException if the dispatcher has been closed. Neither the task nor onShed has run.
+     */
+    default void dispatch(final long key, final PacketType type, final Runnable task, final Runnable onShed) {
+        dispatch(key, task);
+    }
+
+    /**
+     * @return the number of tasks waiting to be run.
+     */
+    int getQueueDepth();
+
+    @Override
+    void close();
+
+    /**
+     * Reads a dispatch key from the sender id of a raw packet without parsing or verifying it. Truncated datagrams all
+     * share key zero. Compact packets carry no sender id, so they are keyed by the id of the session's peer, folded
+     * the same way, and land with the same sender's full packets.
+     *
+     * @param compactSession the session the datagram is a compact packet of, as told by
+     *                       {@link UdpCommon#compactSessionOf(ByteBuffer, java.net.InetSocketAddress)}, or null if it
+     *                       is a full packet.
+     */
+    static long senderKey(final ByteBuffer packet, final CompactSession compactSession) {
+        if(null != compactSession) {
+            final UUID peerId = compactSession.getPeerId();
+            return CompactHeader.fold(peerId.getMostSignificantBits(), peerId.getLeastSignificantBits());
+        }
+        final int senderIdOffset = packet.position() + Packet.SIGNATURE_BYTE_SIZE;
+        if(packet.limit() < senderIdOffset + 16) return 0;
+        return CompactHeader.fold(packet.getLong(senderIdOffset), packet.getLong(senderIdOffset + 8));
+    }
+}
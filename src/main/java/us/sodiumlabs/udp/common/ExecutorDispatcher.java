@@ -0,0 +1,35 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Submits every task to a shared executor. Tasks from the same sender may run concurrently and out of order.
+ */
+public class ExecutorDispatcher implements Dispatcher {
+    private final ExecutorService executorService;
+
+    public ExecutorDispatcher(final ExecutorService executorService) {
+        this.executorService = requireNonNull(executorService, "executorService");
+    }
+
+    @Override
+    public void dispatch(final long key, final Runnable task) {
+        executorService.execute(task);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        if(executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue().size();
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+}
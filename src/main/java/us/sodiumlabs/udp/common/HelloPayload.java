@@ -0,0 +1,53 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The payload of a HELLO packet.
+ *
+ * <pre>
+ * |       TIMESTAMP       |
+ * |        COOKIE ...     |
+ * </pre>
+ *
+ * The timestamp is the client's clock in milliseconds since the epoch. The cookie is the one the server sent in its
+ * last COOKIE packet, or zeros on the first attempt. The payload always has the same size, so that a HELLO is never
+ * smaller than the COOKIE packet that answers it.
+ */
+public final class HelloPayload {
+    public static final int TIMESTAMP_BYTE_SIZE = 8;
+
+    public static final int COOKIE_BYTE_SIZE = 24;
+
+    public static final int BYTE_SIZE = TIMESTAMP_BYTE_SIZE + COOKIE_BYTE_SIZE;
+
+    private HelloPayload() {}
+
+    /**
+     * @param cookie the cookie to echo, or null if there is none yet.
+     */
+    public static ByteSource create(final long timestampMillis, final byte[] cookie) {
+        Preconditions.checkArgument(null == cookie || COOKIE_BYTE_SIZE == cookie.length, "Cookie has the wrong size.");
+        final ByteBuffer payload = ByteBuffer.allocate(BYTE_SIZE);
+        payload.putLong(timestampMillis);
+        if(null != cookie) payload.put(cookie);
+        return ByteSource.wrap(payload.array());
+    }
+
+    public static long getTimestamp(final ByteBuffer payload) {
+        return payload.getLong(payload.position());
+    }
+
+    /**
+     * @return the cookie, without consuming the payload.
+     */
+    public static ByteBuffer getCookie(final ByteBuffer payload) {
+        final ByteBuffer cookie = payload.duplicate();
+        cookie.position(payload.position() + TIMESTAMP_BYTE_SIZE);
+        cookie.limit(cookie.position() + COOKIE_BYTE_SIZE);
+        return cookie.slice();
+    }
+}
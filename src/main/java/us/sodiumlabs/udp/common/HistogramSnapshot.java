@@ -0,0 +1,91 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * A point-in-time copy of an {@link RttHistogram}. All values are in nanoseconds.
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+
+    private final long totalCount;
+
+    private final long sum;
+
+    HistogramSnapshot(final long[] counts, final long sum) {
+        this.counts = counts;
+        this.sum = sum;
+
+        long total = 0;
+        for(final long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getMean() {
+        return 0 == totalCount ? 0 : (double) sum / totalCount;
+    }
+
+    public long getMin() {
+        for(int i = 0; i < counts.length; i++) {
+            if(0 != counts[i]) return RttHistogram.highestValueAt(i);
+        }
+        return 0;
+    }
+
+    public long getMax() {
+        for(int i = counts.length - 1; i >= 0; i--) {
+            if(0 != counts[i]) return RttHistogram.highestValueAt(i);
+        }
+        return 0;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the highest value in the bucket that contains the percentile, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100.");
+        if(0 == totalCount) return 0;
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= target) return RttHistogram.highestValueAt(i);
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the number of values recorded between the bucket's lower bound and {@code highestValueAt(index)}.
+     */
+    public long getCountAtIndex(final int index) {
+        return counts[index];
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public long getHighestValueAtIndex(final int index) {
+        return RttHistogram.highestValueAt(index);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this.getClass())
+            .add("Count", totalCount)
+            .add("Mean", getMean())
+            .add("P50", getValueAtPercentile(50))
+            .add("P99", getValueAtPercentile(99))
+            .add("Max", getMax())
+            .toString();
+    }
+}
@@ -0,0 +1,250 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static us.sodiumlabs.udp.common.PacketParser.HMAC_SHA_256;
+
+/**
+ * Keeps initialized HMAC-SHA256 state per peer so that a {@link Mac} is not created and keyed for every packet.
+ *
+ * Entries are keyed by the UUID that owns the secret key and are evicted once there are more than the configured
+ * maximum. Each entry holds an initialized template and a small pool of clones of it, so any thread can sign or
+ * verify without sharing a {@link Mac} instance. The secret key is cached with the entry, so a slow key provider is
+ * only consulted on a miss; call {@link #invalidate(UUID)} after rotating a key.
+ *
+ * Signing and verifying keep separate entries. An endpoint signs with its own key under its own id, and a packet that
+ * claims that id must still be checked against the key the provider gives for it, or a copy of the endpoint's own
+ * packet reflected back at it would verify.
+ */
+public class HmacEngine {
+    public static final int SIGNATURE_BYTE_SIZE = 32;
+
+    private static final int IDLE_MACS_PER_KEY = 4;
+
+    private final Cache<UUID, KeyedMac> signingEntries;
+
+    private final Cache<UUID, KeyedMac> verifyingEntries;
+
+    public HmacEngine(final long maximumEntries, final long keyTtl, final TimeUnit keyTtlUnit) {
+        this.signingEntries = CacheBuilder.newBuilder()
+            .maximumSize(maximumEntries)
+            .expireAfterWrite(keyTtl, keyTtlUnit)
+            .build();
+        this.verifyingEntries = CacheBuilder.newBuilder()
+            .maximumSize(maximumEntries)
+            .expireAfterWrite(keyTtl, keyTtlUnit)
+            .build();
+    }
+
+    /**
+     * Returns the secret key for the id, asking the provider only if it is not already cached.
+     *
+     * @throws UnknownSenderException if the provider has no key for the id.
+     */
+    public SecretKeySpec getKey(final UUID id, final Function<UUID, SecretKeySpec> keyProvider)
+        throws InvalidKeyException, NoSuchAlgorithmException
+    {
+        return entry(id, keyProvider).key;
+    }
+
+    public void invalidate(final UUID id) {
+        signingEntries.invalidate(id);
+        verifyingEntries.invalidate(id);
+    }
+
+    public long size() {
+        return signingEntries.size() + verifyingEntries.size();
+    }
+
+    /**
+     * Signs the remaining bytes of each region without consuming them.
+     */
+    public byte[] sign(final UUID id, final SecretKeySpec key, final ByteBuffer... regions)
+        throws InvalidKeyException, NoSuchAlgorithmException
+    {
+        final KeyedMac entry = entry(id, key);
+        final Lease lease = entry.acquire();
+        try {
+            for (final ByteBuffer region : regions) {
+                lease.mac.update(region.duplicate());
+            }
+            return lease.mac.doFinal();
+        } finally {
+            entry.release(lease);
+        }
+    }
+
+    /**
+     * Signs the remaining bytes of the region and writes the start of the HMAC over the remaining bytes of the
+     * signature buffer, up to {@link #SIGNATURE_BYTE_SIZE} bytes. Neither buffer is consumed and nothing is allocated
+     * once the peer's entry is warm.
+     */
+    public void signInto(final UUID id, final SecretKeySpec key, final ByteBuffer region, final ByteBuffer signature)
+        throws InvalidKeyException, NoSuchAlgorithmException
+    {
+        final KeyedMac entry = entry(id, key);
+        final Lease lease = entry.acquire();
+        try {
+            lease.mac.update(region.duplicate());
+            lease.mac.doFinal(lease.scratch, 0);
+
+            final int length = Math.min(SIGNATURE_BYTE_SIZE, signature.remaining());
+            for(int i = 0; i < length; i++) {
+                signature.put(signature.position() + i, lease.scratch[i]);
+            }
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Signature scratch buffer is too small.", e);
+        } finally {
+            entry.release(lease);
+        }
+    }
+
+    public byte[] sign(final UUID id, final SecretKeySpec key, final ByteSource payload)
+        throws InvalidKeyException, NoSuchAlgorithmException, IOException
+    {
+        final KeyedMac entry = entry(id, key);
+        final Lease lease = entry.acquire();
+        try {
+            payload.copyTo(lease.stream);
+            return lease.mac.doFinal();
+        } finally {
+            entry.release(lease);
+        }
+    }
+
+    /**
+     * Checks a signature in constant time. Neither buffer is consumed and nothing is allocated once the peer's entry
+     * is warm. A signature of {@link CompactHeader#MAC_BYTE_SIZE} bytes is checked against the start of the HMAC.
+     */
+    public boolean verify(
+        final UUID id,
+        final Function<UUID, SecretKeySpec> keyProvider,
+        final ByteBuffer signedRegion,
+        final ByteBuffer signature
+    ) throws InvalidKeyException, NoSuchAlgorithmException {
+        final KeyedMac entry = entry(id, keyProvider);
+        final Lease lease = entry.acquire();
+        try {
+            lease.mac.update(signedRegion.duplicate());
+            lease.mac.doFinal(lease.scratch, 0);
+
+            // Compare every byte so the time taken does not reveal how much of the signature matched.
+            final int length = signature.remaining();
+            int difference = length == SIGNATURE_BYTE_SIZE || length == CompactHeader.MAC_BYTE_SIZE ? 0 : 1;
+            for(int i = 0; i < SIGNATURE_BYTE_SIZE && i < length; i++) {
+                difference |= lease.scratch[i] ^ signature.get(signature.position() + i);
+            }
+            return 0 == difference;
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Signature scratch buffer is too small.", e);
+        } finally {
+            entry.release(lease);
+        }
+    }
+
+    private KeyedMac entry(final UUID id, final SecretKeySpec key)
+        throws InvalidKeyException, NoSuchAlgorithmException
+    {
+        final KeyedMac cached = signingEntries.getIfPresent(id);
+        if(null != cached && (cached.key == key || cached.key.equals(key))) {
+            return cached;
+        }
+
+        final KeyedMac created = new KeyedMac(key);
+        signingEntries.put(id, created);
+        return created;
+    }
+
+    private KeyedMac entry(final UUID id, final Function<UUID, SecretKeySpec> keyProvider)
+        throws InvalidKeyException, NoSuchAlgorithmException
+    {
+        try {
+            return verifyingEntries.get(id, () -> {
+                final SecretKeySpec key = keyProvider.apply(id);
+                if(null == key) {
+                    throw new UnknownSenderException(id);
+                }
+                return new KeyedMac(key);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if(e.getCause() instanceof UnknownSenderException) throw (UnknownSenderException) e.getCause();
+            if(e.getCause() instanceof InvalidKeyException) throw (InvalidKeyException) e.getCause();
+            if(e.getCause() instanceof NoSuchAlgorithmException) throw (NoSuchAlgorithmException) e.getCause();
+            throw new RuntimeException("Unable to load key.", e.getCause());
+        }
+    }
+
+    private static class KeyedMac {
+        private final SecretKeySpec key;
+
+        private final Mac template;
+
+        private final ArrayBlockingQueue<Lease> idle = new ArrayBlockingQueue<>(IDLE_MACS_PER_KEY);
+
+        private KeyedMac(final SecretKeySpec key) throws NoSuchAlgorithmException, InvalidKeyException {
+            this.key = key;
+            this.template = Mac.getInstance(HMAC_SHA_256);
+            this.template.init(key);
+        }
+
+        private Lease acquire() throws NoSuchAlgorithmException, InvalidKeyException {
+            final Lease lease = idle.poll();
+            if(null != lease) return lease;
+
+            synchronized (template) {
+                try {
+                    return new Lease((Mac) template.clone());
+                } catch (CloneNotSupportedException e) {
+                    final Mac mac = Mac.getInstance(HMAC_SHA_256);
+                    mac.init(key);
+                    return new Lease(mac);
+                }
+            }
+        }
+
+        private void release(final Lease lease) {
+            lease.mac.reset();
+            idle.offer(lease);
+        }
+    }
+
+    private static class Lease {
+        private final Mac mac;
+
+        private final byte[] scratch = new byte[SIGNATURE_BYTE_SIZE];
+
+        private final OutputStream stream;
+
+        private Lease(final Mac mac) {
+            this.mac = mac;
+            this.stream = new OutputStream() {
+                @Override
+                public void write(final int b) {
+                    mac.update((byte) b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    mac.update(b, off, len);
+                }
+            };
+        }
+    }
+}
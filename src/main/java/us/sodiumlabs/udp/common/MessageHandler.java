@@ -0,0 +1,31 @@
+package us.sodiumlabs.udp.common;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Receives the data carried by DATA_ACK and DATA_NOACK packets, after any fragments have been put back together.
+ */
+@FunctionalInterface
+public interface MessageHandler<T> {
+    /**
+     * @param message the message's bytes. The buffer may be pooled or wrap a receive buffer, so it is only valid until
+     *                this method returns.
+     */
+    void onMessage(T endpoint, UUID senderId, ByteBuffer message, InetSocketAddress source);
+
+    /**
+     * Receives a message along with the {@link StreamConfig stream} it was sent on. Data sent without a stream is on
+     * stream 0. Defaults to ignoring the stream.
+     */
+    default void onMessage(
+        final T endpoint,
+        final UUID senderId,
+        final int streamId,
+        final ByteBuffer message,
+        final InetSocketAddress source
+    ) {
+        onMessage(endpoint, senderId, message, source);
+    }
+}
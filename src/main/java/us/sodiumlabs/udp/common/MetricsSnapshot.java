@@ -0,0 +1,87 @@
+package us.sodiumlabs.udp.common;
+
+import org.immutables.value.Value;
+import us.sodiumlabs.udp.immutables.Style;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A point-in-time copy of {@link UdpMetrics}, for exporting to a monitoring system.
+ */
+@Style
+@Value.Immutable
+public abstract class MetricsSnapshot {
+    public abstract Map<PacketType, Long> getPacketsIn();
+
+    public abstract Map<PacketType, Long> getBytesIn();
+
+    public abstract Map<PacketType, Long> getPacketsOut();
+
+    public abstract Map<PacketType, Long> getBytesOut();
+
+    public abstract long getSignatureFailures();
+
+    public abstract long getUnknownSenders();
+
+    /**
+     * Packets dropped by the anti-replay window as duplicates or as too old.
+     */
+    public abstract long getReplayedPackets();
+
+    /**
+     * Datagrams dropped unread because their source address was over its rate.
+     */
+    public abstract long getRateLimitedPackets();
+
+    /**
+     * Datagrams dropped before verifying them because their header was not one a peer could have sent, and HELLOs with
+     * an out of date timestamp.
+     */
+    public abstract long getFilteredPackets();
+
+    /**
+     * Fragments that did not fit their message or the reassembly budget.
+     */
+    public abstract long getDroppedFragments();
+
+    /**
+     * Fragmented messages dropped because they were still incomplete when their reassembly timed out.
+     */
+    public abstract long getReassemblyTimeouts();
+
+    /**
+     * Sequenced messages given up on by in-order delivery, because they were still missing when their hole timed out.
+     */
+    public abstract long getSkippedMessages();
+
+    public abstract long getDispatchRejections();
+
+    public abstract long getHandlerFailures();
+
+    /**
+     * Datagrams dropped by the ingress shedding policy, by type.
+     */
+    public abstract Map<PacketType, Long> getShedPackets();
+
+    /**
+     * How many of the shed datagrams were dropped from the queue to make room, rather than refused on arrival.
+     */
+    public abstract long getEvictedPackets();
+
+    /**
+     * Datagrams dropped because the {@link Pacer pacer}'s queue for their destination was full.
+     */
+    public abstract long getPacingDrops();
+
+    public abstract int getQueueDepth();
+
+    /**
+     * Round trip times by peer id, from PING to PANG on a client and from PANG to PONG on a server.
+     */
+    public abstract Map<UUID, HistogramSnapshot> getRoundTripTimes();
+
+    public static ImmutableMetricsSnapshot.Builder builder() {
+        return ImmutableMetricsSnapshot.builder();
+    }
+}
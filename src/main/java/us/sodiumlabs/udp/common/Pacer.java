@@ -0,0 +1,336 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spreads the data sent to each peer out over time, so that a burst does not overflow the queues along the path or the
+ * peer's receive buffer.
+ *
+ * Every peer has a {@link TokenBucket} of bytes that refills at the rate its {@link CongestionController} sets, and
+ * holds at most the burst size. A datagram takes its size from the bucket and waits until the bucket is out of debt,
+ * so datagrams leave at the peer's rate once the burst is used up. The controller is told about acknowledgements,
+ * round trip times and losses, and the bucket follows its rate.
+ *
+ * A thread that sends to many peers, such as the reliable channel's timer or a broadcast, must not wait for any one of
+ * them. It {@link #tryReserve tries} the destination's bucket, and {@link #defer defers} the datagram if the bucket is
+ * in debt. Every peer has a bounded queue of deferred datagrams, which a single thread of the owner's thread mode sends
+ * in order as the peer's bucket allows; a datagram that does not fit in the queue is dropped and counted. The thread
+ * is started with the first deferred datagram.
+ */
+public class Pacer implements AutoCloseable {
+    private final double burstBytes;
+
+    private final int maxQueuedDatagrams;
+
+    private final LongFunction<CongestionController> controllers;
+
+    private final ConcurrentMap<InetSocketAddress, Peer> peers = new ConcurrentHashMap<>();
+
+    private final Set<Peer> backlogged = ConcurrentHashMap.newKeySet();
+
+    private volatile UdpCommon<?> owner;
+
+    private volatile Thread drainThread;
+
+    private volatile boolean closed;
+
+    /**
+     * Defers at most 1,024 datagrams per peer.
+     *
+     * @see #Pacer(double, int, LongFunction)
+     */
+    public Pacer(final double burstBytes, final LongFunction<CongestionController> controllers) {
+        this(burstBytes, 1_024, controllers);
+    }
+
+    /**
+     * @param burstBytes         how many bytes may be sent at once to a peer that has been idle.
+     * @param maxQueuedDatagrams how many deferred datagrams may wait for each peer.
+     * @param controllers        creates a peer's controller, given the time.
+     */
+    public Pacer(
+        final double burstBytes,
+        final int maxQueuedDatagrams,
+        final LongFunction<CongestionController> controllers
+    ) {
+        Preconditions.checkArgument(burstBytes >= 1, "Burst must allow at least one byte.");
+        Preconditions.checkArgument(maxQueuedDatagrams > 0, "Queue must hold at least one datagram.");
+        this.burstBytes = burstBytes;
+        this.maxQueuedDatagrams = maxQueuedDatagrams;
+        this.controllers = requireNonNull(controllers, "controllers");
+    }
+
+    /**
+     * Paces every peer with an {@link AimdController} that starts at 1 MB/s and stays between 64 KB/s and 1 GB/s.
+     */
+    public static Pacer withDefaults() {
+        return new Pacer(64 * 1024, now -> new AimdController(1024 * 1024, 64 * 1024, 1024 * 1024 * 1024, 1_400, now));
+    }
+
+    /**
+     * Paces every peer at the same fixed rate, without congestion control.
+     */
+    public static Pacer fixedRate(final double bytesPerSecond, final double burstBytes) {
+        Preconditions.checkArgument(bytesPerSecond > 0, "Rate must be positive.");
+        return new Pacer(burstBytes, now -> new FixedRate(bytesPerSecond));
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.owner = requireNonNull(owner, "owner");
+    }
+
+    /**
+     * Takes a datagram's size from the destination's bucket.
+     *
+     * @return how long to wait before sending it.
+     */
+    public long reserve(final InetSocketAddress destination, final int bytes, final long nowNanos) {
+        return peer(destination, nowNanos).bucket.take(bytes, nowNanos);
+    }
+
+    /**
+     * Takes a datagram's size from the destination's bucket if the datagram may be sent now: the bucket is out of debt,
+     * and no deferred datagram is waiting ahead of it.
+     *
+     * @return false, taking nothing, if the datagram would have to wait.
+     */
+    public boolean tryReserve(final InetSocketAddress destination, final int bytes, final long nowNanos) {
+        final Peer peer = peer(destination, nowNanos);
+        synchronized (peer) {
+            if(!peer.queue.isEmpty() || peer.bucket.getTokens(nowNanos) < 0) return false;
+            peer.bucket.take(bytes, nowNanos);
+            return true;
+        }
+    }
+
+    /**
+     * Queues a datagram to be sent on the pacer's thread once the destination's bucket allows it. A send that fails is
+     * logged, as there is no one left to tell.
+     *
+     * @return false if the destination's queue is full. The datagram is dropped and counted.
+     * @throws IllegalStateException if the pacer has not been started.
+     */
+    public boolean defer(final InetSocketAddress destination, final int bytes, final Send send) {
+        final UdpCommon<?> udpCommon = checkStarted();
+        final Peer peer = peer(destination, System.nanoTime());
+        synchronized (peer) {
+            if(closed || peer.queue.size() >= maxQueuedDatagrams) {
+                udpCommon.getMetrics().recordPacingDrop();
+                return false;
+            }
+            peer.queue.add(new Deferred(bytes, send));
+            if(!peer.inBacklog) {
+                peer.inBacklog = true;
+                backlogged.add(peer);
+            }
+        }
+        LockSupport.unpark(drainThread());
+        return true;
+    }
+
+    public int getQueuedCount(final InetSocketAddress destination) {
+        final Peer peer = peers.get(destination);
+        if(null == peer) return 0;
+        synchronized (peer) {
+            return peer.queue.size();
+        }
+    }
+
+    /**
+     * @return false if a datagram sent to the destination now would have to wait.
+     */
+    public boolean isReady(final InetSocketAddress destination, final long nowNanos) {
+        final Peer peer = peers.get(destination);
+        return null == peer || peer.bucket.getTokens(nowNanos) >= 0;
+    }
+
+    /**
+     * @param rttNanos the round trip time of the datagram, or -1 if it is ambiguous.
+     */
+    public void onAck(final InetSocketAddress destination, final int bytes, final long rttNanos, final long nowNanos) {
+        final Peer peer = peers.get(destination);
+        if(null == peer) return;
+        peer.controller.onAck(bytes, rttNanos, nowNanos);
+        peer.update(nowNanos);
+    }
+
+    public void onRtt(final InetSocketAddress destination, final long rttNanos, final long nowNanos) {
+        final Peer peer = peers.get(destination);
+        if(null == peer) return;
+        peer.controller.onRtt(rttNanos, nowNanos);
+        peer.update(nowNanos);
+    }
+
+    public void onLoss(final InetSocketAddress destination, final long nowNanos) {
+        final Peer peer = peers.get(destination);
+        if(null == peer) return;
+        peer.controller.onLoss(nowNanos);
+        peer.update(nowNanos);
+    }
+
+    /**
+     * @return the rate data is sent to the destination at, in bytes per second, or -1 if nothing has been sent to it.
+     */
+    public double getRate(final InetSocketAddress destination) {
+        final Peer peer = peers.get(destination);
+        return null == peer ? -1 : peer.controller.getRate();
+    }
+
+    /**
+     * Forgets the destination's rate, and drops the datagrams deferred for it.
+     */
+    public void forget(final InetSocketAddress destination) {
+        final Peer peer = peers.remove(destination);
+        if(null == peer) return;
+        synchronized (peer) {
+            peer.queue.clear();
+        }
+    }
+
+    /**
+     * Stops the pacer's thread. Deferred datagrams are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if(null != drainThread) LockSupport.unpark(drainThread);
+        for(final InetSocketAddress destination : peers.keySet()) {
+            forget(destination);
+        }
+    }
+
+    private Peer peer(final InetSocketAddress destination, final long nowNanos) {
+        return peers.computeIfAbsent(destination, d -> new Peer(controllers.apply(nowNanos), nowNanos));
+    }
+
+    private synchronized Thread drainThread() {
+        if(null == drainThread && !closed) {
+            drainThread = owner.getThreadMode().newDaemonThread(this::drain, "Pacer");
+            drainThread.start();
+        }
+        return drainThread;
+    }
+
+    private void drain() {
+        while (!closed) {
+            long waitNanos = Long.MAX_VALUE;
+            for(final Peer peer : backlogged) {
+                final long peerWait = peer.sendDeferred();
+                if(peerWait >= 0) waitNanos = Math.min(waitNanos, peerWait);
+            }
+            if(Long.MAX_VALUE == waitNanos) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+        }
+    }
+
+    private UdpCommon<?> checkStarted() {
+        final UdpCommon<?> udpCommon = owner;
+        if(null == udpCommon) throw new IllegalStateException("Pacer has not been started.");
+        return udpCommon;
+    }
+
+    /**
+     * Writes a deferred datagram.
+     */
+    @FunctionalInterface
+    public interface Send {
+        void send() throws IOException;
+    }
+
+    private final class Peer {
+        private final CongestionController controller;
+
+        private final TokenBucket bucket;
+
+        private final Queue<Deferred> queue = new ArrayDeque<>();
+
+        private boolean inBacklog;
+
+        private Peer(final CongestionController controller, final long nowNanos) {
+            this.controller = requireNonNull(controller, "controller");
+            this.bucket = new TokenBucket(controller.getRate(), burstBytes, nowNanos);
+        }
+
+        private void update(final long nowNanos) {
+            bucket.setRate(controller.getRate(), nowNanos);
+        }
+
+        /**
+         * Sends deferred datagrams until the bucket is in debt or the queue is empty.
+         *
+         * @return how long until the next datagram may be sent, or -1 if none is waiting.
+         */
+        private long sendDeferred() {
+            while (true) {
+                final Deferred next;
+                synchronized (this) {
+                    next = queue.peek();
+                    if(null == next) {
+                        inBacklog = false;
+                        backlogged.remove(this);
+                        return -1;
+                    }
+                    final long nowNanos = System.nanoTime();
+                    final long debtNanos = bucket.getDebtNanos(nowNanos);
+                    if(debtNanos > 0) return debtNanos;
+                    queue.poll();
+                    bucket.take(next.bytes, nowNanos);
+                }
+
+                try {
+                    next.send.send();
+                } catch (IOException | RuntimeException e) {
+                    owner.getLogger().debug("Failed to send paced datagram.", e);
+                }
+            }
+        }
+    }
+
+    private static final class Deferred {
+        private final int bytes;
+
+        private final Send send;
+
+        private Deferred(final int bytes, final Send send) {
+            this.bytes = bytes;
+            this.send = send;
+        }
+    }
+
+    private static final class FixedRate implements CongestionController {
+        private final double rate;
+
+        private FixedRate(final double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public double getRate() {
+            return rate;
+        }
+
+        @Override
+        public void onAck(final int bytes, final long rttNanos, final long nowNanos) {}
+
+        @Override
+        public void onRtt(final long rttNanos, final long nowNanos) {}
+
+        @Override
+        public void onLoss(final long nowNanos) {}
+    }
+}
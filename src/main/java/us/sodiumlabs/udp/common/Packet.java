@@ -23,13 +23,48 @@ public abstract class Packet {
     /**
      * A limitation of this protocol.
      */
-    private static final int MAX_INTERNAL_PACKET_BYTE_LENGTH = 65_443;
+    static final int MAX_INTERNAL_PACKET_BYTE_LENGTH = 65_443;
 
-    private static final int SIGNATURE_BYTE_SIZE = 32;
+    static final int SIGNATURE_BYTE_SIZE = 32;
 
-    private static final int LOWER_HEADER_BYTE_SIZE = 32;
+    static final int LOWER_HEADER_BYTE_SIZE = 32;
 
-    private static final int UNSIGNED_SHORT_BITMASK = 0xffff;
+    static final int HEADER_BYTE_SIZE = SIGNATURE_BYTE_SIZE + LOWER_HEADER_BYTE_SIZE;
+
+    static final int UNSIGNED_SHORT_BITMASK = 0xffff;
+
+    static final int UNSIGNED_BYTE_BITMASK = 0xff;
+
+    /**
+     * Set on each fragment of a message that was too large for a single datagram. The fragment's index and the
+     * message's fragment count are written in the two reserved bytes that follow the flags.
+     */
+    public static final int FLAG_FRAGMENT = 0x01;
+
+    /**
+     * Set on a packet whose payload is several messages, each prefixed by its length as an unsigned short.
+     */
+    public static final int FLAG_BATCH = 0x02;
+
+    /**
+     * Set on a packet whose payload, or whose whole message when it is a fragment, was compressed with the codec
+     * agreed on during the handshake.
+     */
+    public static final int FLAG_COMPRESSED = 0x04;
+
+    /**
+     * Set on a packet whose message, once decompressed, starts with its sequence number on its stream as an unsigned
+     * int. The receiver hands the stream's messages over in sequence order.
+     */
+    public static final int FLAG_SEQUENCED = 0x08;
+
+    /**
+     * Set on a packet that was signed once and sent to many peers. Its order count comes from the sender's broadcast
+     * counter rather than the destination's, so the receiver checks it against a replay window of its own.
+     */
+    public static final int FLAG_BROADCAST = 0x10;
+
+    public static final int MAX_FRAGMENT_COUNT = UNSIGNED_BYTE_BITMASK;
 
     public abstract UUID getSenderId();
 
@@ -45,6 +80,28 @@ public abstract class Packet {
 
     public abstract ByteSource getPayload();
 
+    /**
+     * Written in the first reserved header byte.
+     */
+    @Value.Default
+    public int getFlags() {
+        return 0;
+    }
+
+    @Value.Default
+    public int getFragmentIndex() {
+        return 0;
+    }
+
+    @Value.Default
+    public int getFragmentCount() {
+        return 0;
+    }
+
+    public boolean isFragment() {
+        return 0 != (getFlags() & FLAG_FRAGMENT);
+    }
+
     @Value.Check
     protected void check() {
         Preconditions.checkArgument( getLength() < MAX_INTERNAL_PACKET_BYTE_LENGTH,
@@ -54,6 +111,14 @@ public abstract class Packet {
             "Custom ID must fit within a short value.");
         Preconditions.checkArgument( getCustomId() >= 0,
             "Custom ID must be postive or zero.");
+        Preconditions.checkArgument( getFlags() >= 0 && getFlags() <= UNSIGNED_BYTE_BITMASK,
+            "Flags must fit within a byte.");
+        Preconditions.checkArgument( getFragmentCount() >= 0 && getFragmentCount() <= MAX_FRAGMENT_COUNT,
+            "Fragment count must fit within a byte.");
+        Preconditions.checkArgument( getFragmentIndex() >= 0 && getFragmentIndex() <= MAX_FRAGMENT_COUNT,
+            "Fragment index must fit within a byte.");
+        Preconditions.checkArgument( !isFragment() || getFragmentIndex() < getFragmentCount(),
+            "Fragment index must be less than the fragment count.");
     }
 
     @Override
@@ -85,23 +150,35 @@ public abstract class Packet {
     }
 
     public ByteBuffer toPacket() {
-        try {
-            final ByteBuffer writeBuffer = ByteBuffer.allocate(64 + getLength());
-            final ByteBuffer readBuffer = writeBuffer.asReadOnlyBuffer();
-
-            writeBuffer.put(getSignature().read());
-            putLowerHeaderOnWriteBuffer(getSenderId(), getType(), getLength(), getCustomId(), getOrderCount(), writeBuffer );
-            writeBuffer.put(getPayload().read());
+        final ByteBuffer writeBuffer = ByteBuffer.allocate(HEADER_BYTE_SIZE + getLength());
+        writeTo(writeBuffer);
+        writeBuffer.flip();
+        return writeBuffer.asReadOnlyBuffer();
+    }
 
-            return readBuffer;
+    /**
+     * Writes the datagram at the buffer's position, without copying the signature or payload into an array first.
+     *
+     * @throws java.nio.BufferOverflowException if the buffer does not have room for the datagram.
+     */
+    public void writeTo(final ByteBuffer out) {
+        try {
+            final ByteBufferOutputStream stream = new ByteBufferOutputStream(out);
+            getSignature().copyTo(stream);
+            putLowerHeaderOnWriteBuffer(getSenderId(), getType(), getFlags(), getFragmentIndex(), getFragmentCount(),
+                getLength(), getCustomId(), getOrderCount(), out);
+            getPayload().copyTo(stream);
         } catch (IOException e) {
             throw new RuntimeException("Unable to create packet.", e);
         }
     }
 
-    private static void putLowerHeaderOnWriteBuffer(
+    static void putLowerHeaderOnWriteBuffer(
         final UUID id,
         final PacketType type,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount,
         final int length,
         final int customId,
         final long orderCount,
@@ -110,8 +187,7 @@ public abstract class Packet {
         writeBuffer.putLong(id.getMostSignificantBits());
         writeBuffer.putLong(id.getLeastSignificantBits());
         writeBuffer.put(type.getPacketType());
-        // Advance the byte buffer
-        writeBuffer.put((byte) 0); writeBuffer.put((byte) 0); writeBuffer.put((byte) 0);
+        writeBuffer.put((byte) flags); writeBuffer.put((byte) fragmentIndex); writeBuffer.put((byte) fragmentCount);
         writeBuffer.putShort((short) length);
         writeBuffer.putShort((short) customId);
         writeBuffer.putLong(orderCount);
@@ -130,13 +206,15 @@ public abstract class Packet {
 
             final UUID senderId = new UUID(in.getLong(), in.getLong());
             final PacketType type = PacketType.fromPacketType(in.get());
-            // Advance the Byte Buffer.
-            in.get(); in.get(); in.get();
+            final int flags = UNSIGNED_BYTE_BITMASK & in.get();
+            final int fragmentIndex = UNSIGNED_BYTE_BITMASK & in.get();
+            final int fragmentCount = UNSIGNED_BYTE_BITMASK & in.get();
             final int length = UNSIGNED_SHORT_BITMASK & in.getShort();
 
             // Check signature here so we don't waste cycles reading anything else if it does not match.
             final ByteSource readSignableSource = readNBytes(length + LOWER_HEADER_BYTE_SIZE, signedPacket);
-            final ByteSource computedSignature = packetParser.signPayload(readSignableSource, secretKeySpec.apply(senderId));
+            final ByteSource computedSignature = packetParser.signPayload(
+                senderId, readSignableSource, packetParser.getKey(senderId, secretKeySpec));
             packetParser.compareSignatures(computedSignature, signature);
 
             final int customId = UNSIGNED_SHORT_BITMASK & in.getShort();
@@ -147,6 +225,9 @@ public abstract class Packet {
                 .withSignature(signature)
                 .withSenderId(senderId)
                 .withType(type)
+                .withFlags(flags)
+                .withFragmentIndex(fragmentIndex)
+                .withFragmentCount(fragmentCount)
                 .withLength(length)
                 .withCustomId(customId)
                 .withOrderCount(orderCount)
@@ -174,6 +255,9 @@ public abstract class Packet {
     static Packet createPacket(
         final UUID id,
         final PacketType type,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount,
         final int customId,
         final long packetOrderCount,
         final ByteSource payload,
@@ -183,17 +267,21 @@ public abstract class Packet {
         try {
             final int length = (int) payload.size();
 
-            final ByteBuffer writeBuffer = ByteBuffer.allocate(32);
-            putLowerHeaderOnWriteBuffer(id, type, length, customId, packetOrderCount, writeBuffer);
+            final ByteBuffer writeBuffer = ByteBuffer.allocate(LOWER_HEADER_BYTE_SIZE);
+            putLowerHeaderOnWriteBuffer(id, type, flags, fragmentIndex, fragmentCount, length, customId, packetOrderCount,
+                writeBuffer);
 
             final ByteSource packetToSign = ByteSource.concat(ByteSource.wrap(writeBuffer.array()), payload);
 
-            final ByteSource signature = packetParser.signPayload(packetToSign, secretKeySpec);
+            final ByteSource signature = packetParser.signPayload(id, packetToSign, secretKeySpec);
 
             return Packet.builder()
                 .withSignature(signature)
                 .withSenderId(id)
                 .withType(type)
+                .withFlags(flags)
+                .withFragmentIndex(fragmentIndex)
+                .withFragmentCount(fragmentCount)
                 .withLength(length)
                 .withCustomId(customId)
                 .withOrderCount(packetOrderCount)
@@ -0,0 +1,45 @@
+package us.sodiumlabs.udp.common;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * Receives connection and packet events from a client or server. Every method does nothing by default, so a listener
+ * only overrides the events it needs.
+ *
+ * Events are raised on the handler thread that handled the packet, after the packet has been verified and the protocol
+ * has done its own work with it. Packets passed to a listener may wrap a pooled receive buffer, so they are only valid
+ * until the method returns.
+ */
+public interface PacketListener<T> {
+    /**
+     * A server accepted a client's HELLO, or a client received the server's ACCEPT.
+     */
+    default void onConnect(final T endpoint, final UUID peerId, final InetSocketAddress source) {}
+
+    /**
+     * A client disconnected or its session expired, or a connected client received a REJECT.
+     */
+    default void onDisconnect(final T endpoint, final UUID peerId, final InetSocketAddress source) {}
+
+    /**
+     * A server received a client's PING.
+     */
+    default void onPing(final T endpoint, final UUID peerId, final InetSocketAddress source) {}
+
+    /**
+     * A server received the PONG that answers its PANG, or a client received the PANG that answers its PING.
+     */
+    default void onPong(final T endpoint, final UUID peerId, final InetSocketAddress source) {}
+
+    /**
+     * A DATA_ACK or DATA_NOACK packet arrived, before any fragments are put back together. Whole messages go to the
+     * {@link MessageHandler}.
+     */
+    default void onData(final T endpoint, final PacketView packet, final InetSocketAddress source) {}
+
+    /**
+     * An ACK or BAD_ACK packet arrived.
+     */
+    default void onAck(final T endpoint, final PacketView packet, final InetSocketAddress source) {}
+}
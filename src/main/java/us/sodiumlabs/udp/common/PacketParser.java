@@ -1,30 +1,58 @@
 package us.sodiumlabs.udp.common;
 
+import com.google.common.base.Preconditions;
 import com.google.common.io.ByteSource;
 import org.slf4j.Logger;
 
-import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
 public class PacketParser {
-    private final AtomicLong packetOrderCounter = new AtomicLong(0);
+    /**
+     * Order counts are kept per destination so that every peer sees a gapless sequence it can run a
+     * {@link ReplayWindow} over. New counters start from the wall clock, so a restarted sender or a forgotten peer
+     * continues ahead of anything the receiver has already seen.
+     */
+    private final ConcurrentMap<InetSocketAddress, AtomicLong> packetOrderCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Broadcasts take their order counts from a counter of their own, so that sending one does not move any
+     * destination's counter, and a receiver's replay window for the sender's other packets never skips ahead.
+     */
+    private final AtomicLong broadcastOrderCounter = new AtomicLong(System.currentTimeMillis() << 20);
 
     public static final String HMAC_SHA_256 = "HmacSHA256";
 
     private final Logger logger;
 
+    private final HmacEngine hmacEngine;
+
     PacketParser(final Logger logger) {
+        this(logger, new HmacEngine(10_000, 10, TimeUnit.MINUTES));
+    }
+
+    PacketParser(final Logger logger, final HmacEngine hmacEngine) {
         this.logger = requireNonNull(logger, "logger");
+        this.hmacEngine = requireNonNull(hmacEngine, "hmacEngine");
+    }
+
+    public HmacEngine getHmacEngine() {
+        return hmacEngine;
     }
 
     public Packet parsePacket(final ByteBuffer packet, final Function<UUID, SecretKeySpec> secret)
@@ -36,18 +64,328 @@ public class PacketParser {
             .build();
     }
 
-    Packet createPacket(final PacketType type, final UUID id, final ByteSource data, final SecretKeySpec secret) {
+    /**
+     * Verifies the packet in place and returns a flyweight view over it. No part of the packet is copied.
+     */
+    public PacketView parsePacketView(final ByteBuffer packet, final Function<UUID, SecretKeySpec> secret)
+    {
+        final PacketView view = new PacketView().wrap(packet);
+        if(!isSignatureValid(view, secret)) {
+            throw new RuntimeException("Invalid signature!");
+        }
+        return view;
+    }
+
+    /**
+     * Checks the signature of a wrapped view without throwing when it does not match.
+     */
+    public boolean isSignatureValid(final PacketView view, final Function<UUID, SecretKeySpec> secret) {
+        try {
+            return hmacEngine.verify(view.getSenderId(), secret, view.getSignedRegion(), view.getSignature());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("This JVM does not support the hashing function.", e);
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException("Failed to read secret key.", e);
+        }
+    }
+
+    Packet createPacket(
+        final PacketType type,
+        final UUID id,
+        final InetSocketAddress destination,
+        final ByteSource data,
+        final SecretKeySpec secret
+    ) {
+        return createPacket(type, id, destination, data, 0, secret);
+    }
+
+    Packet createPacket(
+        final PacketType type,
+        final UUID id,
+        final InetSocketAddress destination,
+        final ByteSource data,
+        final int flags,
+        final SecretKeySpec secret
+    ) {
+        return createPacket(type, id, destination, data, flags, 0, secret);
+    }
+
+    Packet createPacket(
+        final PacketType type,
+        final UUID id,
+        final InetSocketAddress destination,
+        final ByteSource data,
+        final int flags,
+        final int customId,
+        final SecretKeySpec secret
+    ) {
+        return createPacket(type, id, nextOrderCount(destination), data, flags, customId, secret);
+    }
+
+    /**
+     * @param orderCount an order count reserved with {@link #nextOrderCount(InetSocketAddress)}.
+     */
+    Packet createPacket(
+        final PacketType type,
+        final UUID id,
+        final long orderCount,
+        final ByteSource data,
+        final int flags,
+        final int customId,
+        final SecretKeySpec secret
+    ) {
         return new CreatePacketBuilder()
             .withId(id)
             .withType(type)
-            .withCustomId(0)
-            .withPacketOrderCount(packetOrderCounter.getAndIncrement())
+            .withFlags(flags)
+            .withFragmentIndex(0)
+            .withFragmentCount(0)
+            .withCustomId(customId)
+            .withPacketOrderCount(orderCount)
             .withPayload(data)
             .withPacketParser(this)
             .withSecretKeySpec(secret)
             .build();
     }
 
+    /**
+     * Splits the data into fragments of at most {@code maxFragmentPayload} bytes. The fragments take consecutive order
+     * counts, so the order count of the first one, which every fragment can derive from its own order count and index,
+     * identifies the message.
+     *
+     * @param flags    set on every fragment along with the FRAGMENT flag.
+     * @param customId set on every fragment.
+     */
+    List<Packet> createFragments(
+        final PacketType type,
+        final UUID id,
+        final InetSocketAddress destination,
+        final ByteSource data,
+        final int maxFragmentPayload,
+        final int flags,
+        final int customId,
+        final SecretKeySpec secret
+    ) throws IOException {
+        Preconditions.checkArgument(maxFragmentPayload > 0, "Fragments must carry some data.");
+        final long size = data.size();
+        final int fragmentCount = (int) Math.min(Integer.MAX_VALUE, (size + maxFragmentPayload - 1) / maxFragmentPayload);
+        Preconditions.checkArgument(fragmentCount > 1, "Data fits in a single packet.");
+        Preconditions.checkArgument(fragmentCount <= Packet.MAX_FRAGMENT_COUNT,
+            "Data would need more than %s fragments.", Packet.MAX_FRAGMENT_COUNT);
+
+        final long messageId = nextOrderCounts(destination, fragmentCount);
+        final List<Packet> fragments = new ArrayList<>(fragmentCount);
+        for(int i = 0; i < fragmentCount; i++) {
+            fragments.add(new CreatePacketBuilder()
+                .withId(id)
+                .withType(type)
+                .withFlags(flags | Packet.FLAG_FRAGMENT)
+                .withFragmentIndex(i)
+                .withFragmentCount(fragmentCount)
+                .withCustomId(customId)
+                .withPacketOrderCount(messageId + i)
+                .withPayload(data.slice((long) i * maxFragmentPayload, maxFragmentPayload))
+                .withPacketParser(this)
+                .withSecretKeySpec(secret)
+                .build());
+        }
+        return fragments;
+    }
+
+    /**
+     * Writes a full format packet at the buffer's position and signs it in place, leaving the position after it. The
+     * payload is not consumed.
+     *
+     * @param orderCount an order count reserved with {@link #nextOrderCount(InetSocketAddress)}.
+     */
+    void writePacket(
+        final ByteBuffer out,
+        final PacketType type,
+        final UUID id,
+        final long orderCount,
+        final int flags,
+        final int customId,
+        final ByteBuffer payload,
+        final SecretKeySpec secret
+    ) {
+        writePacket(out, type, id, orderCount, flags, 0, 0, customId, payload, secret);
+    }
+
+    void writePacket(
+        final ByteBuffer out,
+        final PacketType type,
+        final UUID id,
+        final long orderCount,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount,
+        final int customId,
+        final ByteBuffer payload,
+        final SecretKeySpec secret
+    ) {
+        Preconditions.checkArgument(payload.remaining() <= Packet.UNSIGNED_SHORT_BITMASK, "Payload is too large.");
+        final int start = out.position();
+        out.position(start + Packet.SIGNATURE_BYTE_SIZE);
+        Packet.putLowerHeaderOnWriteBuffer(
+            id, type, flags, fragmentIndex, fragmentCount, payload.remaining(), customId, orderCount, out);
+        out.put(payload.duplicate());
+
+        sign(out, start + Packet.SIGNATURE_BYTE_SIZE, out.position(), start, Packet.SIGNATURE_BYTE_SIZE, id, secret);
+    }
+
+    /**
+     * Writes a packet in the {@link CompactHeader compact format} at the buffer's position, leaving the position after
+     * it.
+     *
+     * @param orderCount an order count reserved with {@link #nextOrderCounts(InetSocketAddress, int)}.
+     */
+    void writeCompactPacket(
+        final ByteBuffer out,
+        final PacketType type,
+        final UUID id,
+        final CompactSession session,
+        final long orderCount,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount,
+        final ByteSource data,
+        final SecretKeySpec secret
+    ) throws IOException {
+        final int start = out.position();
+        putCompactHeader(out, type, session, orderCount, flags, fragmentIndex, fragmentCount);
+        data.copyTo(new ByteBufferOutputStream(out));
+        signCompact(out, start, id, secret);
+    }
+
+    /**
+     * Writes a packet in the {@link CompactHeader compact format}. The payload is not consumed.
+     */
+    void writeCompactPacket(
+        final ByteBuffer out,
+        final PacketType type,
+        final UUID id,
+        final CompactSession session,
+        final long orderCount,
+        final int flags,
+        final ByteBuffer payload,
+        final SecretKeySpec secret
+    ) {
+        final int start = out.position();
+        putCompactHeader(out, type, session, orderCount, flags, 0, 0);
+        out.put(payload.duplicate());
+        signCompact(out, start, id, secret);
+    }
+
+    private static void putCompactHeader(
+        final ByteBuffer out,
+        final PacketType type,
+        final CompactSession session,
+        final long orderCount,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount
+    ) {
+        Preconditions.checkArgument(CompactHeader.isCompactable(type), "%s packets are never compact.", type);
+        out.put((byte) CompactHeader.MARKER);
+        out.put(type.getPacketType());
+        out.put((byte) flags);
+        out.putInt(session.getSessionId());
+        CompactHeader.putVarLong(out, orderCount - session.getLocalBase());
+        CompactHeader.putVarLong(out, 0);
+        if(0 != (flags & Packet.FLAG_FRAGMENT)) {
+            out.put((byte) fragmentIndex);
+            out.put((byte) fragmentCount);
+        }
+    }
+
+    private void signCompact(final ByteBuffer out, final int start, final UUID id, final SecretKeySpec secret) {
+        final int macStart = out.position();
+        out.position(macStart + CompactHeader.MAC_BYTE_SIZE);
+        sign(out, start, macStart, macStart, CompactHeader.MAC_BYTE_SIZE, id, secret);
+    }
+
+    /**
+     * Signs the bytes from {@code signedStart} to {@code signedEnd} into the signature bytes at {@code signatureStart}.
+     */
+    private void sign(
+        final ByteBuffer out,
+        final int signedStart,
+        final int signedEnd,
+        final int signatureStart,
+        final int signatureLength,
+        final UUID id,
+        final SecretKeySpec secret
+    ) {
+        final ByteBuffer signedRegion = out.duplicate();
+        signedRegion.limit(signedEnd);
+        signedRegion.position(signedStart);
+        final ByteBuffer signature = out.duplicate();
+        signature.limit(signatureStart + signatureLength);
+        signature.position(signatureStart);
+        try {
+            hmacEngine.signInto(id, secret, signedRegion, signature);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("This JVM does not support the hashing function.", e);
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException("Failed to read secret key.", e);
+        }
+    }
+
+    long nextOrderCount(final InetSocketAddress destination) {
+        return nextOrderCounts(destination, 1);
+    }
+
+    /**
+     * Reserves a run of consecutive order counts.
+     *
+     * @return the first of them.
+     */
+    long nextOrderCounts(final InetSocketAddress destination, final int count) {
+        return packetOrderCounters
+            .computeIfAbsent(destination, d -> new AtomicLong(System.currentTimeMillis() << 20))
+            .getAndAdd(count);
+    }
+
+    /**
+     * Takes an order count for a destination without creating a counter for it: the next of its counter if it has one,
+     * and otherwise one from the clock, where a new counter would start.
+     */
+    long nextOrderCountWithoutCounter(final InetSocketAddress destination) {
+        final AtomicLong counter = packetOrderCounters.get(destination);
+        return null == counter ? System.currentTimeMillis() << 20 : counter.getAndIncrement();
+    }
+
+    /**
+     * Reserves a run of order counts for a broadcast, which are the same for every destination.
+     *
+     * @return the first of them.
+     */
+    long nextBroadcastOrderCounts(final int count) {
+        return broadcastOrderCounter.getAndAdd(count);
+    }
+
+    /**
+     * @return the order count the next broadcast will take. A peer told it when it connects starts its broadcast
+     * replay window just before it.
+     */
+    public long getNextBroadcastOrderCount() {
+        return broadcastOrderCounter.get();
+    }
+
+    /**
+     * Drops the order counter for a destination that is no longer connected.
+     */
+    public void forgetPeer(final InetSocketAddress destination) {
+        packetOrderCounters.remove(destination);
+    }
+
+    /**
+     * @return how many destinations have an order counter.
+     */
+    public int getPeerCount() {
+        return packetOrderCounters.size();
+    }
+
     private String byteSourceToString(final ByteSource sig) throws IOException {
         final StringBuilder builder = new StringBuilder();
 
@@ -73,13 +411,18 @@ public class PacketParser {
         }
     }
 
-    ByteSource signPayload(final ByteSource payload, final SecretKeySpec secret) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+    SecretKeySpec getKey(final UUID id, final Function<UUID, SecretKeySpec> secret)
+        throws NoSuchAlgorithmException, InvalidKeyException
+    {
+        return hmacEngine.getKey(id, secret);
+    }
+
+    ByteSource signPayload(final UUID id, final ByteSource payload, final SecretKeySpec secret)
+        throws NoSuchAlgorithmException, InvalidKeyException, IOException
+    {
         if(logger.isTraceEnabled()) {
             logger.trace("Signing payload:\n" + byteSourceToString(payload));
         }
-        final Mac mac = Mac.getInstance(HMAC_SHA_256);
-        mac.init(secret);
-        mac.update(payload.read());
-        return ByteSource.wrap(mac.doFinal());
+        return ByteSource.wrap(hmacEngine.sign(id, secret, payload));
     }
 }
@@ -26,6 +26,7 @@ public enum PacketType {
     ACK(PacketSenderContext.BOTH, (byte) 0x08),
     DATA_ACK(PacketSenderContext.BOTH, (byte) 0x09),
     DATA_NOACK(PacketSenderContext.BOTH, (byte) 0x0a),
+    COOKIE(PacketSenderContext.SERVER_ONLY, (byte) 0x0b),
     INVALID(PacketSenderContext.BOTH, (byte) 0xff);
 
     private static final Map<Byte, PacketType> packetTypeMap;
@@ -0,0 +1,260 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static us.sodiumlabs.udp.common.Packet.HEADER_BYTE_SIZE;
+import static us.sodiumlabs.udp.common.Packet.SIGNATURE_BYTE_SIZE;
+import static us.sodiumlabs.udp.common.Packet.UNSIGNED_BYTE_BITMASK;
+import static us.sodiumlabs.udp.common.Packet.UNSIGNED_SHORT_BITMASK;
+
+/**
+ * A read-only flyweight over a received packet.
+ *
+ * Header fields are decoded on access from fixed offsets in the wrapped buffer, and the signature, signed region and
+ * payload are exposed as slices of it. Nothing is copied unless {@link #toPacket()} or {@link #copyPayload()} is
+ * called, so a view is only valid for as long as the buffer it wraps; pooled receive buffers are reused as soon as
+ * the handler returns.
+ *
+ * A view can also wrap a packet in the {@link CompactHeader compact format}, whose header is decoded once when it is
+ * wrapped since its fields are not at fixed offsets.
+ */
+public final class PacketView {
+    private static final int SENDER_ID_OFFSET = SIGNATURE_BYTE_SIZE;
+
+    private static final int TYPE_OFFSET = SENDER_ID_OFFSET + 16;
+
+    private static final int FLAGS_OFFSET = TYPE_OFFSET + 1;
+
+    private static final int FRAGMENT_INDEX_OFFSET = FLAGS_OFFSET + 1;
+
+    private static final int FRAGMENT_COUNT_OFFSET = FRAGMENT_INDEX_OFFSET + 1;
+
+    private static final int LENGTH_OFFSET = FRAGMENT_COUNT_OFFSET + 1;
+
+    private static final int CUSTOM_ID_OFFSET = LENGTH_OFFSET + 2;
+
+    private static final int ORDER_COUNT_OFFSET = CUSTOM_ID_OFFSET + 2;
+
+    private ByteBuffer buffer;
+
+    private int base;
+
+    private boolean compact;
+
+    // Compact packets have variable length fields, so they are decoded once by wrapCompact.
+    private long senderIdMostSignificantBits;
+
+    private long senderIdLeastSignificantBits;
+
+    private int fragmentIndex;
+
+    private int fragmentCount;
+
+    private int customId;
+
+    private long orderCount;
+
+    private int payloadOffset;
+
+    private int payloadLength;
+
+    /**
+     * Points this view at the packet starting at the buffer's position. The buffer's position and limit are not
+     * modified.
+     *
+     * @return this view.
+     */
+    public PacketView wrap(final ByteBuffer buffer) {
+        Preconditions.checkArgument(buffer.remaining() >= HEADER_BYTE_SIZE, "Packet is shorter than its header.");
+        this.buffer = buffer;
+        this.base = buffer.position();
+        this.compact = false;
+        Preconditions.checkArgument(buffer.remaining() >= HEADER_BYTE_SIZE + getLength(),
+            "Packet is shorter than its declared length.");
+        return this;
+    }
+
+    /**
+     * Points this view at a packet in the compact format and decodes its header. The sender and absolute order count
+     * come from the compact session agreed on with the packet's source.
+     *
+     * @return this view, or null if the packet is not a compact packet of the session.
+     */
+    public PacketView wrapCompact(final ByteBuffer buffer, final CompactSession session) {
+        if(!CompactHeader.isPacketOf(buffer, session)) return null;
+        final int start = buffer.position();
+        final int limit = buffer.limit();
+
+        final int[] end = new int[1];
+        final int macOffset = limit - CompactHeader.MAC_BYTE_SIZE;
+        try {
+            final long delta = CompactHeader.getVarLong(buffer, start + CompactHeader.ORDER_COUNT_OFFSET, macOffset, end);
+            final long custom = CompactHeader.getVarLong(buffer, end[0], macOffset, end);
+            int index = end[0];
+
+            final int flags = UNSIGNED_BYTE_BITMASK & buffer.get(start + CompactHeader.FLAGS_OFFSET);
+            int fragmentIndex = 0;
+            int fragmentCount = 0;
+            if(0 != (flags & Packet.FLAG_FRAGMENT)) {
+                if(index + 2 > macOffset) return null;
+                fragmentIndex = UNSIGNED_BYTE_BITMASK & buffer.get(index++);
+                fragmentCount = UNSIGNED_BYTE_BITMASK & buffer.get(index++);
+            }
+            if(index > macOffset || custom > UNSIGNED_SHORT_BITMASK) return null;
+
+            this.buffer = buffer;
+            this.base = start;
+            this.compact = true;
+            this.senderIdMostSignificantBits = session.getPeerId().getMostSignificantBits();
+            this.senderIdLeastSignificantBits = session.getPeerId().getLeastSignificantBits();
+            this.orderCount = session.getRemoteBase() + delta;
+            this.customId = (int) custom;
+            this.fragmentIndex = fragmentIndex;
+            this.fragmentCount = fragmentCount;
+            this.payloadOffset = index - start;
+            this.payloadLength = macOffset - index;
+            return this;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Reads the type of a raw packet without wrapping it.
+     *
+     * @param compact whether the datagram is a compact packet of a session agreed on with its source.
+     * @return the type, or {@link PacketType#INVALID} if the datagram is too short to have one.
+     */
+    public static PacketType peekType(final ByteBuffer packet, final boolean compact) {
+        if(compact) {
+            return PacketType.fromPacketType(packet.get(packet.position() + CompactHeader.TYPE_OFFSET));
+        }
+        if(packet.remaining() < HEADER_BYTE_SIZE) return PacketType.INVALID;
+        return PacketType.fromPacketType(packet.get(packet.position() + TYPE_OFFSET));
+    }
+
+    public long getSenderIdMostSignificantBits() {
+        if(compact) return senderIdMostSignificantBits;
+        return buffer.getLong(base + SENDER_ID_OFFSET);
+    }
+
+    public long getSenderIdLeastSignificantBits() {
+        if(compact) return senderIdLeastSignificantBits;
+        return buffer.getLong(base + SENDER_ID_OFFSET + 8);
+    }
+
+    public UUID getSenderId() {
+        return new UUID(getSenderIdMostSignificantBits(), getSenderIdLeastSignificantBits());
+    }
+
+    public PacketType getType() {
+        if(compact) return PacketType.fromPacketType(buffer.get(base + CompactHeader.TYPE_OFFSET));
+        return PacketType.fromPacketType(buffer.get(base + TYPE_OFFSET));
+    }
+
+    public int getFlags() {
+        if(compact) return UNSIGNED_BYTE_BITMASK & buffer.get(base + CompactHeader.FLAGS_OFFSET);
+        return UNSIGNED_BYTE_BITMASK & buffer.get(base + FLAGS_OFFSET);
+    }
+
+    public boolean isFragment() {
+        return 0 != (getFlags() & Packet.FLAG_FRAGMENT);
+    }
+
+    public int getFragmentIndex() {
+        if(compact) return fragmentIndex;
+        return UNSIGNED_BYTE_BITMASK & buffer.get(base + FRAGMENT_INDEX_OFFSET);
+    }
+
+    public int getFragmentCount() {
+        if(compact) return fragmentCount;
+        return UNSIGNED_BYTE_BITMASK & buffer.get(base + FRAGMENT_COUNT_OFFSET);
+    }
+
+    public int getLength() {
+        if(compact) return payloadLength;
+        return UNSIGNED_SHORT_BITMASK & buffer.getShort(base + LENGTH_OFFSET);
+    }
+
+    public int getCustomId() {
+        if(compact) return customId;
+        return UNSIGNED_SHORT_BITMASK & buffer.getShort(base + CUSTOM_ID_OFFSET);
+    }
+
+    public long getOrderCount() {
+        if(compact) return orderCount;
+        return buffer.getLong(base + ORDER_COUNT_OFFSET);
+    }
+
+    public ByteBuffer getSignature() {
+        if(compact) return slice(payloadOffset + payloadLength, CompactHeader.MAC_BYTE_SIZE);
+        return slice(0, SIGNATURE_BYTE_SIZE);
+    }
+
+    /**
+     * @return the bytes covered by the signature: the lower header followed by the payload.
+     */
+    public ByteBuffer getSignedRegion() {
+        if(compact) return slice(0, payloadOffset + payloadLength);
+        return slice(SIGNATURE_BYTE_SIZE, HEADER_BYTE_SIZE - SIGNATURE_BYTE_SIZE + getLength());
+    }
+
+    public ByteBuffer getPayload() {
+        if(compact) return slice(payloadOffset, payloadLength);
+        return slice(HEADER_BYTE_SIZE, getLength());
+    }
+
+    private ByteBuffer slice(final int offset, final int length) {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(base + offset + length);
+        slice.position(base + offset);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    public byte[] copyPayload() {
+        final byte[] payload = new byte[getLength()];
+        getPayload().get(payload);
+        return payload;
+    }
+
+    /**
+     * @return a detached copy of this packet that outlives the wrapped buffer.
+     */
+    public Packet toPacket() {
+        final ByteBuffer signatureBuffer = getSignature();
+        final byte[] signature = new byte[signatureBuffer.remaining()];
+        signatureBuffer.get(signature);
+
+        return Packet.builder()
+            .withSignature(ByteSource.wrap(signature))
+            .withSenderId(getSenderId())
+            .withType(getType())
+            .withFlags(getFlags())
+            .withFragmentIndex(getFragmentIndex())
+            .withFragmentCount(getFragmentCount())
+            .withLength(getLength())
+            .withCustomId(getCustomId())
+            .withOrderCount(getOrderCount())
+            .withPayload(ByteSource.wrap(copyPayload()))
+            .build();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this.getClass())
+            .add("Sender Id", getSenderId())
+            .add("Length", getLength())
+            .add("Type", getType())
+            .add("Order Count", getOrderCount())
+            .toString();
+    }
+}
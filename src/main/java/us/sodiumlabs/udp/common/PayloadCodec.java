@@ -0,0 +1,35 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Compresses DATA payloads. Both ends advertise their codec's capability in the custom ID of the HELLO and ACCEPT
+ * packets, and payloads are only compressed once both ends have agreed on it. Compressed packets carry the COMPRESSED
+ * flag.
+ *
+ * Implementations must be safe to call from any thread.
+ */
+public interface PayloadCodec {
+    /**
+     * @return a single bit that identifies the codec during the handshake.
+     */
+    int getCapability();
+
+    /**
+     * @return the compressed payload, or null if it should be sent as it is, such as when it is small or would not
+     * shrink.
+     */
+    byte[] compress(ByteSource payload) throws IOException;
+
+    /**
+     * Decompresses the remaining bytes of the buffer and passes the result to the consumer. The decompressed buffer
+     * may be reused, so it is only valid until the consumer returns.
+     *
+     * @throws IllegalArgumentException if the data is corrupt or decompresses to more than the codec allows.
+     */
+    void decompress(ByteBuffer compressed, Consumer<ByteBuffer> consumer);
+}
@@ -0,0 +1,318 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Puts fragmented messages back together.
+ *
+ * Each message is copied into a single heap buffer as its fragments arrive, at an offset given by the fragment's
+ * index, so a complete message is never copied again. Heap buffers are cheap to allocate and are freed with the
+ * message; a direct buffer per message costs far more to allocate than it saves on the one copy in. Every fragment but
+ * the last has the same length, which fixes the size of the buffer; a last fragment that arrives before any other is
+ * held on its own until then. The bytes held for incomplete messages are bounded, and fragments that would go over the
+ * budget are dropped. Messages that are still incomplete after the timeout are dropped by the next fragment to arrive,
+ * or by a sweep that runs several times per timeout, so that an abandoned message does not hold its bytes until more
+ * fragments arrive. Nothing is started until the first message is begun; the sweep runs on a thread of the owner's
+ * thread mode once the reassembler has been {@link #start(UdpCommon) started}, and on a platform thread otherwise.
+ */
+public class Reassembler implements AutoCloseable {
+    private final UdpMetrics metrics;
+
+    private final long maxBufferedBytes;
+
+    private final long timeoutNanos;
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private final ConcurrentMap<MessageKey, Partial> partials = new ConcurrentHashMap<>();
+
+    private final TimingWheel<Partial> timeouts;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    private volatile long nextSweepNanos;
+
+    private volatile ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    private ScheduledExecutorService sweepThread;
+
+    private boolean closed;
+
+    public Reassembler(
+        final UdpMetrics metrics,
+        final long maxBufferedBytes,
+        final long timeout,
+        final TimeUnit unit
+    ) {
+        Preconditions.checkArgument(maxBufferedBytes > 0, "Reassembly needs some memory.");
+        Preconditions.checkArgument(timeout > 0, "Timeout must be positive.");
+        this.metrics = requireNonNull(metrics, "metrics");
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.timeoutNanos = unit.toNanos(timeout);
+
+        final long now = System.nanoTime();
+        final long tickNanos = Math.max(1, timeoutNanos / 8);
+        this.timeouts = new TimingWheel<>(tickNanos, TimeUnit.NANOSECONDS, now);
+        this.nextSweepNanos = now + tickNanos;
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.threadMode = owner.getThreadMode();
+    }
+
+    /**
+     * Adds a verified fragment to its message.
+     *
+     * @return the whole message once its last missing fragment arrives, otherwise null. The buffer must be handed back
+     * with {@link #release(ByteBuffer)} once it is no longer read.
+     */
+    public ByteBuffer accept(final PacketView fragment, final long nowNanos) {
+        if(nowNanos - nextSweepNanos >= 0) sweep(nowNanos);
+
+        final int index = fragment.getFragmentIndex();
+        final int count = fragment.getFragmentCount();
+        if(count < 2 || index >= count) {
+            metrics.recordFragmentDropped();
+            return null;
+        }
+
+        final MessageKey key = new MessageKey(fragment.getSenderIdMostSignificantBits(),
+            fragment.getSenderIdLeastSignificantBits(), fragment.getOrderCount() - index,
+            0 != (fragment.getFlags() & Packet.FLAG_BROADCAST));
+
+        Partial partial = partials.get(key);
+        if(null == partial) {
+            startSweeping();
+            final Partial created = new Partial(key, count);
+            created.timeout = timeouts.schedule(created, nowNanos + timeoutNanos);
+            partial = partials.putIfAbsent(key, created);
+            if(null == partial) {
+                partial = created;
+            } else {
+                created.timeout.cancel();
+            }
+        }
+
+        synchronized (partial) {
+            if(partial.done || partial.fragmentCount != count) {
+                metrics.recordFragmentDropped();
+                return null;
+            }
+            if(partial.hasFragment(index)) return null;
+
+            if(!partial.add(index, fragment.getPayload())) {
+                metrics.recordFragmentDropped();
+                return null;
+            }
+
+            if(partial.received < count) return null;
+
+            partial.done = true;
+            partials.remove(key, partial);
+            partial.timeout.cancel();
+            final ByteBuffer message = partial.buffer;
+            message.limit(partial.fragmentLength * (count - 1) + partial.lastLength);
+            message.position(0);
+            return message;
+        }
+    }
+
+    /**
+     * Returns a message's bytes to the budget.
+     */
+    public void release(final ByteBuffer message) {
+        if(null == message) return;
+        bufferedBytes.addAndGet(-message.capacity());
+    }
+
+    /**
+     * Drops every message that has timed out. Only one thread sweeps at a time; other callers return immediately.
+     */
+    public void sweep(final long nowNanos) {
+        if(!sweeping.compareAndSet(false, true)) return;
+        try {
+            timeouts.advance(nowNanos, timeout -> {
+                final Partial partial = timeout.getValue();
+                synchronized (partial) {
+                    if(partial.done) return;
+                    drop(partial);
+                }
+                metrics.recordReassemblyTimeout();
+            });
+            nextSweepNanos = nowNanos + timeouts.getTickNanos();
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private synchronized void startSweeping() {
+        if(null != sweepThread || closed) return;
+        sweepThread = Executors.newSingleThreadScheduledExecutor(r -> threadMode.newDaemonThread(r, "Reassembler"));
+        final long periodNanos = timeouts.getTickNanos();
+        sweepThread.scheduleAtFixedRate(() -> sweep(System.nanoTime()), periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if(null != sweepThread) sweepThread.shutdownNow();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public int getPendingCount() {
+        return partials.size();
+    }
+
+    private boolean reserve(final long bytes) {
+        long current;
+        do {
+            current = bufferedBytes.get();
+            if(current + bytes > maxBufferedBytes) return false;
+        } while (!bufferedBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    private void drop(final Partial partial) {
+        partial.done = true;
+        partials.remove(partial.key, partial);
+        if(null != partial.buffer) bufferedBytes.addAndGet(-partial.buffer.capacity());
+        if(null != partial.earlyLast) bufferedBytes.addAndGet(-partial.earlyLast.length);
+        partial.buffer = null;
+        partial.earlyLast = null;
+    }
+
+    private final class Partial {
+        private final MessageKey key;
+
+        private final int fragmentCount;
+
+        private final long[] receivedBits = new long[(Packet.MAX_FRAGMENT_COUNT + 64) / 64];
+
+        private int received;
+
+        private int fragmentLength = -1;
+
+        private int lastLength;
+
+        private ByteBuffer buffer;
+
+        private byte[] earlyLast;
+
+        private boolean done;
+
+        private TimingWheel.Timeout<Partial> timeout;
+
+        private Partial(final MessageKey key, final int fragmentCount) {
+            this.key = key;
+            this.fragmentCount = fragmentCount;
+        }
+
+        private boolean hasFragment(final int index) {
+            return 0 != (receivedBits[index >>> 6] & (1L << index));
+        }
+
+        /**
+         * @return false if the fragment does not fit the message or the budget.
+         */
+        private boolean add(final int index, final ByteBuffer payload) {
+            final int length = payload.remaining();
+            final boolean last = index == fragmentCount - 1;
+
+            if(-1 == fragmentLength) {
+                if(last) {
+                    if(!reserve(length)) return false;
+                    earlyLast = new byte[length];
+                    payload.get(earlyLast);
+                    return mark(index, length);
+                }
+
+                final long capacity = (long) length * fragmentCount;
+                if(capacity > Integer.MAX_VALUE || !reserve(capacity)) return false;
+                fragmentLength = length;
+                buffer = ByteBuffer.allocate((int) capacity);
+
+                if(null != earlyLast) {
+                    final byte[] lastBytes = earlyLast;
+                    earlyLast = null;
+                    bufferedBytes.addAndGet(-lastBytes.length);
+                    if(lastBytes.length > fragmentLength) {
+                        drop(this);
+                        return false;
+                    }
+                    buffer.position(fragmentLength * (fragmentCount - 1));
+                    buffer.put(lastBytes);
+                }
+            } else if(last ? length > fragmentLength : length != fragmentLength) {
+                return false;
+            }
+
+            buffer.position(fragmentLength * index);
+            buffer.put(payload);
+            return mark(index, length);
+        }
+
+        private boolean mark(final int index, final int length) {
+            receivedBits[index >>> 6] |= 1L << index;
+            received++;
+            if(index == fragmentCount - 1) lastLength = length;
+            return true;
+        }
+    }
+
+    private static final class MessageKey {
+        private final long senderMostSignificantBits;
+
+        private final long senderLeastSignificantBits;
+
+        private final long messageId;
+
+        /**
+         * Broadcasts are numbered apart from the sender's other packets, so their message IDs may be the same.
+         */
+        private final boolean broadcast;
+
+        private MessageKey(
+            final long senderMostSignificantBits,
+            final long senderLeastSignificantBits,
+            final long messageId,
+            final boolean broadcast
+        ) {
+            this.senderMostSignificantBits = senderMostSignificantBits;
+            this.senderLeastSignificantBits = senderLeastSignificantBits;
+            this.messageId = messageId;
+            this.broadcast = broadcast;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if(this == o) return true;
+            if(!(o instanceof MessageKey)) return false;
+            final MessageKey other = (MessageKey) o;
+            return messageId == other.messageId
+                && broadcast == other.broadcast
+                && senderMostSignificantBits == other.senderMostSignificantBits
+                && senderLeastSignificantBits == other.senderLeastSignificantBits;
+        }
+
+        @Override
+        public int hashCode() {
+            final int hash = Long.hashCode(messageId * 31 + senderMostSignificantBits) * 31
+                + Long.hashCode(senderLeastSignificantBits);
+            return broadcast ? ~hash : hash;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package us.sodiumlabs.udp.common;
+
+public enum ReceiveMode {
+    /**
+     * Receives through {@link java.net.DatagramSocket}, allocating a new array for every datagram.
+     */
+    DATAGRAM_SOCKET,
+
+    /**
+     * Receives through {@link java.nio.channels.DatagramChannel} into pooled direct buffers.
+     */
+    DATAGRAM_CHANNEL
+}
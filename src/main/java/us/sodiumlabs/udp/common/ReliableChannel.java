@@ -0,0 +1,452 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers DATA_ACK packets reliably.
+ *
+ * Every peer has a window of outstanding DATA_ACK packets keyed by signature, so an ACK is matched in O(1). A packet
+ * that is not acknowledged within the peer's retransmission timeout is sent again, byte for byte, with exponential
+ * back off. Received DATA_ACK packets are acknowledged selectively: their signatures are batched into a single ACK
+ * until the batch is full or the ack delay passes. A BAD_ACK makes the sender retransmit immediately.
+ *
+ * Every send returns a future that completes when the peer acknowledges the packets. It fails with a
+ * {@link TimeoutException} once a packet has used up its retransmits, and with an {@link IOException} if a BAD_ACK
+ * arrives after that or the peer is forgotten. Callbacks attached to it run on the thread that handled the ACK or on
+ * the timer thread, so they should not block.
+ *
+ * Acknowledgements, with their round trip times, and retransmission timeouts are passed on to the owner's
+ * {@link Pacer pacer} as congestion signals. Retransmissions are sent from the timer thread or the thread that handled
+ * the BAD_ACK, which serve every peer, so they never wait for the pacer: a retransmission the pacer would hold back
+ * is deferred to its queue, and its timeout starts once it is actually sent.
+ */
+public class ReliableChannel implements AutoCloseable {
+    private static final int SIGNATURE_BYTE_SIZE = HmacEngine.SIGNATURE_BYTE_SIZE;
+
+    private final int windowSize;
+
+    private final int maxRetransmits;
+
+    private final int maxSignaturesPerAck;
+
+    private final long ackDelayNanos;
+
+    private final long minRtoNanos;
+
+    private final long maxRtoNanos;
+
+    private final ConcurrentMap<InetSocketAddress, Peer> peers = new ConcurrentHashMap<>();
+
+    private final TimingWheel<Object> timers;
+
+    private volatile UdpCommon<?> owner;
+
+    private ScheduledExecutorService timerThread;
+
+    public ReliableChannel(
+        final int windowSize,
+        final int maxRetransmits,
+        final int maxSignaturesPerAck,
+        final long ackDelay,
+        final long minRto,
+        final long maxRto,
+        final TimeUnit unit
+    ) {
+        Preconditions.checkArgument(windowSize > 0, "Window size must be positive.");
+        Preconditions.checkArgument(maxSignaturesPerAck > 0, "An ACK must carry at least one signature.");
+        this.windowSize = windowSize;
+        this.maxRetransmits = maxRetransmits;
+        this.maxSignaturesPerAck = maxSignaturesPerAck;
+        this.ackDelayNanos = unit.toNanos(ackDelay);
+        this.minRtoNanos = unit.toNanos(minRto);
+        this.maxRtoNanos = unit.toNanos(maxRto);
+        this.timers = new TimingWheel<>(Math.max(1, ackDelayNanos), TimeUnit.NANOSECONDS, System.nanoTime());
+    }
+
+    public static ReliableChannel withDefaults() {
+        return new ReliableChannel(256, 8, 32, 5, 20, 2_000, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void start(final UdpCommon<?> owner) {
+        if(null != timerThread) return;
+        this.owner = requireNonNull(owner, "owner");
+
+        timerThread = Executors.newSingleThreadScheduledExecutor(
+            r -> owner.getThreadMode().newDaemonThread(r, "ReliableTimer"));
+        final long tickNanos = timers.getTickNanos();
+        timerThread.scheduleAtFixedRate(() -> {
+            try {
+                timers.advance(System.nanoTime(), timeout -> onTimer(timeout.getValue()));
+            } catch (RuntimeException e) {
+                owner.getLogger().warn("Reliable timer failed.", e);
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sends a DATA_ACK packet and keeps it in the peer's window until it is acknowledged.
+     *
+     * @return a future that completes when the packet is acknowledged.
+     * @throws IOException if the peer's window is full or the first transmission fails.
+     */
+    public CompletableFuture<Void> send(final Packet packet, final InetSocketAddress destination) throws IOException {
+        return send(Collections.singletonList(packet), destination);
+    }
+
+    /**
+     * Sends several DATA_ACK packets, such as the fragments of one message. Either all of them fit in the peer's window
+     * or none are sent.
+     *
+     * @return a future that completes when every packet is acknowledged.
+     * @throws IOException if the peer's window cannot take every packet or a first transmission fails. Packets after
+     * the one that failed are not sent.
+     */
+    public CompletableFuture<Void> send(final List<Packet> packets, final InetSocketAddress destination)
+        throws IOException
+    {
+        checkStarted();
+
+        final Peer peer = peer(destination);
+        final List<Outstanding> batch = new ArrayList<>(packets.size());
+        for(final Packet packet : packets) {
+            Preconditions.checkArgument(PacketType.DATA_ACK == packet.getType(),
+                "Only DATA_ACK packets are acknowledged.");
+            batch.add(new Outstanding(peer, packet, SignatureKey.copyOf(packet.getSignature().read())));
+        }
+
+        synchronized (peer) {
+            if(peer.outstanding.size() + batch.size() > windowSize) {
+                throw new IOException(String.format("Send window to [%s] is full.", destination));
+            }
+            for(final Outstanding outstanding : batch) {
+                peer.outstanding.put(outstanding.key, outstanding);
+            }
+        }
+
+        for(int i = 0; i < batch.size(); i++) {
+            try {
+                transmit(batch.get(i));
+            } catch (IOException e) {
+                synchronized (peer) {
+                    for(final Outstanding unsent : batch.subList(i, batch.size())) {
+                        peer.outstanding.remove(unsent.key);
+                    }
+                }
+                batch.get(i).timeout.cancel();
+                for(final Outstanding unsent : batch.subList(i, batch.size())) {
+                    unsent.acknowledged.completeExceptionally(e);
+                }
+                throw e;
+            }
+        }
+
+        if(1 == batch.size()) return batch.get(0).acknowledged;
+        return CompletableFuture.allOf(batch.stream().map(o -> o.acknowledged).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Queues an acknowledgement for a received DATA_ACK packet.
+     */
+    public void onData(final PacketView packet, final InetSocketAddress source) {
+        final Peer peer = peer(source);
+        final ByteBuffer signature = packet.getSignature();
+
+        boolean flush = false;
+        synchronized (peer) {
+            peer.pendingAcks.put(signature);
+            if(!peer.pendingAcks.hasRemaining()) {
+                flush = true;
+            } else if(!peer.ackScheduled) {
+                peer.ackScheduled = true;
+                timers.schedule(peer, System.nanoTime() + ackDelayNanos);
+            }
+        }
+
+        if(flush) flushAcks(peer);
+    }
+
+    /**
+     * Removes every packet named in an ACK from the sender's window.
+     */
+    public void onAck(final PacketView packet, final InetSocketAddress source) {
+        final Peer peer = peers.get(source);
+        if(null == peer) return;
+
+        final long now = System.nanoTime();
+        final ByteBuffer signatures = packet.getPayload();
+        while (signatures.remaining() >= SIGNATURE_BYTE_SIZE) {
+            final SignatureKey key = SignatureKey.read(signatures);
+            final Outstanding outstanding;
+            synchronized (peer) {
+                outstanding = peer.outstanding.remove(key);
+            }
+            if(null == outstanding) continue;
+
+            outstanding.timeout.cancel();
+            outstanding.acknowledged.complete(null);
+            // Karn's algorithm: a retransmitted packet's ACK is ambiguous, so it is not an RTT sample.
+            final long rttNanos = 0 == outstanding.retransmits ? now - outstanding.sentNanos : -1;
+            if(rttNanos >= 0) peer.rtt.sample(rttNanos);
+            owner.onDataAcknowledged(source, Packet.HEADER_BYTE_SIZE + outstanding.packet.getLength(), rttNanos);
+        }
+    }
+
+    /**
+     * Retransmits every packet named in a BAD_ACK right away, unless it has used up its retransmits.
+     */
+    public void onBadAck(final PacketView packet, final InetSocketAddress source) throws IOException {
+        final Peer peer = peers.get(source);
+        if(null == peer) return;
+
+        final ByteBuffer signatures = packet.getPayload();
+        while (signatures.remaining() >= SIGNATURE_BYTE_SIZE) {
+            final Outstanding outstanding;
+            final boolean rejected;
+            synchronized (peer) {
+                outstanding = peer.outstanding.get(SignatureKey.read(signatures));
+                if(null == outstanding) continue;
+                rejected = outstanding.retransmits >= maxRetransmits;
+                if(rejected) peer.outstanding.remove(outstanding.key);
+            }
+
+            outstanding.timeout.cancel();
+            if(rejected) {
+                outstanding.acknowledged.completeExceptionally(
+                    new IOException(String.format("[%s] rejected the packet.", source)));
+                continue;
+            }
+            outstanding.retransmits++;
+            retransmit(outstanding);
+        }
+    }
+
+    /**
+     * Tells the sender that a DATA_ACK packet arrived corrupted.
+     */
+    public void sendBadAck(final PacketView packet, final InetSocketAddress destination) throws IOException {
+        checkStarted();
+        final byte[] signature = new byte[SIGNATURE_BYTE_SIZE];
+        packet.getSignature().get(signature);
+        sendSignatures(PacketType.BAD_ACK, ByteSource.wrap(signature), destination);
+    }
+
+    public int getOutstandingCount(final InetSocketAddress destination) {
+        final Peer peer = peers.get(destination);
+        if(null == peer) return 0;
+        synchronized (peer) {
+            return peer.outstanding.size();
+        }
+    }
+
+    /**
+     * @return true if the peer's window can take that many more packets.
+     */
+    public boolean hasRoom(final InetSocketAddress destination, final int packets) {
+        return getOutstandingCount(destination) + packets <= windowSize;
+    }
+
+    /**
+     * @return the retransmission timeout currently used for the peer.
+     */
+    public long getRtoNanos(final InetSocketAddress destination) {
+        final Peer peer = peers.get(destination);
+        return null == peer ? new RttEstimator(minRtoNanos, maxRtoNanos).getRtoNanos() : peer.rtt.getRtoNanos();
+    }
+
+    /**
+     * @return the longest the channel keeps retransmitting a packet before it gives up on it.
+     */
+    public long getGiveUpNanos() {
+        return (maxRetransmits + 1L) * maxRtoNanos;
+    }
+
+    /**
+     * Forgets all state for a peer, abandoning anything still outstanding.
+     */
+    public void forget(final InetSocketAddress peerAddress) {
+        final Peer peer = peers.remove(peerAddress);
+        if(null != peer) abandon(peer, String.format("Connection to [%s] was closed.", peerAddress));
+    }
+
+    private void abandon(final Peer peer, final String reason) {
+        final List<Outstanding> abandoned;
+        synchronized (peer) {
+            abandoned = new ArrayList<>(peer.outstanding.values());
+            peer.outstanding.clear();
+        }
+
+        final IOException failure = new IOException(reason);
+        for(final Outstanding outstanding : abandoned) {
+            if(null != outstanding.timeout) outstanding.timeout.cancel();
+            outstanding.acknowledged.completeExceptionally(failure);
+        }
+    }
+
+    private void onTimer(final Object value) {
+        if(value instanceof Peer) {
+            flushAcks((Peer) value);
+            return;
+        }
+
+        final Outstanding outstanding = (Outstanding) value;
+        final Peer peer = outstanding.peer;
+        final boolean givenUp;
+        synchronized (peer) {
+            if(peer.outstanding.get(outstanding.key) != outstanding) return;
+            givenUp = outstanding.retransmits >= maxRetransmits;
+            if(givenUp) {
+                peer.outstanding.remove(outstanding.key);
+            } else {
+                outstanding.retransmits++;
+            }
+        }
+
+        owner.onDataLost(peer.address);
+        if(givenUp) {
+            owner.getLogger().warn("Gave up on DATA_ACK packet to [{}] after {} retransmits.",
+                peer.address, outstanding.retransmits);
+            outstanding.acknowledged.completeExceptionally(new TimeoutException(String.format(
+                "No ACK from [%s] after %s retransmits.", peer.address, outstanding.retransmits)));
+            return;
+        }
+
+        try {
+            retransmit(outstanding);
+        } catch (IOException e) {
+            owner.getLogger().debug("Failed to retransmit packet.", e);
+        }
+    }
+
+    /**
+     * Sends a packet for the first time, on the caller's thread, waiting for the pacer if need be.
+     */
+    private void transmit(final Outstanding outstanding) throws IOException {
+        final long now = System.nanoTime();
+        startTimeout(outstanding, now);
+        owner.sendPacket(outstanding.packet, outstanding.peer.address.getAddress(), outstanding.peer.address.getPort());
+
+        // Time spent waiting for the pacer is neither round trip time nor a reason to retransmit.
+        final long sent = System.nanoTime();
+        if(sent - now > timers.getTickNanos()) {
+            outstanding.timeout.cancel();
+            startTimeout(outstanding, sent);
+        }
+    }
+
+    /**
+     * Sends a packet again without waiting for the pacer. Its timeout starts when it is sent; if the pacer drops it, it
+     * times out as though it had been sent and lost.
+     */
+    private void retransmit(final Outstanding outstanding) throws IOException {
+        final boolean queued = owner.sendPacketWithoutWaiting(outstanding.packet, outstanding.peer.address,
+            () -> startTimeout(outstanding, System.nanoTime()));
+        if(!queued) startTimeout(outstanding, System.nanoTime());
+    }
+
+    private void startTimeout(final Outstanding outstanding, final long sentNanos) {
+        final long rto = Math.min(maxRtoNanos, outstanding.peer.rtt.getRtoNanos() << outstanding.retransmits);
+        outstanding.sentNanos = sentNanos;
+        outstanding.timeout = timers.schedule(outstanding, sentNanos + rto);
+    }
+
+    private void flushAcks(final Peer peer) {
+        final byte[] signatures;
+        synchronized (peer) {
+            peer.ackScheduled = false;
+            if(0 == peer.pendingAcks.position()) return;
+            peer.pendingAcks.flip();
+            signatures = new byte[peer.pendingAcks.remaining()];
+            peer.pendingAcks.get(signatures);
+            peer.pendingAcks.clear();
+        }
+
+        try {
+            sendSignatures(PacketType.ACK, ByteSource.wrap(signatures), peer.address);
+        } catch (IOException e) {
+            owner.getLogger().debug("Failed to send ACK.", e);
+        }
+    }
+
+    private void sendSignatures(final PacketType type, final ByteSource signatures, final InetSocketAddress destination)
+        throws IOException
+    {
+        final UdpCommon<?> udpCommon = owner;
+        final Packet packet = udpCommon.getPacketParser()
+            .createPacket(type, udpCommon.getId(), destination, signatures, udpCommon.getSecretKey());
+        udpCommon.sendPacket(packet, destination.getAddress(), destination.getPort());
+    }
+
+    private Peer peer(final InetSocketAddress address) {
+        return peers.computeIfAbsent(address, Peer::new);
+    }
+
+    private void checkStarted() {
+        if(null == owner) throw new IllegalStateException("Reliable channel has not been started.");
+    }
+
+    @Override
+    public synchronized void close() {
+        if(null != timerThread) timerThread.shutdownNow();
+        for(final InetSocketAddress address : peers.keySet()) {
+            forget(address);
+        }
+    }
+
+    private class Peer {
+        private final InetSocketAddress address;
+
+        private final Map<SignatureKey, Outstanding> outstanding = new HashMap<>();
+
+        private final ByteBuffer pendingAcks = ByteBuffer.allocate(maxSignaturesPerAck * SIGNATURE_BYTE_SIZE);
+
+        private final RttEstimator rtt = new RttEstimator(minRtoNanos, maxRtoNanos);
+
+        private boolean ackScheduled;
+
+        private Peer(final InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    private static class Outstanding {
+        private final Peer peer;
+
+        private final Packet packet;
+
+        private final SignatureKey key;
+
+        private final CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+
+        private volatile long sentNanos;
+
+        private volatile int retransmits;
+
+        private volatile TimingWheel.Timeout<Object> timeout;
+
+        private Outstanding(final Peer peer, final Packet packet, final SignatureKey key) {
+            this.peer = peer;
+            this.packet = packet;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands over the messages of one sequenced stream in sequence order.
+ *
+ * The message with the next expected sequence number is handed over straight away, without being copied. Messages
+ * that arrive ahead of it are copied into a ring indexed by sequence number, and handed over as soon as the gap before
+ * them fills. A gap that is still open after the hole timeout is given up on, and the stream skips ahead to the next
+ * message it holds, so that a lost message does not stall the stream forever. A message too far ahead to fit in the
+ * ring also makes the stream give up on every gap before it. Messages that arrive after the stream has moved past them
+ * are dropped. Sequence numbers are unsigned ints and wrap around.
+ *
+ * A reliable buffer, for messages sent as DATA_ACK, never drops a message the sender could still be retransmitting:
+ * its hole timeout should be at least as long as the sender keeps retransmitting, and a message too far ahead is
+ * refused rather than skipped to. A refused message must not be acknowledged, so that the sender retransmits it, or
+ * gives up and fails the send, rather than believing it was delivered.
+ *
+ * Messages are handed over while the buffer's lock is held, so that two threads never hand over messages of the same
+ * stream at once.
+ */
+public class ReorderBuffer {
+    private static final int SEQUENCE_BYTE_SIZE = 4;
+
+    private final ByteBuffer[] ring;
+
+    private final int[] flags;
+
+    private final int mask;
+
+    private final long holeTimeoutNanos;
+
+    private final boolean reliable;
+
+    private final Delivery delivery;
+
+    private final UdpMetrics metrics;
+
+    private int next;
+
+    private int buffered;
+
+    private long holeSinceNanos;
+
+    /**
+     * Creates an unreliable buffer.
+     *
+     * @see #ReorderBuffer(int, long, boolean, Delivery, UdpMetrics)
+     */
+    public ReorderBuffer(
+        final int capacity,
+        final long holeTimeoutNanos,
+        final Delivery delivery,
+        final UdpMetrics metrics
+    ) {
+        this(capacity, holeTimeoutNanos, false, delivery, metrics);
+    }
+
+    /**
+     * @param capacity how far ahead of the next expected message a message may arrive. Rounded up to a power of two.
+     * @param reliable whether messages too far ahead are refused rather than skipped to.
+     * @param delivery receives each message once it is in order, along with the flags it was offered with.
+     */
+    public ReorderBuffer(
+        final int capacity,
+        final long holeTimeoutNanos,
+        final boolean reliable,
+        final Delivery delivery,
+        final UdpMetrics metrics
+    ) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 30, "Capacity must be between 1 and 2^30.");
+        Preconditions.checkArgument(holeTimeoutNanos > 0, "Hole timeout must be positive.");
+        final int size = 1 == capacity ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new ByteBuffer[size];
+        this.flags = new int[size];
+        this.mask = size - 1;
+        this.holeTimeoutNanos = holeTimeoutNanos;
+        this.reliable = reliable;
+        this.delivery = requireNonNull(delivery, "delivery");
+        this.metrics = requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * @return the message behind its sequence number, as a sender writes it.
+     */
+    public static ByteSource sequenced(final int sequence, final ByteSource message) {
+        final byte[] prefix = ByteBuffer.allocate(SEQUENCE_BYTE_SIZE).putInt(sequence).array();
+        return ByteSource.concat(ByteSource.wrap(prefix), message);
+    }
+
+    /**
+     * Takes the sequence number off the front of a message and offers the rest.
+     *
+     * @throws IllegalArgumentException if the message is too short to have a sequence number.
+     */
+    public boolean offer(final ByteBuffer sequencedMessage, final int flags, final long nowNanos) {
+        Preconditions.checkArgument(sequencedMessage.remaining() >= SEQUENCE_BYTE_SIZE, "Truncated sequence number.");
+        final ByteBuffer message = sequencedMessage.duplicate();
+        final int sequence = message.getInt();
+        return offer(sequence, message.slice(), flags, nowNanos);
+    }
+
+    /**
+     * @param message the message, without its sequence number. It is only read during this call.
+     * @return false if the message was dropped: it arrived after the stream moved past it, or, for a reliable buffer,
+     * too far ahead to hold. True if it was handed over or is held, including when it was already held.
+     */
+    public synchronized boolean offer(final int sequence, final ByteBuffer message, final int flags, final long nowNanos) {
+        int distance = sequence - next;
+        if(distance < 0) return false;
+
+        if(distance >= ring.length) {
+            if(reliable) return false;
+            while (buffered > 0) {
+                skipHole(nowNanos);
+            }
+            metrics.recordSkippedMessages(sequence - next);
+            next = sequence;
+            distance = 0;
+        }
+
+        if(0 == distance) {
+            next++;
+            delivery.deliver(message, flags);
+            drain(nowNanos);
+            return true;
+        }
+
+        final int slot = sequence & mask;
+        if(null != ring[slot]) return true;
+
+        final ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message.duplicate()).flip();
+        ring[slot] = copy.asReadOnlyBuffer();
+        this.flags[slot] = flags;
+        if(0 == buffered++) holeSinceNanos = nowNanos;
+
+        skipExpired(nowNanos);
+        return true;
+    }
+
+    /**
+     * Gives up on the gap before the messages held back, if it has been open for longer than the hole timeout.
+     */
+    public synchronized void skipExpired(final long nowNanos) {
+        if(buffered > 0 && nowNanos - holeSinceNanos >= holeTimeoutNanos) skipHole(nowNanos);
+    }
+
+    public synchronized int getBufferedCount() {
+        return buffered;
+    }
+
+    /**
+     * Moves on to the first message held back, and hands over every message that is then in order.
+     */
+    private void skipHole(final long nowNanos) {
+        int skipped = 0;
+        while (null == ring[next & mask]) {
+            next++;
+            skipped++;
+        }
+        metrics.recordSkippedMessages(skipped);
+        drain(nowNanos);
+    }
+
+    private void drain(final long nowNanos) {
+        for(int slot = next & mask; null != ring[slot]; slot = next & mask) {
+            final ByteBuffer message = ring[slot];
+            ring[slot] = null;
+            buffered--;
+            next++;
+            delivery.deliver(message, flags[slot]);
+        }
+        if(buffered > 0) holeSinceNanos = nowNanos;
+    }
+
+    @FunctionalInterface
+    public interface Delivery {
+        void deliver(ByteBuffer message, int flags);
+    }
+}
@@ -0,0 +1,124 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a {@link ReorderBuffer} for every sequenced stream from every peer. Reliable and unreliable messages on the
+ * same stream are numbered apart, so each has a buffer of its own.
+ *
+ * Holes are given up on when the next message on their stream arrives after the hole timeout, and by a sweep that runs
+ * a few times per hole timeout, so that the messages held back behind a lost message are handed over even if nothing
+ * more arrives. Reliable buffers have a hole timeout of their own, which should be no shorter than the sender keeps
+ * retransmitting for, so that a hole is only given up on once the sender has given up on the message too. Nothing is
+ * started until the first buffer is created; the sweep runs on a thread of the owner's thread mode once the reorderer
+ * has been {@link #start(UdpCommon) started}, and on a platform thread otherwise.
+ */
+public class Reorderer implements AutoCloseable {
+    private final UdpMetrics metrics;
+
+    private final int capacity;
+
+    private final long holeTimeoutNanos;
+
+    private final long reliableHoleTimeoutNanos;
+
+    private final ConcurrentMap<InetSocketAddress, ConcurrentMap<Integer, ReorderBuffer>> buffers =
+        new ConcurrentHashMap<>();
+
+    private volatile ThreadMode threadMode = ThreadMode.PLATFORM;
+
+    private ScheduledExecutorService sweepThread;
+
+    private boolean closed;
+
+    /**
+     * @param capacity            how far ahead of the next expected message a message may arrive on a stream.
+     * @param holeTimeout         how long a stream waits for a missing unreliable message before skipping it.
+     * @param reliableHoleTimeout how long a stream waits for a missing reliable message before skipping it.
+     */
+    public Reorderer(
+        final UdpMetrics metrics,
+        final int capacity,
+        final long holeTimeout,
+        final long reliableHoleTimeout,
+        final TimeUnit unit
+    ) {
+        Preconditions.checkArgument(capacity > 0, "Buffers must hold at least one message.");
+        Preconditions.checkArgument(holeTimeout > 0 && reliableHoleTimeout > 0, "Hole timeouts must be positive.");
+        this.metrics = requireNonNull(metrics, "metrics");
+        this.capacity = capacity;
+        this.holeTimeoutNanos = unit.toNanos(holeTimeout);
+        this.reliableHoleTimeoutNanos = unit.toNanos(reliableHoleTimeout);
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.threadMode = owner.getThreadMode();
+    }
+
+    /**
+     * @param reliable whether the stream's messages were sent as DATA_ACK.
+     * @param delivery creates the delivery for the stream, if it has no buffer yet.
+     * @return the stream's buffer, created if needed.
+     */
+    public ReorderBuffer buffer(
+        final InetSocketAddress peer,
+        final int streamId,
+        final boolean reliable,
+        final Supplier<ReorderBuffer.Delivery> delivery
+    ) {
+        final ConcurrentMap<Integer, ReorderBuffer> streams = buffers.computeIfAbsent(peer, p -> new ConcurrentHashMap<>());
+        final int key = streamId << 1 | (reliable ? 1 : 0);
+        final ReorderBuffer existing = streams.get(key);
+        if(null != existing) return existing;
+
+        startSweeping();
+        return streams.computeIfAbsent(key, k -> new ReorderBuffer(
+            capacity, reliable ? reliableHoleTimeoutNanos : holeTimeoutNanos, reliable, delivery.get(), metrics));
+    }
+
+    /**
+     * Drops every stream from the peer, along with the messages held back on them.
+     */
+    public void forget(final InetSocketAddress peer) {
+        buffers.remove(peer);
+    }
+
+    /**
+     * Gives up on every hole that has timed out. A message handler that fails is counted, and does not stop the sweep.
+     */
+    public void sweep(final long nowNanos) {
+        for(final ConcurrentMap<Integer, ReorderBuffer> streams : buffers.values()) {
+            for(final ReorderBuffer buffer : streams.values()) {
+                try {
+                    buffer.skipExpired(nowNanos);
+                } catch (RuntimeException e) {
+                    metrics.recordHandlerFailure();
+                }
+            }
+        }
+    }
+
+    private synchronized void startSweeping() {
+        if(null != sweepThread || closed) return;
+        sweepThread = Executors.newSingleThreadScheduledExecutor(r -> threadMode.newDaemonThread(r, "Reorderer"));
+        final long periodNanos = Math.max(1, Math.min(holeTimeoutNanos, reliableHoleTimeoutNanos) / 4);
+        sweepThread.scheduleAtFixedRate(() -> sweep(System.nanoTime()), periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if(null != sweepThread) sweepThread.shutdownNow();
+        buffers.clear();
+    }
+}
@@ -0,0 +1,110 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.Arrays;
+
+/**
+ * A sliding anti-replay window over packet order counts, as used by IPsec and DTLS (RFC 6479).
+ *
+ * The window remembers which of the last {@link #WINDOW_SIZE} order counts below the highest one seen have arrived.
+ * Anything older than the window, or already marked, is a replay. The bitmap is a ring of words, so sliding the window
+ * forward clears whole words instead of shifting, and neither checking nor updating allocates.
+ *
+ * Call {@link #check(long)} before verifying a packet's signature so that replays are dropped cheaply, and
+ * {@link #update(long)} only once the signature is valid, so that forged packets cannot move the window.
+ */
+public class ReplayWindow {
+    private static final int WORD_BITS = 64;
+
+    private static final int WORDS = 32;
+
+    private static final int WORD_MASK = WORDS - 1;
+
+    /**
+     * One word is always being reused as the window slides, so it does not count towards the window.
+     */
+    public static final int WINDOW_SIZE = (WORDS - 1) * WORD_BITS;
+
+    private final long[] bitmap = new long[WORDS];
+
+    private long highest = -1;
+
+    public enum Result {
+        /**
+         * The order count has not been seen.
+         */
+        ACCEPTED,
+        /**
+         * The order count is in the window and has already been seen.
+         */
+        DUPLICATE,
+        /**
+         * The order count is below the window, so whether it has been seen is unknown.
+         */
+        TOO_OLD
+    }
+
+    /**
+     * @return whether the order count is new, a replay, or too old to tell.
+     */
+    public synchronized Result check(final long orderCount) {
+        if(orderCount < 0) return Result.TOO_OLD;
+        if(orderCount > highest) return Result.ACCEPTED;
+        if(highest - orderCount >= WINDOW_SIZE) return Result.TOO_OLD;
+        return 0 == (bitmap[wordIndex(orderCount)] & bit(orderCount)) ? Result.ACCEPTED : Result.DUPLICATE;
+    }
+
+    /**
+     * Marks the order count as seen, sliding the window forward if it is the highest yet.
+     *
+     * @return whether the order count was new; nothing changes unless it was.
+     */
+    public synchronized Result update(final long orderCount) {
+        final Result result = check(orderCount);
+        if(Result.ACCEPTED != result) return result;
+
+        if(orderCount > highest) {
+            final long currentWord = highest < 0 ? -1 : highest / WORD_BITS;
+            final long newWord = orderCount / WORD_BITS;
+            final long wordsToClear = Math.min(WORDS, newWord - currentWord);
+            for(long i = 1; i <= wordsToClear; i++) {
+                bitmap[(int) ((currentWord + i) & WORD_MASK)] = 0;
+            }
+            highest = orderCount;
+        }
+
+        bitmap[wordIndex(orderCount)] |= bit(orderCount);
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * Forgets that the order count was seen, for a packet that was accepted but then refused before it was acted on, so
+     * that the sender's retransmission of it is not taken for a replay. Nothing changes if it is outside the window.
+     */
+    public synchronized void unmark(final long orderCount) {
+        if(orderCount < 0 || orderCount > highest || highest - orderCount >= WINDOW_SIZE) return;
+        bitmap[wordIndex(orderCount)] &= ~bit(orderCount);
+    }
+
+    /**
+     * Restarts the window so that the given order count and everything before it count as already seen. Used when a
+     * connection is established, so packets from before it cannot be replayed into it.
+     */
+    public synchronized void startAt(final long orderCount) {
+        Arrays.fill(bitmap, -1L);
+        // Only the bits up to the order count are seen in its own word; the rest are still to come.
+        bitmap[wordIndex(orderCount)] = -1L >>> (WORD_BITS - 1 - orderCount % WORD_BITS);
+        highest = orderCount;
+    }
+
+    public synchronized long getHighest() {
+        return highest;
+    }
+
+    private static int wordIndex(final long orderCount) {
+        return (int) ((orderCount / WORD_BITS) & WORD_MASK);
+    }
+
+    private static long bit(final long orderCount) {
+        return 1L << (orderCount % WORD_BITS);
+    }
+}
@@ -0,0 +1,58 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates round trip time and retransmission timeout the way TCP does in RFC 6298.
+ *
+ * Samples may be recorded from any thread; the estimate is updated under the estimator's lock.
+ */
+public class RttEstimator {
+    private static final long INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final long CLOCK_GRANULARITY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long minRtoNanos;
+
+    private final long maxRtoNanos;
+
+    private long smoothedRttNanos = -1;
+
+    private long rttVarianceNanos;
+
+    private volatile long rtoNanos;
+
+    public RttEstimator(final long minRtoNanos, final long maxRtoNanos) {
+        this.minRtoNanos = minRtoNanos;
+        this.maxRtoNanos = maxRtoNanos;
+        this.rtoNanos = clamp(INITIAL_RTO_NANOS);
+    }
+
+    public synchronized void sample(final long rttNanos) {
+        if(rttNanos < 0) return;
+
+        if(smoothedRttNanos < 0) {
+            smoothedRttNanos = rttNanos;
+            rttVarianceNanos = rttNanos / 2;
+        } else {
+            rttVarianceNanos += (Math.abs(smoothedRttNanos - rttNanos) - rttVarianceNanos) >> 2;
+            smoothedRttNanos += (rttNanos - smoothedRttNanos) >> 3;
+        }
+        rtoNanos = clamp(smoothedRttNanos + Math.max(CLOCK_GRANULARITY_NANOS, 4 * rttVarianceNanos));
+    }
+
+    /**
+     * @return the smoothed round trip time, or -1 before the first sample.
+     */
+    public synchronized long getSmoothedRttNanos() {
+        return smoothedRttNanos;
+    }
+
+    public long getRtoNanos() {
+        return rtoNanos;
+    }
+
+    private long clamp(final long nanos) {
+        return Math.min(maxRtoNanos, Math.max(minRtoNanos, nanos));
+    }
+}
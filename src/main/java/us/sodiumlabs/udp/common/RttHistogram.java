@@ -0,0 +1,67 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log-linear histogram of nanosecond durations in the style of HdrHistogram.
+ *
+ * Each power of two is split into 32 linear buckets, so a recorded value is off by at most about 3%. Recording is a
+ * couple of bit operations and two atomic increments, with no locks or allocation. Buckets stop at 2^37 ns, about two
+ * minutes, which keeps a histogram near 8 KB; longer values are counted in the top bucket, though the sum keeps them
+ * exact.
+ */
+public class RttHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The exponent of the highest power of two that has buckets of its own.
+     */
+    static final int MAX_EXPONENT = 36;
+
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder sum = new LongAdder();
+
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+    }
+
+    static int indexOf(final long value) {
+        if(value < SUB_BUCKET_COUNT) return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        final int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return the largest value that falls in the bucket.
+     */
+    static long highestValueAt(final int index) {
+        if(index < SUB_BUCKET_COUNT) return index;
+
+        final int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final long lowest = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Copies the current counts. Values recorded while the copy is taken may or may not be included.
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(copy, sum.sum());
+    }
+}
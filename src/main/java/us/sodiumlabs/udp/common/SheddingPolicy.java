@@ -0,0 +1,25 @@
+package us.sodiumlabs.udp.common;
+
+/**
+ * Chooses the datagram a {@link BoundedDispatcher}, or a lane of a {@link StripedDispatcher}, drops when its queue is
+ * full.
+ */
+public enum SheddingPolicy {
+    /**
+     * Drops the datagram that just arrived.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drops the datagram that has waited longest, to make room for the one that just arrived.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops the oldest waiting datagram of the lowest priority, or the one that just arrived if nothing waiting has a
+     * lower priority than it. A {@link BoundedDispatcher} also hands higher priority datagrams over first; a
+     * {@link StripedDispatcher} keeps arrival order, so that a sender's packets are not reordered. See
+     * {@link BoundedDispatcher#priorityOf(PacketType)}.
+     */
+    PRIORITY
+}
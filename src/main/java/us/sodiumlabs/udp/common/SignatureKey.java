@@ -0,0 +1,53 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A packet signature usable as a hash key. The signature is already a uniformly distributed HMAC, so its leading bytes
+ * make a good hash code.
+ */
+public final class SignatureKey {
+    private final byte[] signature;
+
+    private final int hashCode;
+
+    private SignatureKey(final byte[] signature) {
+        Preconditions.checkArgument(HmacEngine.SIGNATURE_BYTE_SIZE == signature.length, "Signatures are 32 bytes.");
+        this.signature = signature;
+        this.hashCode = ((signature[0] & 0xff) << 24) | ((signature[1] & 0xff) << 16)
+            | ((signature[2] & 0xff) << 8) | (signature[3] & 0xff);
+    }
+
+    public static SignatureKey copyOf(final byte[] signature) {
+        return new SignatureKey(signature.clone());
+    }
+
+    /**
+     * Copies the next 32 bytes of the buffer, advancing its position.
+     */
+    public static SignatureKey read(final ByteBuffer buffer) {
+        final byte[] signature = new byte[HmacEngine.SIGNATURE_BYTE_SIZE];
+        buffer.get(signature);
+        return new SignatureKey(signature);
+    }
+
+    public void writeTo(final ByteBuffer buffer) {
+        buffer.put(signature);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if(this == o) return true;
+        if(!(o instanceof SignatureKey)) return false;
+        final SignatureKey other = (SignatureKey) o;
+        return hashCode == other.hashCode && Arrays.equals(signature, other.signature);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,39 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import org.immutables.value.Value;
+import us.sodiumlabs.udp.immutables.Style;
+
+/**
+ * A logical stream of messages to a peer, carried in the custom ID of its DATA packets. Stream 0 is the default stream
+ * that data sent without a stream goes on, so configured streams start at 1.
+ */
+@Style
+@Value.Immutable
+public abstract class StreamConfig {
+    public abstract int getId();
+
+    @Value.Default
+    public StreamMode getMode() {
+        return StreamMode.UNRELIABLE;
+    }
+
+    /**
+     * Streams with a higher priority are sent first. Streams that have waited long enough are sent anyway; see
+     * {@link StreamScheduler}.
+     */
+    @Value.Default
+    public int getPriority() {
+        return 0;
+    }
+
+    @Value.Check
+    protected void check() {
+        Preconditions.checkArgument(getId() > 0 && getId() <= Packet.UNSIGNED_SHORT_BITMASK,
+            "Stream ID must be between 1 and 65,535.");
+    }
+
+    public static ImmutableStreamConfig.Builder builder() {
+        return ImmutableStreamConfig.builder();
+    }
+}
@@ -0,0 +1,26 @@
+package us.sodiumlabs.udp.common;
+
+/**
+ * How the messages of a {@link StreamConfig stream} are delivered.
+ */
+public enum StreamMode {
+    /**
+     * Sent as DATA_NOACK packets. Messages may be lost or arrive in any order.
+     */
+    UNRELIABLE,
+
+    /**
+     * Sent as DATA_ACK packets and retransmitted until acknowledged. Messages may arrive in any order.
+     */
+    RELIABLE,
+
+    /**
+     * Sent as DATA_ACK packets with a sequence number, and handed to the receiver's message handler in the order they
+     * were sent.
+     */
+    RELIABLE_ORDERED;
+
+    public PacketType getPacketType() {
+        return UNRELIABLE == this ? PacketType.DATA_NOACK : PacketType.DATA_ACK;
+    }
+}
@@ -0,0 +1,334 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends the messages of every {@link StreamConfig stream} on a single thread, one datagram at a time, so that a large
+ * message on one stream does not hold up messages on another.
+ *
+ * Every stream to every destination has its own queue. Each step sends one datagram from the queue with the highest
+ * score, which is its stream's priority times the aging interval, plus how long the queue has waited since it was last
+ * served. A higher priority stream is therefore served first, but a lower priority one that has waited for the aging
+ * interval times the difference in priority is served anyway, so bulk streams are slowed but never starved. Reliable
+ * queues are skipped while the destination's send window is full, and every queue while its destination's
+ * {@link Pacer pacer} would hold a datagram back.
+ *
+ * A message is fragmented, and takes its order counts, when its first datagram is sent. Messages of a
+ * {@link StreamMode#RELIABLE_ORDERED reliable ordered} stream are numbered when they are queued; the number is sent in
+ * front of the message, and the packets carry the SEQUENCED flag.
+ *
+ * Nothing is started until the first message is queued.
+ */
+public class StreamScheduler implements AutoCloseable {
+    private static final long BLOCKED_RETRY_MILLIS = 1;
+
+    private final int maxQueuedMessages;
+
+    private final long agingNanos;
+
+    private final Map<InetSocketAddress, Map<Integer, StreamQueue>> queues = new HashMap<>();
+
+    private final List<StreamQueue> backlogged = new ArrayList<>();
+
+    private volatile UdpCommon<?> owner;
+
+    private Thread drainThread;
+
+    private int queued;
+
+    private boolean closed;
+
+    /**
+     * @param maxQueuedMessages how many messages may wait to be sent, across every stream.
+     * @param agingInterval     how long a queue has to wait to make up for one step of priority.
+     */
+    public StreamScheduler(final int maxQueuedMessages, final long agingInterval, final TimeUnit unit) {
+        Preconditions.checkArgument(maxQueuedMessages > 0, "Queue must hold at least one message.");
+        Preconditions.checkArgument(agingInterval > 0, "Aging interval must be positive.");
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.agingNanos = unit.toNanos(agingInterval);
+    }
+
+    public static StreamScheduler withDefaults() {
+        return new StreamScheduler(4_096, 5, TimeUnit.MILLISECONDS);
+    }
+
+    public void start(final UdpCommon<?> owner) {
+        this.owner = requireNonNull(owner, "owner");
+    }
+
+    /**
+     * Queues a message on a stream.
+     *
+     * @return a future that completes once the message's last datagram is written for an unreliable stream, or once
+     * the destination acknowledges every datagram of it for a reliable one. It fails with a
+     * {@link RejectedExecutionException} if the queue is full or the scheduler is closed.
+     */
+    public CompletableFuture<Void> send(
+        final StreamConfig stream,
+        final ByteSource message,
+        final InetSocketAddress destination
+    ) {
+        if(null == owner) throw new IllegalStateException("Stream scheduler has not been started.");
+
+        final Message pending = new Message(message);
+        synchronized (this) {
+            if(closed) {
+                pending.result.completeExceptionally(new RejectedExecutionException("Scheduler is closed."));
+                return pending.result;
+            }
+            if(queued >= maxQueuedMessages) {
+                pending.result.completeExceptionally(new RejectedExecutionException("Stream queue is full."));
+                return pending.result;
+            }
+
+            final StreamQueue queue = queues
+                .computeIfAbsent(destination, d -> new HashMap<>())
+                .computeIfAbsent(stream.getId(), id -> new StreamQueue(stream, destination));
+            if(StreamMode.RELIABLE_ORDERED == stream.getMode()) {
+                pending.sequenced = true;
+                pending.sequence = queue.nextSequence++;
+            }
+            if(queue.messages.isEmpty()) {
+                queue.waitingSince = System.nanoTime();
+                backlogged.add(queue);
+            }
+            queue.messages.addLast(pending);
+            queued++;
+
+            if(null == drainThread) {
+                drainThread = owner.getThreadMode().newDaemonThread(this::drain, "StreamScheduler");
+                drainThread.start();
+            } else {
+                notifyAll();
+            }
+        }
+        return pending.result;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queued;
+    }
+
+    private void drain() {
+        while (true) {
+            final StreamQueue queue;
+            synchronized (this) {
+                queue = awaitNext();
+                if(null == queue) return;
+            }
+
+            try {
+                step(queue);
+            } catch (RuntimeException e) {
+                owner.getLogger().warn("Stream scheduler failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Waits until a queue can be served.
+     *
+     * @return the queue with the highest score, or null once the scheduler is closed.
+     */
+    private StreamQueue awaitNext() {
+        while (!closed) {
+            if(backlogged.isEmpty()) {
+                waitQuietly(0);
+                continue;
+            }
+
+            final long now = System.nanoTime();
+            StreamQueue best = null;
+            long bestScore = Long.MIN_VALUE;
+            for(int i = 0; i < backlogged.size(); i++) {
+                final StreamQueue queue = backlogged.get(i);
+                if(queue.isBlocked(owner)) continue;
+                final long score = queue.stream.getPriority() * agingNanos + (now - queue.waitingSince);
+                if(null == best || score > bestScore) {
+                    best = queue;
+                    bestScore = score;
+                }
+            }
+            if(null != best) return best;
+            waitQuietly(BLOCKED_RETRY_MILLIS);
+        }
+        return null;
+    }
+
+    private void waitQuietly(final long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+
+    /**
+     * Sends the next datagram of the queue's first message. Only the drain thread touches a message once it is queued,
+     * apart from failing it.
+     */
+    private void step(final StreamQueue queue) {
+        final Message message;
+        synchronized (this) {
+            message = queue.messages.peekFirst();
+            queue.waitingSince = System.nanoTime();
+        }
+        if(null == message) return;
+
+        final UdpCommon<?> udpCommon = owner;
+        final InetSocketAddress destination = queue.destination;
+        final boolean reliable = StreamMode.UNRELIABLE != queue.stream.getMode();
+        try {
+            if(null == message.packets) {
+                message.packets = udpCommon.createStreamPackets(queue.stream, message.payload(), destination);
+                message.acknowledged = new CompletableFuture<?>[reliable ? message.packets.size() : 0];
+            }
+
+            final Packet packet = message.packets.get(message.sent);
+            if(reliable) {
+                message.acknowledged[message.sent] = udpCommon.getReliableChannel().send(packet, destination);
+            } else {
+                udpCommon.sendPacket(packet, destination.getAddress(), destination.getPort());
+            }
+            message.sent++;
+        } catch (IOException | RuntimeException e) {
+            finish(queue, message);
+            message.result.completeExceptionally(e);
+            return;
+        }
+
+        if(message.sent < message.packets.size()) return;
+
+        finish(queue, message);
+        if(!reliable) {
+            message.result.complete(null);
+            return;
+        }
+        CompletableFuture.allOf(message.acknowledged).whenComplete((ignored, failure) -> {
+            if(null == failure) {
+                message.result.complete(null);
+            } else {
+                message.result.completeExceptionally(failure);
+            }
+        });
+    }
+
+    private synchronized void finish(final StreamQueue queue, final Message message) {
+        if(queue.messages.peekFirst() != message) return;
+        queue.messages.pollFirst();
+        queued--;
+        if(queue.messages.isEmpty()) backlogged.remove(queue);
+    }
+
+    /**
+     * Drops every stream to a destination. Messages that have not been sent in full fail, and ordered streams start
+     * again from sequence number 0.
+     */
+    public void forget(final InetSocketAddress destination) {
+        final List<Message> dropped = new ArrayList<>();
+        synchronized (this) {
+            final Map<Integer, StreamQueue> streams = queues.remove(destination);
+            if(null == streams) return;
+            for(final StreamQueue queue : streams.values()) {
+                dropped.addAll(queue.messages);
+                queued -= queue.messages.size();
+                queue.messages.clear();
+                backlogged.remove(queue);
+            }
+        }
+
+        final IOException failure = new IOException(String.format("Connection to [%s] was closed.", destination));
+        for(final Message message : dropped) {
+            message.result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Stops the scheduler. Messages that have not been sent in full fail.
+     */
+    @Override
+    public void close() {
+        final List<Message> dropped = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for(final StreamQueue queue : backlogged) {
+                dropped.addAll(queue.messages);
+                queue.messages.clear();
+            }
+            backlogged.clear();
+            queues.clear();
+            queued = 0;
+            notifyAll();
+        }
+
+        final RejectedExecutionException failure = new RejectedExecutionException("Scheduler is closed.");
+        for(final Message message : dropped) {
+            message.result.completeExceptionally(failure);
+        }
+    }
+
+    private static final class StreamQueue {
+        private final StreamConfig stream;
+
+        private final InetSocketAddress destination;
+
+        private final ArrayDeque<Message> messages = new ArrayDeque<>();
+
+        private int nextSequence;
+
+        private long waitingSince;
+
+        private StreamQueue(final StreamConfig stream, final InetSocketAddress destination) {
+            this.stream = stream;
+            this.destination = destination;
+        }
+
+        private boolean isBlocked(final UdpCommon<?> udpCommon) {
+            return !udpCommon.isPaceReady(destination) || StreamMode.UNRELIABLE != stream.getMode()
+                && !udpCommon.getReliableChannel().hasRoom(destination, 1);
+        }
+    }
+
+    private static final class Message {
+        private final ByteSource payload;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private boolean sequenced;
+
+        private int sequence;
+
+        private List<Packet> packets;
+
+        private CompletableFuture<?>[] acknowledged;
+
+        private int sent;
+
+        private Message(final ByteSource payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * @return the payload, behind its sequence number if it has one.
+         */
+        private ByteSource payload() {
+            return sequenced ? ReorderBuffer.sequenced(sequence, payload) : payload;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hashes each sender to one of a fixed set of lanes. Every lane has its own lock-free queue and consumer thread, so
+ * packets from one sender are handled one at a time in arrival order, and senders on different lanes never contend on
+ * the same queue.
+ *
+ * Each lane's queue is bounded by an atomic depth counter. Once it is full, the producer applies the
+ * {@link SheddingPolicy} itself, without taking a lock, and picks a datagram of that lane to drop, so a flood from the
+ * senders on one lane never sheds the datagrams of another. An evicted datagram is unlinked from the queue atomically,
+ * so it is either handled or shed, never both. Datagrams are always handled in arrival order, whatever the policy:
+ * {@link SheddingPolicy#PRIORITY} only decides what is dropped, since handling a sender's control packets ahead of its
+ * data would reorder them. A dropped task never runs; its shed action runs instead, and the drop is counted in the
+ * owner's {@link UdpMetrics#recordShed(PacketType, boolean) metrics} once the dispatcher has been
+ * {@link #start(UdpCommon) started}.
+ */
+public class StripedDispatcher implements Dispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripedDispatcher.class);
+
+    /**
+     * How many datagrams a lane holds by default.
+     */
+    public static final int DEFAULT_MAX_QUEUED_PER_LANE = 4_096;
+
+    private static final Runnable NOTHING = () -> {};
+
+    private final Lane[] lanes;
+
+    private final int maxQueuedPerLane;
+
+    private final SheddingPolicy policy;
+
+    private volatile UdpMetrics metrics = new UdpMetrics();
+
+    private volatile boolean open = true;
+
+    public StripedDispatcher(final int laneCount, final String threadNamePrefix) {
+        this(laneCount, threadNamePrefix, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * @param threadMode the mode of the lanes' consumer threads.
+     */
+    public StripedDispatcher(final int laneCount, final String threadNamePrefix, final ThreadMode threadMode) {
+        this(laneCount, DEFAULT_MAX_QUEUED_PER_LANE, SheddingPolicy.PRIORITY, threadNamePrefix, threadMode);
+    }
+
+    /**
+     * @param maxQueuedPerLane how many datagrams may wait in each lane before some are shed.
+     * @param threadMode       the mode of the lanes' consumer threads.
+     */
+    public StripedDispatcher(
+        final int laneCount,
+        final int maxQueuedPerLane,
+        final SheddingPolicy policy,
+        final String threadNamePrefix,
+        final ThreadMode threadMode
+    ) {
+        Preconditions.checkArgument(laneCount > 0, "There must be at least one lane.");
+        Preconditions.checkArgument(maxQueuedPerLane > 0, "Lanes must hold at least one task.");
+        this.maxQueuedPerLane = maxQueuedPerLane;
+        this.policy = requireNonNull(policy, "policy");
+        this.lanes = new Lane[laneCount];
+        for(int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+            final Thread thread = threadMode.newDaemonThread(lanes[i], threadNamePrefix + "-" + i);
+            lanes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * @return a dispatcher with one lane per available processor.
+     */
+    public static StripedDispatcher perCore(final String threadNamePrefix) {
+        return new StripedDispatcher(Runtime.getRuntime().availableProcessors(), threadNamePrefix);
+    }
+
+    @Override
+    public void start(final UdpCommon<?> owner) {
+        this.metrics = owner.getMetrics();
+    }
+
+    @Override
+    public void dispatch(final long key, final Runnable task) {
+        dispatch(key, null, task, NOTHING);
+    }
+
+    @Override
+    public void dispatch(final long key, final PacketType type, final Runnable task, final Runnable onShed) {
+        if(!open) throw new RejectedExecutionException("Dispatcher is closed.");
+        lanes[laneFor(key)].offer(type, requireNonNull(task, "task"), requireNonNull(onShed, "onShed"));
+    }
+
+    int laneFor(final long key) {
+        // Murmur3 finalizer, so keys that differ only in high bits still spread across lanes.
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) ((h & Long.MAX_VALUE) % lanes.length);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for(final Lane lane : lanes) {
+            depth += lane.depth.get();
+        }
+        return depth;
+    }
+
+    /**
+     * Stops the lanes. Tasks still waiting are dropped without being counted; their shed actions run.
+     */
+    @Override
+    public void close() {
+        open = false;
+        for(final Lane lane : lanes) {
+            lane.close();
+        }
+    }
+
+    private static class Entry {
+        private final PacketType type;
+
+        private final Runnable task;
+
+        private final Runnable onShed;
+
+        private Entry(final PacketType type, final Runnable task, final Runnable onShed) {
+            this.type = type;
+            this.task = task;
+            this.onShed = onShed;
+        }
+    }
+
+    private class Lane implements Runnable {
+        private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger depth = new AtomicInteger();
+
+        private volatile boolean waiting;
+
+        private Thread thread;
+
+        private void offer(final PacketType type, final Runnable task, final Runnable onShed) {
+            final Entry entry = new Entry(type, task, onShed);
+            while (true) {
+                final int queued = depth.get();
+                if(queued < maxQueuedPerLane) {
+                    if(!depth.compareAndSet(queued, queued + 1)) continue;
+                    enqueue(entry);
+                    return;
+                }
+
+                final Entry victim = victim(type);
+                if(null == victim) {
+                    shed(entry, false);
+                    return;
+                }
+                // Whoever unlinks the victim first owns it. Losing to the consumer frees a slot, so try again.
+                if(queue.remove(victim)) {
+                    enqueue(entry);
+                    shed(victim, true);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the queued entry to drop for a new one of the given type, or null to drop the new one.
+         */
+        private Entry victim(final PacketType type) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    return null;
+                case DROP_OLDEST:
+                    return queue.peek();
+                default: {
+                    int lowest = BoundedDispatcher.priorityOf(type);
+                    Entry victim = null;
+                    for(final Entry queued : queue) {
+                        final int level = BoundedDispatcher.priorityOf(queued.type);
+                        if(level < lowest) {
+                            lowest = level;
+                            victim = queued;
+                            if(0 == level) break;
+                        }
+                    }
+                    return victim;
+                }
+            }
+        }
+
+        /**
+         * Adds an entry whose slot has already been counted in the depth.
+         */
+        private void enqueue(final Entry entry) {
+            queue.offer(entry);
+            if(!open) {
+                drain();
+                return;
+            }
+            if(waiting) LockSupport.unpark(thread);
+        }
+
+        private void shed(final Entry entry, final boolean evicted) {
+            metrics.recordShed(null == entry.type ? PacketType.INVALID : entry.type, evicted);
+            entry.onShed.run();
+        }
+
+        /**
+         * Runs the shed action of every entry still queued, without counting them.
+         */
+        private void drain() {
+            Entry entry;
+            while (null != (entry = queue.poll())) {
+                depth.decrementAndGet();
+                entry.onShed.run();
+            }
+        }
+
+        private void close() {
+            drain();
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            while (open) {
+                final Entry entry = queue.poll();
+                if(null == entry) {
+                    waiting = true;
+                    // Re-check after publishing the flag, so an offer that missed it cannot be stranded.
+                    if(queue.isEmpty() && open) LockSupport.park(this);
+                    waiting = false;
+                    continue;
+                }
+
+                depth.decrementAndGet();
+                try {
+                    entry.task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Packet task failed.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package us.sodiumlabs.udp.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public enum ThreadMode {
+    /**
+     * Runs the reader and ping loops on their own platform threads, and packet handlers on a small fixed pool.
+     */
+    PLATFORM {
+        @Override
+        public Thread newThread(final Runnable task, final String name) {
+            return new Thread(task, name);
+        }
+
+        @Override
+        public ExecutorService newExecutorService() {
+            return Executors.newFixedThreadPool(getHandlerConcurrency());
+        }
+
+        @Override
+        public int getHandlerConcurrency() {
+            return 2;
+        }
+    },
+
+    /**
+     * Runs the reader and ping loops on virtual threads, and every packet handler on a virtual thread of its own, so
+     * handlers may block without holding up others. Needs a Java 21 or later runtime; the library itself is still
+     * built for Java 8, so virtual threads are created reflectively.
+     */
+    VIRTUAL {
+        @Override
+        public Thread newThread(final Runnable task, final String name) {
+            checkSupported();
+            try {
+                final Object builder = VirtualThreads.NAME.invoke(VirtualThreads.OF_VIRTUAL.invoke(null), name);
+                return (Thread) VirtualThreads.UNSTARTED.invoke(builder, task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Unable to create a virtual thread.", e);
+            }
+        }
+
+        @Override
+        public ExecutorService newExecutorService() {
+            checkSupported();
+            try {
+                return (ExecutorService) VirtualThreads.NEW_PER_TASK_EXECUTOR.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Unable to create a virtual thread executor.", e);
+            }
+        }
+
+        @Override
+        public int getHandlerConcurrency() {
+            return 10_000;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return null != VirtualThreads.OF_VIRTUAL;
+        }
+    };
+
+    /**
+     * @return a thread that has not been started.
+     */
+    public abstract Thread newThread(final Runnable task, final String name);
+
+    /**
+     * @return a thread that has not been started, and does not keep the JVM alive. Used for the timers and queues
+     * behind a client or server, so that every thread they start is of the same mode.
+     */
+    public Thread newDaemonThread(final Runnable task, final String name) {
+        final Thread thread = newThread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public abstract ExecutorService newExecutorService();
+
+    /**
+     * @return how many packets the {@link #newExecutorService() executor} should handle at once.
+     */
+    public abstract int getHandlerConcurrency();
+
+    /**
+     * @return false if the running JVM cannot create threads in this mode.
+     */
+    public boolean isSupported() {
+        return true;
+    }
+
+    void checkSupported() {
+        if(!isSupported()) {
+            throw new IllegalStateException(String.format("The %s thread mode needs a Java 21 or later runtime.", this));
+        }
+    }
+
+    /**
+     * Looks up the virtual thread API once. The methods are null on runtimes older than Java 21.
+     */
+    private static final class VirtualThreads {
+        private static final Method OF_VIRTUAL;
+
+        private static final Method NAME;
+
+        private static final Method UNSTARTED;
+
+        private static final Method NEW_PER_TASK_EXECUTOR;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method unstarted = null;
+            Method newPerTaskExecutor = null;
+            try {
+                final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+                newPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            UNSTARTED = unstarted;
+            NEW_PER_TASK_EXECUTOR = newPerTaskExecutor;
+        }
+    }
+}
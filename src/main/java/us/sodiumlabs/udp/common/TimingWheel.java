@@ -0,0 +1,192 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel.
+ *
+ * Each level has 64 slots, and each slot of a level spans one full rotation of the level below it. A timeout is put
+ * in the lowest level whose rotation contains its deadline, and is moved down a level when the wheel reaches its
+ * slot. Scheduling, cancelling and expiring are all O(1); a tick only touches the timeouts that are due or that are
+ * cascading down.
+ *
+ * Timeouts may be scheduled from any thread, but {@link #advance(long, Consumer)} must only be called from one
+ * thread at a time. Timeouts scheduled from inside the expiry callback are inserted directly.
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+
+    private final long startNanos;
+
+    private final Timeout<T>[][] slots;
+
+    private final ConcurrentLinkedQueue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Timeouts too far out for the top level. They are looked at again each time the top level turns over.
+     */
+    private Timeout<T> overflow;
+
+    private long currentTick;
+
+    private volatile Thread advancingThread;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(final long tickDuration, final TimeUnit unit, final long startNanos) {
+        Preconditions.checkArgument(tickDuration > 0, "Tick duration must be positive.");
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startNanos = startNanos;
+        this.slots = new Timeout[LEVELS][SLOTS];
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public Timeout<T> schedule(final T value, final long deadlineNanos) {
+        final Timeout<T> timeout = new Timeout<>(value);
+        schedule(timeout, deadlineNanos);
+        return timeout;
+    }
+
+    /**
+     * Schedules a timeout that is not currently scheduled, such as one that has just expired. This lets a timeout be
+     * pushed back from the expiry callback without allocating.
+     */
+    public void schedule(final Timeout<T> timeout, final long deadlineNanos) {
+        timeout.cancelled = false;
+        timeout.deadlineTick = Math.max(0, (deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+        if(Thread.currentThread() == advancingThread) {
+            insert(timeout, currentTick + 1);
+        } else {
+            pending.offer(timeout);
+        }
+    }
+
+    /**
+     * Moves the wheel forward to the given time, passing every timeout that is due and not cancelled to the callback.
+     */
+    public void advance(final long nowNanos, final Consumer<Timeout<T>> expired) {
+        advancingThread = Thread.currentThread();
+        try {
+            drainPending();
+
+            final long targetTick = (nowNanos - startNanos) / tickNanos;
+            while (currentTick < targetTick) {
+                currentTick++;
+                cascade();
+                fire(expired);
+            }
+        } finally {
+            advancingThread = null;
+        }
+    }
+
+    private void drainPending() {
+        Timeout<T> timeout;
+        while (null != (timeout = pending.poll())) {
+            insert(timeout, currentTick + 1);
+        }
+    }
+
+    private void cascade() {
+        for(int level = 1; level < LEVELS; level++) {
+            if(0 != (currentTick & ((1L << (SLOT_BITS * level)) - 1))) return;
+
+            final int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timeout<T> timeout = slots[level][slot];
+            slots[level][slot] = null;
+            reinsertAll(timeout);
+        }
+
+        if(0 == (currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1))) {
+            final Timeout<T> timeout = overflow;
+            overflow = null;
+            reinsertAll(timeout);
+        }
+    }
+
+    private void reinsertAll(Timeout<T> timeout) {
+        while (null != timeout) {
+            final Timeout<T> next = timeout.next;
+            if(!timeout.cancelled) insert(timeout, currentTick);
+            timeout = next;
+        }
+    }
+
+    private void fire(final Consumer<Timeout<T>> expired) {
+        final int slot = (int) (currentTick & SLOT_MASK);
+        Timeout<T> timeout = slots[0][slot];
+        slots[0][slot] = null;
+        while (null != timeout) {
+            final Timeout<T> next = timeout.next;
+            timeout.next = null;
+            if(!timeout.cancelled) {
+                timeout.cancelled = true;
+                expired.accept(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * @param earliestTick the first tick whose slot has not been fired yet. Anything due before it fires then.
+     */
+    private void insert(final Timeout<T> timeout, final long earliestTick) {
+        final long deadline = Math.max(timeout.deadlineTick, earliestTick);
+
+        for(int level = 0; level < LEVELS; level++) {
+            final int shift = SLOT_BITS * (level + 1);
+            if((deadline >>> shift) == (currentTick >>> shift)) {
+                final int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+                timeout.next = slots[level][slot];
+                slots[level][slot] = timeout;
+                return;
+            }
+        }
+
+        timeout.next = overflow;
+        overflow = timeout;
+    }
+
+    public static final class Timeout<T> {
+        private final T value;
+
+        private long deadlineTick;
+
+        private volatile boolean cancelled;
+
+        private Timeout<T> next;
+
+        private Timeout(final T value) {
+            this.value = value;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Marks the timeout so that it will not fire. The wheel drops it the next time it reaches its slot.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that refills continuously at its rate, up to its burst size. It starts full.
+ */
+public class TokenBucket {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private double tokensPerNano;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond the refill rate.
+     * @param burst           the most tokens the bucket holds.
+     */
+    public TokenBucket(final double tokensPerSecond, final double burst, final long nowNanos) {
+        Preconditions.checkArgument(tokensPerSecond > 0, "Rate must be positive.");
+        Preconditions.checkArgument(burst >= 1, "Bucket must hold at least one token.");
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes the tokens if the bucket has them.
+     *
+     * @return false, taking nothing, if it does not.
+     */
+    public synchronized boolean tryTake(final double count, final long nowNanos) {
+        refill(nowNanos);
+        if(tokens < count) return false;
+        tokens -= count;
+        return true;
+    }
+
+    /**
+     * Takes the tokens whether or not the bucket has them, leaving it in debt if it does not.
+     *
+     * @return how long until the bucket is out of debt, or 0 if it is not in debt.
+     */
+    public synchronized long take(final double count, final long nowNanos) {
+        refill(nowNanos);
+        tokens -= count;
+        return getDebtNanos(nowNanos);
+    }
+
+    /**
+     * @return how long until the bucket is out of debt, or 0 if it is not in debt.
+     */
+    public synchronized long getDebtNanos(final long nowNanos) {
+        refill(nowNanos);
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * Changes the refill rate. Tokens gained so far are kept.
+     */
+    public synchronized void setRate(final double tokensPerSecond, final long nowNanos) {
+        Preconditions.checkArgument(tokensPerSecond > 0, "Rate must be positive.");
+        refill(nowNanos);
+        tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+    }
+
+    public synchronized double getTokens(final long nowNanos) {
+        refill(nowNanos);
+        return tokens;
+    }
+
+    private void refill(final long nowNanos) {
+        final long elapsed = nowNanos - lastRefillNanos;
+        if(elapsed <= 0) return;
+        tokens = Math.min(burst, tokens + elapsed * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+}
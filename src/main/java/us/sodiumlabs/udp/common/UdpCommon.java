@@ -1,5 +1,6 @@
 package us.sodiumlabs.udp.common;
 
+import com.google.common.base.Preconditions;
 import com.google.common.io.ByteSource;
 import org.immutables.value.Value;
 import org.slf4j.Logger;
@@ -7,15 +8,29 @@ import org.slf4j.LoggerFactory;
 
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -27,7 +42,9 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
     /**
      * A limitation of UDP.
      */
-    private static final int MAX_PACKET_SIZE = 65_507;
+    static final int MAX_PACKET_SIZE = 65_507;
+
+    private static final BiConsumer<Object, Packet> IGNORE_PACKETS = (endpoint, packet) -> {};
 
     public abstract DatagramSocket getSocket();
 
@@ -35,12 +52,33 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
 
     public abstract SecretKeySpec getSecretKey();
 
-    public abstract BiConsumer<T, Packet> getPacketHandler();
+    /**
+     * Receives a copy of every verified packet. Copying costs an allocation per packet, so prefer
+     * {@link #getPacketListeners() listeners}; nothing is copied unless a handler is set.
+     */
+    @Value.Default
+    @SuppressWarnings("unchecked")
+    public BiConsumer<T, Packet> getPacketHandler() {
+        return (BiConsumer) IGNORE_PACKETS;
+    }
+
+    /**
+     * Receive connection and packet events, in order.
+     */
+    public abstract List<PacketListener<T>> getPacketListeners();
 
     public abstract InetAddress getDestination();
 
     public abstract int getPort();
 
+    private final ConcurrentMap<InetSocketAddress, PayloadCodec> peerCodecs = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<InetSocketAddress, CompactSession> compactSessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<InetSocketAddress, AtomicInteger> sendSequences = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<InetSocketAddress, AtomicInteger> reliableSendSequences = new ConcurrentHashMap<>();
+
     @Value.Default
     public PacketParser getPacketParser() {
         return new PacketParser(getLogger());
@@ -51,18 +89,395 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
         return LoggerFactory.getLogger(this.getClass());
     }
 
+    /**
+     * What kind of threads the reader and ping loops and the default executor use.
+     */
+    @Value.Default
+    public ThreadMode getThreadMode() {
+        return ThreadMode.PLATFORM;
+    }
+
     @Value.Default
     public ExecutorService getExecutorService() {
-        return Executors.newFixedThreadPool(2);
+        return getThreadMode().newExecutorService();
+    }
+
+    /**
+     * Hands received datagrams to handler threads. Defaults to submitting them to {@link #getExecutorService()} through
+     * a {@link #bounded(Dispatcher) bounded queue}; use a {@link StripedDispatcher}, which bounds each of its lanes, to
+     * keep each sender's packets in order.
+     */
+    @Value.Default
+    public Dispatcher getDispatcher() {
+        return bounded(new ExecutorDispatcher(getExecutorService()));
+    }
+
+    /**
+     * How many received datagrams may wait for a handler before the {@link #getSheddingPolicy() shedding policy}
+     * drops some.
+     */
+    @Value.Default
+    public int getIngressQueueSize() {
+        return 4_096;
+    }
+
+    @Value.Default
+    public SheddingPolicy getSheddingPolicy() {
+        return SheddingPolicy.PRIORITY;
+    }
+
+    /**
+     * How many datagrams may be handled at once. Defaults to the size of the default executor.
+     */
+    @Value.Default
+    public int getHandlerConcurrency() {
+        return getThreadMode().getHandlerConcurrency();
+    }
+
+    /**
+     * Wraps a dispatcher in the bounded ingress queue.
+     */
+    protected Dispatcher bounded(final Dispatcher dispatcher) {
+        return new BoundedDispatcher(
+            dispatcher, getIngressQueueSize(), getHandlerConcurrency(), getSheddingPolicy(), getMetrics());
+    }
+
+    /**
+     * Creates a single lane dispatcher, which keeps every sender's packets in order. Its lane is bounded by the ingress
+     * queue size and sheds by the shedding policy.
+     */
+    protected Dispatcher striped(final String threadNamePrefix) {
+        return new StripedDispatcher(1, getIngressQueueSize(), getSheddingPolicy(), threadNamePrefix, getThreadMode());
+    }
+
+    @Value.Default
+    public UdpMetrics getMetrics() {
+        return new UdpMetrics();
+    }
+
+    @Value.Default
+    public ReceiveMode getReceiveMode() {
+        return ReceiveMode.DATAGRAM_SOCKET;
+    }
+
+    /**
+     * Buffers that incoming datagrams are read into. At most 256 are out at once, about 16 MB; datagrams that arrive
+     * while they are all queued are dropped and counted as shed.
+     */
+    @Value.Default
+    public BufferPool getBufferPool() {
+        return new BufferPool(MAX_PACKET_SIZE, 64, 256, true);
+    }
+
+    /**
+     * Buffers that outgoing datagrams are written into. They are direct when sending through a
+     * {@link java.nio.channels.DatagramChannel}, and on the heap when sending through a plain {@link DatagramSocket}.
+     */
+    @Value.Default
+    public BufferPool getSendBufferPool() {
+        return new BufferPool(MAX_PACKET_SIZE, 64, null != getSocket().getChannel());
+    }
+
+    /**
+     * Writes the sends made through {@link #sendDataAsync(ByteSource, InetSocketAddress)} and
+     * {@link #sendReliableDataAsync(ByteSource, InetSocketAddress)}.
+     */
+    @Value.Default
+    public AsyncWriter getAsyncWriter() {
+        return AsyncWriter.withDefaults();
+    }
+
+    @Value.Default
+    public ReliableChannel getReliableChannel() {
+        return ReliableChannel.withDefaults();
+    }
+
+    /**
+     * The largest datagram to send. Data that does not fit is split into fragments, so that it is not left to IP
+     * fragmentation.
+     */
+    @Value.Default
+    public int getMtu() {
+        return 1_400;
+    }
+
+    @Value.Default
+    public Reassembler getReassembler() {
+        return new Reassembler(getMetrics(), 16 * 1024 * 1024, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Packs the messages passed to {@link #sendCoalescedData(ByteSource, InetSocketAddress)} into shared datagrams.
+     */
+    @Value.Default
+    public Coalescer getCoalescer() {
+        return Coalescer.withDefaults();
+    }
+
+    /**
+     * Sends the messages passed to {@link #sendStream(int, ByteSource, InetSocketAddress)}.
+     */
+    @Value.Default
+    public StreamScheduler getStreamScheduler() {
+        return StreamScheduler.withDefaults();
+    }
+
+    /**
+     * The streams that messages can be sent on. Both ends should configure the same streams; messages on a reliable
+     * ordered stream the receiver does not know are dropped.
+     */
+    public abstract List<StreamConfig> getStreams();
+
+    /**
+     * Numbers the messages sent without a stream, so that each peer hands them to its message handler in the order
+     * they were sent, whichever order they arrive in. Reliable and unreliable messages are numbered apart, and each
+     * kind is in order only with itself. A lost unreliable message holds up the ones after it until the
+     * {@link #getReorderer() reorderer}'s hole timeout; a reliable one until it is retransmitted. Broadcasts are not
+     * numbered.
+     */
+    @Value.Default
+    public boolean isInOrderDelivery() {
+        return false;
+    }
+
+    /**
+     * Puts numbered messages from peers back in order: those sent with {@link #isInOrderDelivery() in-order delivery}
+     * and those on reliable ordered streams. Holes in reliable streams are waited on for as long as the
+     * {@link #getReliableChannel() reliable channel} would retransmit, assuming the peer's is set up the same.
+     */
+    @Value.Default
+    public Reorderer getReorderer() {
+        return new Reorderer(getMetrics(), 256, TimeUnit.MILLISECONDS.toNanos(500),
+            getReliableChannel().getGiveUpNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Offers the {@link CompactHeader compact format} during the handshake. Peers that both offer it send PING, PANG,
+     * PONG and DATA_NOACK packets in it.
+     */
+    @Value.Default
+    public boolean isCompactFormatEnabled() {
+        return false;
+    }
+
+    /**
+     * Compresses DATA payloads to peers that support the same codec. Compression is off unless a codec is set.
+     */
+    public abstract Optional<PayloadCodec> getPayloadCodec();
+
+    /**
+     * Paces the DATA_ACK and DATA_NOACK datagrams sent to each peer. A send waits for the pacer on the thread that
+     * makes it, except on threads that serve other destinations meanwhile: the stream scheduler skips a destination
+     * that is not ready, and retransmissions and broadcasts are deferred to the pacer's own queue. Pacing is off unless
+     * a pacer is set.
+     */
+    public abstract Optional<Pacer> getPacer();
+
+    @Value.Default
+    public MessageHandler<T> getMessageHandler() {
+        return (endpoint, senderId, message, source) -> {};
     }
 
     @Value.Default
     public Function<T, ReaderThread> getReaderThreadProvider() {
+        if(ReceiveMode.DATAGRAM_CHANNEL == getReceiveMode()) {
+            return ChannelReaderThread::new;
+        }
         return ReaderThread::new;
     }
 
+    /**
+     * Starts a long running loop on a thread of the {@link #getThreadMode() thread mode}.
+     */
+    protected Thread startThread(final Runnable task, final String name) {
+        final Thread thread = getThreadMode().newThread(task, name);
+        thread.start();
+        return thread;
+    }
+
     // Receive packets
-    protected abstract void handlePacket(final DatagramPacket packet);
+
+    /**
+     * Handles a single datagram.
+     *
+     * @param packet a buffer whose remaining bytes are exactly the datagram. It may be pooled, so it is only valid
+     *               until this method returns.
+     * @param source the address the datagram was sent from.
+     */
+    protected abstract void handlePacket(final ByteBuffer packet, final InetSocketAddress source);
+
+    protected void handlePacket(final DatagramPacket packet) {
+        handlePacket(
+            ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength()).slice(),
+            (InetSocketAddress) packet.getSocketAddress());
+    }
+
+    /**
+     * Hands the data of a verified DATA_ACK or DATA_NOACK packet to the message handler, once the whole message has
+     * arrived, and in sequence order if it is on a reliable ordered stream.
+     *
+     * @return false if the message was refused, and so must not be acknowledged: a sequenced message the stream has
+     * moved past or, if reliable, cannot hold yet, or one on a stream that is not configured here.
+     */
+    protected boolean deliverData(final PacketView packet, final InetSocketAddress source) {
+        final int streamId = packet.getCustomId();
+        final boolean reliable = PacketType.DATA_ACK == packet.getType();
+        if(!packet.isFragment()) {
+            return deliverMessage(packet.getSenderId(), streamId, reliable, packet.getFlags(), packet.getPayload(), source);
+        }
+
+        final ByteBuffer message = getReassembler().accept(packet, System.nanoTime());
+        if(null == message) return true;
+        try {
+            return deliverMessage(
+                packet.getSenderId(), streamId, reliable, packet.getFlags(), message.asReadOnlyBuffer(), source);
+        } finally {
+            getReassembler().release(message);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean deliverMessage(final UUID senderId, final int streamId, final boolean reliable, final int flags,
+                                   final ByteBuffer data, final InetSocketAddress source)
+    {
+        if(0 != (flags & Packet.FLAG_COMPRESSED)) {
+            final PayloadCodec codec = peerCodecs.get(source);
+            if(null == codec) throw new IllegalArgumentException("Peer has not agreed on compression.");
+            final boolean[] accepted = new boolean[1];
+            codec.decompress(data, inflated -> accepted[0] =
+                deliverMessage(senderId, streamId, reliable, flags & ~Packet.FLAG_COMPRESSED, inflated, source));
+            return accepted[0];
+        } else if(0 != (flags & Packet.FLAG_SEQUENCED)) {
+            final ReorderBuffer reorderBuffer = reorderBuffer(senderId, streamId, reliable, source);
+            if(null == reorderBuffer) {
+                getLogger().debug("Dropped sequenced message on unknown stream {} from [{}].", streamId, source);
+                return false;
+            }
+            return reorderBuffer.offer(data, flags & ~Packet.FLAG_SEQUENCED, System.nanoTime());
+        } else if(0 != (flags & Packet.FLAG_BATCH)) {
+            Coalescer.unpack(data, m -> getMessageHandler().onMessage((T) this, senderId, streamId, m, source));
+        } else {
+            getMessageHandler().onMessage((T) this, senderId, streamId, data, source);
+        }
+        return true;
+    }
+
+    /**
+     * @return the reorder buffer for a stream from the source, or null if the stream is neither the default stream nor
+     * reliable ordered here.
+     */
+    private ReorderBuffer reorderBuffer(
+        final UUID senderId,
+        final int streamId,
+        final boolean reliable,
+        final InetSocketAddress source
+    ) {
+        if(0 != streamId) {
+            final StreamConfig stream = findStream(streamId);
+            if(null == stream || StreamMode.RELIABLE_ORDERED != stream.getMode() || !reliable) return null;
+        }
+        return getReorderer().buffer(source, streamId, reliable,
+            () -> (message, flags) -> deliverMessage(senderId, streamId, reliable, flags, message, source));
+    }
+
+    private StreamConfig findStream(final int streamId) {
+        final List<StreamConfig> streams = getStreams();
+        for(int i = 0; i < streams.size(); i++) {
+            if(streams.get(i).getId() == streamId) return streams.get(i);
+        }
+        return null;
+    }
+
+    // Events
+
+    /**
+     * Hands a copy of a verified packet to the {@link #getPacketHandler() packet handler}, if one is set.
+     */
+    @SuppressWarnings("unchecked")
+    protected void notifyPacketHandler(final PacketView packet) {
+        final BiConsumer<T, Packet> handler = getPacketHandler();
+        if((Object) IGNORE_PACKETS != handler) handler.accept((T) this, packet.toPacket());
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void fireConnect(final UUID peerId, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onConnect((T) this, peerId, source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void fireDisconnect(final UUID peerId, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onDisconnect((T) this, peerId, source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void firePing(final UUID peerId, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onPing((T) this, peerId, source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void firePong(final UUID peerId, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onPong((T) this, peerId, source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void fireData(final PacketView packet, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onData((T) this, packet, source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void fireAck(final PacketView packet, final InetSocketAddress source) {
+        final List<PacketListener<T>> listeners = getPacketListeners();
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onAck((T) this, packet, source);
+        }
+    }
+
+    /**
+     * Handles a verified DATA_ACK packet, acknowledging it unless its message was refused.
+     *
+     * @return false if the message was refused. The caller should forget the packet's order count, so that the
+     * sender's retransmission is not taken for a replay.
+     */
+    protected boolean onReliableDataPacket(final PacketView packet, final InetSocketAddress source) {
+        if(!onDataPacket(packet, source)) return false;
+        getReliableChannel().onData(packet, source);
+        return true;
+    }
+
+    /**
+     * Handles a verified DATA_NOACK packet, or the data of a DATA_ACK packet.
+     *
+     * @return false if the message was refused.
+     */
+    protected boolean onDataPacket(final PacketView packet, final InetSocketAddress source) {
+        fireData(packet, source);
+        return deliverData(packet, source);
+    }
+
+    protected void onAckPacket(final PacketView packet, final InetSocketAddress source) {
+        getReliableChannel().onAck(packet, source);
+        fireAck(packet, source);
+    }
+
+    protected void onBadAckPacket(final PacketView packet, final InetSocketAddress source) throws IOException {
+        getReliableChannel().onBadAck(packet, source);
+        fireAck(packet, source);
+    }
 
     protected DatagramPacket receiveRawPacket() throws IOException {
         final byte[] data = new byte[MAX_PACKET_SIZE];
@@ -75,13 +490,431 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
     public void sendPacket(final Packet packet, final InetAddress destination, final int port)
         throws IOException
     {
-        if(getLogger().isTraceEnabled()) getLogger().trace("Sending packet: " + packet.toString());
+        if(getLogger().isTraceEnabled()) getLogger().trace("Sending packet: {}", packet);
+
+        final ByteBuffer datagram = getSendBufferPool().acquire();
+        try {
+            packet.writeTo(datagram);
+            datagram.flip();
+            sendDatagram(datagram, packet.getType(), new InetSocketAddress(destination, port));
+        } finally {
+            getSendBufferPool().release(datagram);
+        }
+    }
+
+    /**
+     * Sends the remaining bytes of a datagram, through the socket's channel if it has one.
+     */
+    private void sendDatagram(final ByteBuffer datagram, final PacketType type, final InetSocketAddress destination)
+        throws IOException
+    {
+        if(PacketType.DATA_ACK == type || PacketType.DATA_NOACK == type) pace(destination, datagram.remaining());
+        writeDatagram(datagram, type, destination);
+    }
+
+    /**
+     * Sends a DATA_ACK or DATA_NOACK packet without waiting for the pacer, for threads that serve other peers too.
+     *
+     * @param sent runs once the datagram has been written, on the thread that wrote it.
+     * @return false if the datagram had to wait and the pacer's queue for the destination was full, so it was dropped.
+     * @throws IOException if the datagram was written straight away and that failed. A deferred datagram that fails is
+     * only logged.
+     */
+    boolean sendPacketWithoutWaiting(final Packet packet, final InetSocketAddress destination, final Runnable sent)
+        throws IOException
+    {
+        final ByteBuffer datagram = getSendBufferPool().acquire();
+        try {
+            packet.writeTo(datagram);
+            datagram.flip();
+            return sendDatagramWithoutWaiting(datagram, packet.getType(), destination, sent);
+        } finally {
+            getSendBufferPool().release(datagram);
+        }
+    }
+
+    /**
+     * Writes a datagram now if the pacer lets it go to the destination, otherwise defers a copy of it to the pacer.
+     *
+     * @see #sendPacketWithoutWaiting(Packet, InetSocketAddress, Runnable)
+     */
+    private boolean sendDatagramWithoutWaiting(
+        final ByteBuffer datagram,
+        final PacketType type,
+        final InetSocketAddress destination,
+        final Runnable sent
+    ) throws IOException {
+        final Optional<Pacer> pacer = getPacer();
+        final int bytes = datagram.remaining();
+        if(!pacer.isPresent() || pacer.get().tryReserve(destination, bytes, System.nanoTime())) {
+            writeDatagram(datagram, type, destination);
+            sent.run();
+            return true;
+        }
 
-        final ByteBuffer packetBuffer = packet.toPacket();
-        final byte[] packetBytes = new byte[packetBuffer.remaining()];
-        packetBuffer.get(packetBytes);
-        final DatagramPacket datagramPacket = new DatagramPacket(packetBytes, packetBytes.length, destination, port);
-        getSocket().send(datagramPacket);
+        final ByteBuffer copy = ByteBuffer.allocate(bytes);
+        copy.put(datagram).flip();
+        return pacer.get().defer(destination, bytes, () -> {
+            writeDatagram(copy, type, destination);
+            sent.run();
+        });
+    }
+
+    private void writeDatagram(final ByteBuffer datagram, final PacketType type, final InetSocketAddress destination)
+        throws IOException
+    {
+        getMetrics().recordPacketOut(type, datagram.remaining());
+
+        final DatagramChannel channel = getSocket().getChannel();
+        if(null != channel) {
+            channel.send(datagram, destination);
+        } else if(datagram.hasArray()) {
+            getSocket().send(new DatagramPacket(
+                datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining(), destination));
+        } else {
+            final byte[] bytes = new byte[datagram.remaining()];
+            datagram.get(bytes);
+            getSocket().send(new DatagramPacket(bytes, bytes.length, destination));
+        }
+    }
+
+    /**
+     * Waits until the pacer lets a datagram of that size go to the destination.
+     */
+    private void pace(final InetSocketAddress destination, final int bytes) throws InterruptedIOException {
+        final Optional<Pacer> pacer = getPacer();
+        if(!pacer.isPresent()) return;
+
+        final long deadline = System.nanoTime() + pacer.get().reserve(destination, bytes, System.nanoTime());
+        for(long wait = deadline - System.nanoTime(); wait > 0; wait = deadline - System.nanoTime()) {
+            if(Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while pacing.");
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * @return false if a datagram sent to the destination now would wait for the pacer.
+     */
+    boolean isPaceReady(final InetSocketAddress destination) {
+        return getPacer().map(p -> p.isReady(destination, System.nanoTime())).orElse(true);
+    }
+
+    /**
+     * Tells the pacer that the peer acknowledged a DATA_ACK datagram.
+     *
+     * @param rttNanos the datagram's round trip time, or -1 if it was retransmitted.
+     */
+    void onDataAcknowledged(final InetSocketAddress peer, final int bytes, final long rttNanos) {
+        getPacer().ifPresent(p -> p.onAck(peer, bytes, rttNanos, System.nanoTime()));
+    }
+
+    /**
+     * Tells the pacer that a DATA_ACK datagram to the peer went unacknowledged for its retransmission timeout.
+     */
+    void onDataLost(final InetSocketAddress peer) {
+        getPacer().ifPresent(p -> p.onLoss(peer, System.nanoTime()));
+    }
+
+    /**
+     * Tells the pacer a round trip time measured with PING, PANG and PONG packets.
+     */
+    protected void onRttSample(final InetSocketAddress peer, final long rttNanos) {
+        getPacer().ifPresent(p -> p.onRtt(peer, rttNanos, System.nanoTime()));
+    }
+
+    /**
+     * Sends a DATA_NOACK packet. It is not acknowledged or retransmitted.
+     */
+    public void sendData(final ByteSource payload, final InetSocketAddress destination) throws IOException {
+        sendData(payload, destination, 0);
+    }
+
+    /**
+     * Sends a DATA_NOACK packet whose payload is written straight from the buffer into the datagram. The buffer is not
+     * consumed and may be reused once this returns. Payloads that have to be compressed, fragmented or numbered are
+     * copied first.
+     */
+    public void sendData(final ByteBuffer payload, final InetSocketAddress destination) throws IOException {
+        final CompactSession compactSession = compactSessions.get(destination);
+        final int maxPayload = null == compactSession ? getMaxFragmentPayload() : getMaxCompactPayload();
+        if(payload.remaining() > maxPayload || peerCodecs.containsKey(destination) || isInOrderDelivery()) {
+            final byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            sendData(ByteSource.wrap(bytes), destination);
+            return;
+        }
+
+        final ByteBuffer datagram = getSendBufferPool().acquire();
+        try {
+            if(null == compactSession) {
+                getPacketParser().writePacket(datagram, PacketType.DATA_NOACK, getId(),
+                    getPacketParser().nextOrderCount(destination), 0, 0, payload, getSecretKey());
+            } else {
+                getPacketParser().writeCompactPacket(datagram, PacketType.DATA_NOACK, getId(), compactSession,
+                    getPacketParser().nextOrderCount(destination), 0, payload, getSecretKey());
+            }
+            datagram.flip();
+            sendDatagram(datagram, PacketType.DATA_NOACK, destination);
+        } finally {
+            getSendBufferPool().release(datagram);
+        }
+    }
+
+    /**
+     * Sends the same DATA_NOACK message to every destination, encoding and signing each datagram once. The message is
+     * sent in the full format and uncompressed, whatever the destinations agreed on, since those differ per peer, and
+     * with the BROADCAST flag and order counts from the broadcast counter. Data larger than the MTU is fragmented, and
+     * each fragment goes to every destination before the next is signed. The buffer is not consumed.
+     *
+     * A failed send does not stop the others. A destination that fails is not sent the rest of the message. A
+     * destination the pacer would hold back does not hold up the others: its datagrams are deferred to the pacer's
+     * queue, and it only counts as failed if that queue is full. A deferred datagram that fails later is only logged.
+     *
+     * @return the destinations that could not be sent to, with the reason. Empty if every send succeeded.
+     */
+    protected Map<InetSocketAddress, Exception> sendDataToAll(
+        final ByteBuffer payload,
+        final List<InetSocketAddress> destinations
+    ) {
+        final Map<InetSocketAddress, Exception> failures = new HashMap<>();
+        if(destinations.isEmpty()) return failures;
+
+        final int maxPayload = getMaxFragmentPayload();
+        final int fragmentCount = payload.remaining() <= maxPayload ? 1
+            : (payload.remaining() + maxPayload - 1) / maxPayload;
+        Preconditions.checkArgument(fragmentCount <= Packet.MAX_FRAGMENT_COUNT,
+            "Data would need more than %s fragments.", Packet.MAX_FRAGMENT_COUNT);
+        final int flags = Packet.FLAG_BROADCAST | (1 == fragmentCount ? 0 : Packet.FLAG_FRAGMENT);
+
+        final long messageId = getPacketParser().nextBroadcastOrderCounts(fragmentCount);
+        final ByteBuffer datagram = getSendBufferPool().acquire();
+        try {
+            for(int i = 0; i < fragmentCount; i++) {
+                final ByteBuffer fragment = payload.duplicate();
+                fragment.position(payload.position() + i * maxPayload);
+                fragment.limit(Math.min(payload.limit(), fragment.position() + maxPayload));
+
+                datagram.clear();
+                getPacketParser().writePacket(datagram, PacketType.DATA_NOACK, getId(), messageId + i, flags,
+                    1 == fragmentCount ? 0 : i, 1 == fragmentCount ? 0 : fragmentCount, 0, fragment, getSecretKey());
+                datagram.flip();
+
+                for(final InetSocketAddress destination : destinations) {
+                    if(failures.containsKey(destination)) continue;
+                    try {
+                        final boolean queued =
+                            sendDatagramWithoutWaiting(datagram.duplicate(), PacketType.DATA_NOACK, destination, () -> {});
+                        if(!queued) {
+                            failures.put(destination, new RejectedExecutionException(
+                                String.format("Pacer queue to [%s] is full.", destination)));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failures.put(destination, e);
+                    }
+                }
+            }
+        } finally {
+            getSendBufferPool().release(datagram);
+        }
+        return failures;
+    }
+
+    void sendData(final ByteSource payload, final InetSocketAddress destination, final int flags) throws IOException {
+        final CompactSession compactSession = compactSessions.get(destination);
+        if(null != compactSession) {
+            sendCompactData(payload, destination, flags, compactSession);
+            return;
+        }
+
+        for(final Packet packet : createDataPackets(PacketType.DATA_NOACK, payload, destination, flags)) {
+            sendPacket(packet, destination.getAddress(), destination.getPort());
+        }
+    }
+
+    private void sendCompactData(
+        final ByteSource payload,
+        final InetSocketAddress destination,
+        final int flags,
+        final CompactSession compactSession
+    ) throws IOException {
+        final ByteSource message = isInOrderDelivery() ? sequenced(payload, destination, false) : payload;
+        final int messageFlags = isInOrderDelivery() ? flags | Packet.FLAG_SEQUENCED : flags;
+
+        final byte[] compressed = compress(message, destination);
+        final ByteSource data = null == compressed ? message : ByteSource.wrap(compressed);
+        final int dataFlags = null == compressed ? messageFlags : messageFlags | Packet.FLAG_COMPRESSED;
+
+        final int maxPayload = getMaxCompactPayload();
+        final long size = data.size();
+        if(size <= maxPayload) {
+            sendCompactPacket(PacketType.DATA_NOACK, destination, compactSession,
+                getPacketParser().nextOrderCount(destination), dataFlags, 0, 0, data);
+            return;
+        }
+
+        final long fragmentCount = (size + maxPayload - 1) / maxPayload;
+        Preconditions.checkArgument(fragmentCount <= Packet.MAX_FRAGMENT_COUNT,
+            "Data would need more than %s fragments.", Packet.MAX_FRAGMENT_COUNT);
+        final long messageId = getPacketParser().nextOrderCounts(destination, (int) fragmentCount);
+        for(int i = 0; i < fragmentCount; i++) {
+            sendCompactPacket(PacketType.DATA_NOACK, destination, compactSession, messageId + i,
+                dataFlags | Packet.FLAG_FRAGMENT, i, (int) fragmentCount, data.slice((long) i * maxPayload, maxPayload));
+        }
+    }
+
+    private void sendCompactPacket(
+        final PacketType type,
+        final InetSocketAddress destination,
+        final CompactSession compactSession,
+        final long orderCount,
+        final int flags,
+        final int fragmentIndex,
+        final int fragmentCount,
+        final ByteSource data
+    ) throws IOException {
+        final ByteBuffer datagram = getSendBufferPool().acquire();
+        try {
+            getPacketParser().writeCompactPacket(datagram, type, getId(), compactSession, orderCount, flags,
+                fragmentIndex, fragmentCount, data, getSecretKey());
+            datagram.flip();
+            sendDatagram(datagram, type, destination);
+        } finally {
+            getSendBufferPool().release(datagram);
+        }
+    }
+
+    /**
+     * Sends a DATA_ACK packet, retransmitting it until the destination acknowledges it. Data larger than the MTU is
+     * sent as fragments, each of which is acknowledged on its own, and all of which must fit in the send window.
+     *
+     * @throws IOException if too many packets to the destination are already unacknowledged.
+     */
+    public void sendReliableData(final ByteSource payload, final InetSocketAddress destination) throws IOException {
+        getReliableChannel().send(createDataPackets(PacketType.DATA_ACK, payload, destination, 0), destination);
+    }
+
+    /**
+     * Queues a DATA_NOACK send on the {@link #getAsyncWriter() writer}.
+     *
+     * @return a future that completes once the data is written to the socket.
+     */
+    public CompletableFuture<Void> sendDataAsync(final ByteSource payload, final InetSocketAddress destination) {
+        return getAsyncWriter().submit(() -> {
+            sendData(payload, destination);
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Queues a DATA_ACK send on the {@link #getAsyncWriter() writer}.
+     *
+     * @return a future that completes once the destination acknowledges every packet of the data, and fails if the
+     * send window is full or the packets are never acknowledged.
+     */
+    public CompletableFuture<Void> sendReliableDataAsync(final ByteSource payload, final InetSocketAddress destination) {
+        return getAsyncWriter().submit(() ->
+            getReliableChannel().send(createDataPackets(PacketType.DATA_ACK, payload, destination, 0), destination));
+    }
+
+    /**
+     * Queues a message on one of the {@link #getStreams() streams}, to be sent by the
+     * {@link #getStreamScheduler() stream scheduler} in the stream's mode and by its priority.
+     *
+     * @return a future that completes once the message is written for an unreliable stream, or acknowledged for a
+     * reliable one.
+     * @throws IllegalArgumentException if no stream has the ID.
+     */
+    public CompletableFuture<Void> sendStream(
+        final int streamId,
+        final ByteSource payload,
+        final InetSocketAddress destination
+    ) {
+        final StreamConfig stream = findStream(streamId);
+        Preconditions.checkArgument(null != stream, "No stream has the ID %s.", streamId);
+        return getStreamScheduler().send(stream, payload, destination);
+    }
+
+    /**
+     * Creates the packets of a message on a stream, in the full format. The payload starts with the message's sequence
+     * number if the stream is reliable ordered.
+     */
+    List<Packet> createStreamPackets(
+        final StreamConfig stream,
+        final ByteSource payload,
+        final InetSocketAddress destination
+    ) throws IOException {
+        final int flags = StreamMode.RELIABLE_ORDERED == stream.getMode() ? Packet.FLAG_SEQUENCED : 0;
+        return createDataPackets(stream.getMode().getPacketType(), payload, destination, flags, stream.getId());
+    }
+
+    /**
+     * Creates the packets of a message sent without a stream, numbering it if {@link #isInOrderDelivery() in-order
+     * delivery} is on.
+     */
+    private List<Packet> createDataPackets(
+        final PacketType type,
+        final ByteSource payload,
+        final InetSocketAddress destination,
+        final int flags
+    ) throws IOException {
+        if(isInOrderDelivery()) {
+            final ByteSource message = sequenced(payload, destination, PacketType.DATA_ACK == type);
+            return createDataPackets(type, message, destination, flags | Packet.FLAG_SEQUENCED, 0);
+        }
+        return createDataPackets(type, payload, destination, flags, 0);
+    }
+
+    /**
+     * @return the message behind the destination's next sequence number for reliable or unreliable messages.
+     */
+    private ByteSource sequenced(final ByteSource payload, final InetSocketAddress destination, final boolean reliable) {
+        final int sequence = (reliable ? reliableSendSequences : sendSequences)
+            .computeIfAbsent(destination, d -> new AtomicInteger())
+            .getAndIncrement();
+        return ReorderBuffer.sequenced(sequence, payload);
+    }
+
+    /**
+     * Compresses the payload if the destination agreed on a codec, and fragments it if it is larger than the MTU.
+     */
+    private List<Packet> createDataPackets(
+        final PacketType type,
+        final ByteSource payload,
+        final InetSocketAddress destination,
+        final int flags,
+        final int customId
+    ) throws IOException {
+        final byte[] compressed = compress(payload, destination);
+        final ByteSource data = null == compressed ? payload : ByteSource.wrap(compressed);
+        final int dataFlags = null == compressed ? flags : flags | Packet.FLAG_COMPRESSED;
+
+        if(data.size() > getMaxFragmentPayload()) {
+            return getPacketParser().createFragments(
+                type, getId(), destination, data, getMaxFragmentPayload(), dataFlags, customId, getSecretKey());
+        }
+        return Collections.singletonList(
+            getPacketParser().createPacket(type, getId(), destination, data, dataFlags, customId, getSecretKey()));
+    }
+
+    private byte[] compress(final ByteSource payload, final InetSocketAddress destination) throws IOException {
+        final PayloadCodec codec = peerCodecs.get(destination);
+        return null == codec ? null : codec.compress(payload);
+    }
+
+    /**
+     * Queues a DATA_NOACK message to be sent along with others to the same destination, after at most the coalescer's
+     * flush delay.
+     */
+    public void sendCoalescedData(final ByteSource payload, final InetSocketAddress destination) throws IOException {
+        getCoalescer().send(payload, destination);
+    }
+
+    int getMaxFragmentPayload() {
+        return Math.min(getMtu(), MAX_PACKET_SIZE) - Packet.HEADER_BYTE_SIZE;
+    }
+
+    private int getMaxCompactPayload() {
+        return Math.min(getMtu(), MAX_PACKET_SIZE) - CompactHeader.MAX_OVERHEAD_BYTE_SIZE;
     }
 
     protected void sendTimestampPacket(final PacketType type, final DatagramPacket packet)
@@ -90,11 +923,169 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
         sendTimestampPacket(type, packet.getAddress(), packet.getPort());
     }
 
+    protected void sendTimestampPacket(final PacketType type, final InetSocketAddress destination)
+        throws IOException
+    {
+        sendTimestampPacket(type, destination.getAddress(), destination.getPort());
+    }
+
     protected void sendTimestampPacket(final PacketType type, final InetAddress destination, final int port)
         throws IOException
     {
-        final Packet packet = getPacketParser().createPacket(type, getId(), timeStampData(), getSecretKey());
-        sendPacket(packet, destination, port);
+        sendTimestampPacket(type, new InetSocketAddress(destination, port), 0);
+    }
+
+    /**
+     * Sends the packet in the compact format if the destination agreed on it and the type allows it.
+     */
+    protected void sendTimestampPacket(final PacketType type, final InetSocketAddress destination, final int customId)
+        throws IOException
+    {
+        final CompactSession compactSession = compactSessions.get(destination);
+        if(null != compactSession && CompactHeader.isCompactable(type) && 0 == customId) {
+            sendCompactPacket(type, destination, compactSession, getPacketParser().nextOrderCount(destination), 0, 0, 0,
+                timeStampData());
+            return;
+        }
+
+        sendTimestampPacket(type, destination, customId, reserveOrderCount(destination));
+    }
+
+    /**
+     * Sends a full format packet.
+     *
+     * @param orderCount an order count reserved with {@link #reserveOrderCount(InetSocketAddress)}.
+     */
+    protected void sendTimestampPacket(
+        final PacketType type,
+        final InetSocketAddress destination,
+        final int customId,
+        final long orderCount
+    ) throws IOException {
+        sendControlPacket(type, destination, customId, orderCount, timeStampData());
+    }
+
+    /**
+     * Sends a full format packet with a payload of its own.
+     *
+     * @param orderCount an order count reserved with {@link #reserveOrderCount(InetSocketAddress)}.
+     */
+    protected void sendControlPacket(
+        final PacketType type,
+        final InetSocketAddress destination,
+        final int customId,
+        final long orderCount,
+        final ByteSource payload
+    ) throws IOException {
+        final Packet packet = getPacketParser()
+            .createPacket(type, getId(), orderCount, payload, 0, customId, getSecretKey());
+        sendPacket(packet, destination.getAddress(), destination.getPort());
+    }
+
+    /**
+     * Takes the next order count for the destination ahead of sending, for packets whose order count has to be known
+     * before they are sent.
+     */
+    protected long reserveOrderCount(final InetSocketAddress destination) {
+        return getPacketParser().nextOrderCount(destination);
+    }
+
+    /**
+     * Takes an order count for a packet to a destination that may not be a peer, without keeping a counter for it.
+     */
+    protected long orderCountWithoutCounter(final InetSocketAddress destination) {
+        return getPacketParser().nextOrderCountWithoutCounter(destination);
+    }
+
+    // Capabilities
+
+    /**
+     * @return the capabilities to advertise in the custom ID of a HELLO packet.
+     */
+    protected int getCapabilities() {
+        return getPayloadCodec().map(PayloadCodec::getCapability).orElse(0)
+            | (isCompactFormatEnabled() ? CompactHeader.CAPABILITY : 0);
+    }
+
+    /**
+     * Records which codec, if any, both ends support.
+     *
+     * @param peerCapabilities the custom ID of the peer's HELLO or ACCEPT packet.
+     * @return the capabilities both ends agreed on, to send back in an ACCEPT packet.
+     */
+    protected int agreeCapabilities(final InetSocketAddress peer, final int peerCapabilities) {
+        final int agreed = getCapabilities() & peerCapabilities;
+        final PayloadCodec codec = getPayloadCodec()
+            .filter(c -> 0 != (agreed & c.getCapability()))
+            .orElse(null);
+        if(null != codec) {
+            peerCodecs.put(peer, codec);
+        } else {
+            peerCodecs.remove(peer);
+        }
+        return agreed;
+    }
+
+    /**
+     * Starts using the compact format with the peer, for the packet types that allow it.
+     */
+    protected void agreeCompactSession(final InetSocketAddress peer, final CompactSession compactSession) {
+        compactSessions.put(peer, compactSession);
+    }
+
+    protected void forgetCapabilities(final InetSocketAddress peer) {
+        peerCodecs.remove(peer);
+        compactSessions.remove(peer);
+    }
+
+    /**
+     * Drops the messages queued or coalesced for the peer, the messages held back for ordering and the peer's pacing,
+     * so that every stream starts again from sequence number 0.
+     */
+    protected void forgetDelivery(final InetSocketAddress peer) {
+        getStreamScheduler().forget(peer);
+        getCoalescer().forget(peer);
+        getReorderer().forget(peer);
+        sendSequences.remove(peer);
+        reliableSendSequences.remove(peer);
+        getPacer().ifPresent(p -> p.forget(peer));
+    }
+
+    /**
+     * Tells a reader thread which format a datagram is in before it is dispatched. Without a compact session with the
+     * source, every datagram is in the full format, whatever its first byte.
+     *
+     * @return the session agreed on with the source if the datagram is a compact packet of it, otherwise null.
+     */
+    protected CompactSession compactSessionOf(final ByteBuffer packet, final InetSocketAddress source) {
+        if(compactSessions.isEmpty() || !CompactHeader.mightBeCompact(packet)) return null;
+        final CompactSession compactSession = compactSessions.get(source);
+        return CompactHeader.isPacketOf(packet, compactSession) ? compactSession : null;
+    }
+
+    /**
+     * Wraps a received datagram, in the compact format if it is a compact packet of a session agreed on with the
+     * source and in the full format otherwise, and counts it.
+     *
+     * @throws IllegalArgumentException if the datagram is too short to be a packet.
+     */
+    protected PacketView wrapPacket(final ByteBuffer packet, final InetSocketAddress source) {
+        final CompactSession compactSession = compactSessions.isEmpty() ? null : compactSessions.get(source);
+        PacketView view = null == compactSession ? null : new PacketView().wrapCompact(packet, compactSession);
+        if(null == view) {
+            try {
+                view = new PacketView().wrap(packet);
+            } catch (IllegalArgumentException e) {
+                getMetrics().recordPacketIn(PacketType.INVALID, packet.remaining());
+                throw e;
+            }
+        }
+        getMetrics().recordPacketIn(view.getType(), packet.remaining());
+        return view;
+    }
+
+    public MetricsSnapshot snapshotMetrics() {
+        return getMetrics().snapshot(getDispatcher().getQueueDepth());
     }
 
     // Utility functions
@@ -104,7 +1095,15 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
     }
 
     @Override
-    public void close() throws Exception {
+    public void close() throws IOException {
+        getPacer().ifPresent(Pacer::close);
+        getAsyncWriter().close();
+        getCoalescer().close();
+        getStreamScheduler().close();
+        getReorderer().close();
+        getReassembler().close();
+        getReliableChannel().close();
+        getDispatcher().close();
         getExecutorService().shutdownNow();
         getSocket().close();
     }
@@ -112,26 +1111,42 @@ public abstract class UdpCommon<T extends UdpCommon<T>>
     public static class ReaderThread implements Runnable, AutoCloseable {
         private final AtomicBoolean open = new AtomicBoolean(true);
 
-        private final UdpCommon udpCommon;
+        protected final UdpCommon<?> udpCommon;
 
-        private ReaderThread(final UdpCommon udpCommon) {
+        protected ReaderThread(final UdpCommon<?> udpCommon) {
             this.udpCommon = requireNonNull(udpCommon);
         }
 
+        protected boolean isOpen() {
+            return open.get();
+        }
+
         @Override
-        public void close() throws Exception {
+        public void close() {
             open.set(false);
         }
 
         @Override
         public void run() {
-            while (open.get()) {
+            while (isOpen()) {
                 try {
                     final DatagramPacket packet = udpCommon.receiveRawPacket();
+                    final ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+                    final CompactSession compactSession =
+                        udpCommon.compactSessionOf(buffer, (InetSocketAddress) packet.getSocketAddress());
 
-                    udpCommon.getExecutorService().submit(() -> udpCommon.handlePacket(packet));
+                    udpCommon.getDispatcher().dispatch(Dispatcher.senderKey(buffer, compactSession),
+                        PacketView.peekType(buffer, null != compactSession), () -> udpCommon.handlePacket(packet),
+                        () -> {});
                 } catch (IOException e) {
+                    if(udpCommon.getSocket().isClosed()) {
+                        udpCommon.getLogger().debug("Socket closed, stopping reader.");
+                        return;
+                    }
                     udpCommon.getLogger().debug("Unable to read from socket.", e);
+                } catch (RejectedExecutionException e) {
+                    udpCommon.getMetrics().recordDispatchRejection();
+                    udpCommon.getLogger().debug("Dispatcher rejected packet.", e);
                 }
             }
         }
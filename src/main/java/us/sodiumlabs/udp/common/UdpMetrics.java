@@ -0,0 +1,172 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for packet flow and round trip time histograms per peer.
+ *
+ * Counters are {@link LongAdder}s, which stripe under contention, and are indexed by packet type ordinal, so recording
+ * takes no locks and allocates nothing. Peer histograms are created when a peer connects, not when a packet arrives.
+ */
+public class UdpMetrics {
+    private static final PacketType[] TYPES = PacketType.values();
+
+    private final LongAdder[] packetsIn = adders(TYPES.length);
+
+    private final LongAdder[] bytesIn = adders(TYPES.length);
+
+    private final LongAdder[] packetsOut = adders(TYPES.length);
+
+    private final LongAdder[] bytesOut = adders(TYPES.length);
+
+    private final LongAdder signatureFailures = new LongAdder();
+
+    private final LongAdder unknownSenders = new LongAdder();
+
+    private final LongAdder replayedPackets = new LongAdder();
+
+    private final LongAdder rateLimitedPackets = new LongAdder();
+
+    private final LongAdder filteredPackets = new LongAdder();
+
+    private final LongAdder droppedFragments = new LongAdder();
+
+    private final LongAdder reassemblyTimeouts = new LongAdder();
+
+    private final LongAdder skippedMessages = new LongAdder();
+
+    private final LongAdder dispatchRejections = new LongAdder();
+
+    private final LongAdder handlerFailures = new LongAdder();
+
+    private final LongAdder[] shedPackets = adders(TYPES.length);
+
+    private final LongAdder evictedPackets = new LongAdder();
+
+    private final LongAdder pacingDrops = new LongAdder();
+
+    private final ConcurrentMap<UUID, RttHistogram> roundTripTimes = new ConcurrentHashMap<>();
+
+    private static LongAdder[] adders(final int count) {
+        final LongAdder[] adders = new LongAdder[count];
+        for(int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public void recordPacketIn(final PacketType type, final int bytes) {
+        packetsIn[type.ordinal()].increment();
+        bytesIn[type.ordinal()].add(bytes);
+    }
+
+    public void recordPacketOut(final PacketType type, final int bytes) {
+        packetsOut[type.ordinal()].increment();
+        bytesOut[type.ordinal()].add(bytes);
+    }
+
+    public void recordSignatureFailure() {
+        signatureFailures.increment();
+    }
+
+    public void recordUnknownSender() {
+        unknownSenders.increment();
+    }
+
+    public void recordReplay() {
+        replayedPackets.increment();
+    }
+
+    public void recordRateLimited() {
+        rateLimitedPackets.increment();
+    }
+
+    public void recordFiltered() {
+        filteredPackets.increment();
+    }
+
+    public void recordFragmentDropped() {
+        droppedFragments.increment();
+    }
+
+    public void recordReassemblyTimeout() {
+        reassemblyTimeouts.increment();
+    }
+
+    public void recordSkippedMessages(final long count) {
+        skippedMessages.add(count);
+    }
+
+    public void recordDispatchRejection() {
+        dispatchRejections.increment();
+    }
+
+    public void recordHandlerFailure() {
+        handlerFailures.increment();
+    }
+
+    /**
+     * @param evicted whether the datagram had been queued, rather than being refused as it arrived.
+     */
+    public void recordShed(final PacketType type, final boolean evicted) {
+        shedPackets[type.ordinal()].increment();
+        if(evicted) evictedPackets.increment();
+    }
+
+    public void recordPacingDrop() {
+        pacingDrops.increment();
+    }
+
+    /**
+     * @return the round trip histogram for the peer, creating it if needed. Call this when the peer connects and keep
+     * the result, rather than looking it up per packet.
+     */
+    public RttHistogram registerPeer(final UUID peerId) {
+        return roundTripTimes.computeIfAbsent(peerId, id -> new RttHistogram());
+    }
+
+    public void removePeer(final UUID peerId) {
+        roundTripTimes.remove(peerId);
+    }
+
+    public MetricsSnapshot snapshot(final int queueDepth) {
+        final Map<UUID, HistogramSnapshot> rtt = new HashMap<>();
+        roundTripTimes.forEach((id, histogram) -> rtt.put(id, histogram.snapshot()));
+
+        return MetricsSnapshot.builder()
+            .withPacketsIn(sum(packetsIn))
+            .withBytesIn(sum(bytesIn))
+            .withPacketsOut(sum(packetsOut))
+            .withBytesOut(sum(bytesOut))
+            .withSignatureFailures(signatureFailures.sum())
+            .withUnknownSenders(unknownSenders.sum())
+            .withReplayedPackets(replayedPackets.sum())
+            .withRateLimitedPackets(rateLimitedPackets.sum())
+            .withFilteredPackets(filteredPackets.sum())
+            .withDroppedFragments(droppedFragments.sum())
+            .withReassemblyTimeouts(reassemblyTimeouts.sum())
+            .withSkippedMessages(skippedMessages.sum())
+            .withDispatchRejections(dispatchRejections.sum())
+            .withHandlerFailures(handlerFailures.sum())
+            .withShedPackets(sum(shedPackets))
+            .withEvictedPackets(evictedPackets.sum())
+            .withPacingDrops(pacingDrops.sum())
+            .withQueueDepth(queueDepth)
+            .withRoundTripTimes(rtt)
+            .build();
+    }
+
+    private static Map<PacketType, Long> sum(final LongAdder[] adders) {
+        final Map<PacketType, Long> sums = new EnumMap<>(PacketType.class);
+        for(final PacketType type : TYPES) {
+            sums.put(type, adders[type.ordinal()].sum());
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,21 @@
+package us.sodiumlabs.udp.common;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a packet claims to come from a sender that the key provider has no key for.
+ */
+public class UnknownSenderException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final UUID senderId;
+
+    public UnknownSenderException(final UUID senderId) {
+        super(String.format("No key is known for [%s].", senderId));
+        this.senderId = senderId;
+    }
+
+    public UUID getSenderId() {
+        return senderId;
+    }
+}
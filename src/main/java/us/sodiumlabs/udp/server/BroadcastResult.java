@@ -0,0 +1,29 @@
+package us.sodiumlabs.udp.server;
+
+import org.immutables.value.Value;
+import us.sodiumlabs.udp.immutables.Style;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The outcome of a {@link UdpServer#broadcast(java.nio.ByteBuffer) broadcast}.
+ */
+@Style
+@Value.Immutable
+public abstract class BroadcastResult {
+    public abstract int getRecipientCount();
+
+    /**
+     * The clients that could not be sent to, by client id, with the reason.
+     */
+    public abstract Map<UUID, Exception> getFailures();
+
+    public int getSentCount() {
+        return getRecipientCount() - getFailures().size();
+    }
+
+    public static ImmutableBroadcastResult.Builder builder() {
+        return ImmutableBroadcastResult.builder();
+    }
+}
@@ -0,0 +1,125 @@
+package us.sodiumlabs.udp.server;
+
+import com.google.common.base.MoreObjects;
+import us.sodiumlabs.udp.common.ReplayWindow;
+import us.sodiumlabs.udp.common.RttHistogram;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Server-side state for one connected client.
+ */
+public class ClientSession {
+    private final UUID clientId;
+
+    private final long connectedNanos;
+
+    private volatile InetSocketAddress address;
+
+    private volatile long lastSeenNanos;
+
+    private volatile long pangSentNanos;
+
+    private volatile long lastRttNanos = -1;
+
+    private volatile long smoothedRttNanos = -1;
+
+    private final RttHistogram rttHistogram;
+
+    private final ReplayWindow replayWindow = new ReplayWindow();
+
+    ClientSession(
+        final UUID clientId,
+        final InetSocketAddress address,
+        final long nowNanos,
+        final RttHistogram rttHistogram
+    ) {
+        this.clientId = requireNonNull(clientId, "clientId");
+        this.address = requireNonNull(address, "address");
+        this.rttHistogram = requireNonNull(rttHistogram, "rttHistogram");
+        this.connectedNanos = nowNanos;
+        this.lastSeenNanos = nowNanos;
+    }
+
+    public UUID getClientId() {
+        return clientId;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public long getConnectedNanos() {
+        return connectedNanos;
+    }
+
+    public long getLastSeenNanos() {
+        return lastSeenNanos;
+    }
+
+    /**
+     * @return the most recent PANG to PONG round trip, or -1 if none has completed yet.
+     */
+    public long getLastRttNanos() {
+        return lastRttNanos;
+    }
+
+    /**
+     * @return the round trip time smoothed the same way as TCP's SRTT, or -1 if none has completed yet.
+     */
+    public long getSmoothedRttNanos() {
+        return smoothedRttNanos;
+    }
+
+    public ReplayWindow getReplayWindow() {
+        return replayWindow;
+    }
+
+    public RttHistogram getRttHistogram() {
+        return rttHistogram;
+    }
+
+    /**
+     * @return the address the client moved away from, or null if it is still at the same one.
+     */
+    InetSocketAddress touch(final InetSocketAddress source, final long nowNanos) {
+        lastSeenNanos = nowNanos;
+        // The packet was authenticated, so follow the client if its address changed.
+        final InetSocketAddress previous = address;
+        if(previous.equals(source)) return null;
+        address = source;
+        return previous;
+    }
+
+    void markPangSent(final long nowNanos) {
+        pangSentNanos = nowNanos;
+    }
+
+    /**
+     * @return the round trip time from the last PANG, or -1 if there is no PANG to match.
+     */
+    long recordPong(final long nowNanos) {
+        final long sentNanos = pangSentNanos;
+        if(0 == sentNanos) return -1;
+        pangSentNanos = 0;
+
+        final long sample = nowNanos - sentNanos;
+        rttHistogram.record(sample);
+        lastRttNanos = sample;
+        final long smoothed = smoothedRttNanos;
+        smoothedRttNanos = smoothed < 0 ? sample : smoothed + ((sample - smoothed) >> 3);
+        return sample;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this.getClass())
+            .add("Client Id", clientId)
+            .add("Address", address)
+            .add("Smoothed RTT", smoothedRttNanos)
+            .toString();
+    }
+}
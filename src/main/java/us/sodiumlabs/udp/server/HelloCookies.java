@@ -0,0 +1,103 @@
+package us.sodiumlabs.udp.server;
+
+import com.google.common.base.Preconditions;
+import us.sodiumlabs.udp.common.HelloPayload;
+import us.sodiumlabs.udp.common.HmacEngine;
+import us.sodiumlabs.udp.common.PacketParser;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and checks the cookies that a client must echo in its HELLO before the server accepts it.
+ *
+ * A cookie is the time it was issued followed by a truncated HMAC of that time, the client's address and port, and the
+ * client's id, keyed with a secret that never leaves the server. Checking one needs no state, so a flood of HELLOs
+ * from spoofed addresses costs the server a MAC and a reply each, and no reply is larger than the HELLO it answers.
+ * The secret is random per server, so cookies do not survive a restart.
+ */
+public class HelloCookies {
+    private static final int ISSUED_BYTE_SIZE = 8;
+
+    private static final UUID KEY_ID = new UUID(0, 0);
+
+    private final long lifetimeMillis;
+
+    private final SecretKeySpec key;
+
+    private final HmacEngine hmacEngine = new HmacEngine(1, 1, TimeUnit.DAYS);
+
+    /**
+     * @param lifetime how long a client has to echo a cookie.
+     */
+    public HelloCookies(final Duration lifetime) {
+        Preconditions.checkArgument(!lifetime.isNegative() && !lifetime.isZero(), "Lifetime must be positive.");
+        this.lifetimeMillis = lifetime.toMillis();
+
+        final byte[] secret = new byte[HmacEngine.SIGNATURE_BYTE_SIZE];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, PacketParser.HMAC_SHA_256);
+    }
+
+    public static HelloCookies withDefaults() {
+        return new HelloCookies(Duration.ofSeconds(10));
+    }
+
+    public byte[] issue(final InetSocketAddress source, final UUID clientId, final long nowMillis) {
+        final ByteBuffer cookie = ByteBuffer.allocate(HelloPayload.COOKIE_BYTE_SIZE);
+        cookie.putLong(nowMillis);
+        cookie.put(mac(nowMillis, source, clientId), 0, HelloPayload.COOKIE_BYTE_SIZE - ISSUED_BYTE_SIZE);
+        return cookie.array();
+    }
+
+    /**
+     * @param cookie the cookie echoed in a HELLO. It is not consumed.
+     * @return true if this server issued the cookie to the source and client, and it has not expired.
+     */
+    public boolean isValid(
+        final ByteBuffer cookie,
+        final InetSocketAddress source,
+        final UUID clientId,
+        final long nowMillis
+    ) {
+        if(HelloPayload.COOKIE_BYTE_SIZE != cookie.remaining()) return false;
+
+        final long issuedMillis = cookie.getLong(cookie.position());
+        final long age = nowMillis - issuedMillis;
+        if(age < 0 || age > lifetimeMillis) return false;
+
+        final ByteBuffer mac = cookie.duplicate();
+        mac.position(cookie.position() + ISSUED_BYTE_SIZE);
+        try {
+            return hmacEngine.verify(KEY_ID, id -> key, macInput(issuedMillis, source, clientId), mac);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to check cookie.", e);
+        }
+    }
+
+    private byte[] mac(final long issuedMillis, final InetSocketAddress source, final UUID clientId) {
+        try {
+            return hmacEngine.sign(KEY_ID, key, macInput(issuedMillis, source, clientId));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to compute cookie.", e);
+        }
+    }
+
+    private static ByteBuffer macInput(final long issuedMillis, final InetSocketAddress source, final UUID clientId) {
+        final byte[] address = source.getAddress().getAddress();
+        final ByteBuffer input = ByteBuffer.allocate(ISSUED_BYTE_SIZE + address.length + 2 + 16);
+        input.putLong(issuedMillis)
+            .put(address)
+            .putShort((short) source.getPort())
+            .putLong(clientId.getMostSignificantBits())
+            .putLong(clientId.getLeastSignificantBits());
+        input.flip();
+        return input;
+    }
+}
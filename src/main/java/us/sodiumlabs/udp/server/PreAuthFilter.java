@@ -0,0 +1,130 @@
+package us.sodiumlabs.udp.server;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import us.sodiumlabs.udp.common.HelloPayload;
+import us.sodiumlabs.udp.common.HmacEngine;
+import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.common.PacketView;
+import us.sodiumlabs.udp.common.TokenBucket;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cheap checks that the server makes on every datagram before any MAC work, so that a flood of junk costs little CPU.
+ *
+ * Each source address has a token bucket, and datagrams beyond its rate are dropped unread. Datagrams whose header
+ * makes no sense for a client to send are dropped without verifying them. Client ids the key provider had no key for
+ * are remembered for a while, so that packets claiming them are dropped without asking the provider again; call
+ * {@link #invalidate(UUID)} once a key is provisioned. Buckets and unknown ids are kept in size-bounded caches, so a
+ * flood from many addresses or ids cannot exhaust memory.
+ */
+public class PreAuthFilter {
+    /**
+     * The flags a client may set. Only servers broadcast, so BROADCAST is not one of them.
+     */
+    private static final int KNOWN_FLAGS =
+        Packet.FLAG_FRAGMENT | Packet.FLAG_BATCH | Packet.FLAG_COMPRESSED | Packet.FLAG_SEQUENCED;
+
+    private static final int SIGNATURE_BYTE_SIZE = HmacEngine.SIGNATURE_BYTE_SIZE;
+
+    private final double packetsPerSecond;
+
+    private final double burst;
+
+    private final Cache<InetAddress, TokenBucket> buckets;
+
+    private final Cache<UUID, Boolean> unknownClients;
+
+    /**
+     * @param maxSources        how many source addresses to keep buckets for. Buckets are dropped least recently used
+     *                          first, and are also dropped once idle long enough to have refilled.
+     * @param packetsPerSecond  the sustained rate allowed from one address.
+     * @param burst             how many datagrams an address may send at once.
+     * @param maxUnknownClients how many unknown client ids to remember.
+     * @param unknownClientTtl  how long to remember an unknown client id.
+     */
+    public PreAuthFilter(
+        final int maxSources,
+        final double packetsPerSecond,
+        final double burst,
+        final int maxUnknownClients,
+        final Duration unknownClientTtl
+    ) {
+        Preconditions.checkArgument(maxSources > 0, "At least one source must be tracked.");
+        Preconditions.checkArgument(maxUnknownClients > 0, "At least one unknown client must be remembered.");
+        this.packetsPerSecond = packetsPerSecond;
+        this.burst = burst;
+        this.buckets = CacheBuilder.newBuilder()
+            .maximumSize(maxSources)
+            .expireAfterAccess((long) Math.ceil(burst / packetsPerSecond * 1_000), TimeUnit.MILLISECONDS)
+            .build();
+        this.unknownClients = CacheBuilder.newBuilder()
+            .maximumSize(maxUnknownClients)
+            .expireAfterWrite(unknownClientTtl.toNanos(), TimeUnit.NANOSECONDS)
+            .build();
+    }
+
+    public static PreAuthFilter withDefaults() {
+        return new PreAuthFilter(65_536, 2_000, 4_000, 65_536, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Takes a token from the source's bucket.
+     *
+     * @return false if the source is over its rate.
+     */
+    public boolean tryAcquire(final InetAddress source, final long nowNanos) {
+        return buckets.asMap()
+            .computeIfAbsent(source, s -> new TokenBucket(packetsPerSecond, burst, nowNanos))
+            .tryTake(1, nowNanos);
+    }
+
+    /**
+     * @return false if the header is not one a client could have sent: a type the server does not take from clients,
+     * unknown flags, flags on a packet that does not carry data, impossible fragment numbers, a HELLO of the wrong size,
+     * or an ACK that is not a whole number of signatures.
+     */
+    public boolean isWellFormed(final PacketView packet) {
+        final PacketType type = packet.getType();
+        if(PacketType.INVALID == type || !type.isSentFromClient()) return false;
+
+        final int flags = packet.getFlags();
+        if(0 != (flags & ~KNOWN_FLAGS)) return false;
+        if(0 != flags && PacketType.DATA_ACK != type && PacketType.DATA_NOACK != type) return false;
+        if(packet.isFragment()
+            && (packet.getFragmentCount() < 2 || packet.getFragmentIndex() >= packet.getFragmentCount()))
+        {
+            return false;
+        }
+
+        if(PacketType.HELLO == type) return HelloPayload.BYTE_SIZE == packet.getLength();
+        if(PacketType.ACK == type || PacketType.BAD_ACK == type) {
+            return 0 != packet.getLength() && 0 == packet.getLength() % SIGNATURE_BYTE_SIZE;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the key provider recently had no key for the client.
+     */
+    public boolean isUnknownClient(final UUID clientId) {
+        return null != unknownClients.getIfPresent(clientId);
+    }
+
+    public void recordUnknownClient(final UUID clientId) {
+        unknownClients.put(clientId, Boolean.TRUE);
+    }
+
+    /**
+     * Forgets that a client was unknown, for when its key has just been provisioned.
+     */
+    public void invalidate(final UUID clientId) {
+        unknownClients.invalidate(clientId);
+    }
+}
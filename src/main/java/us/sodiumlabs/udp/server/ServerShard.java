@@ -0,0 +1,96 @@
+package us.sodiumlabs.udp.server;
+
+import us.sodiumlabs.udp.common.Dispatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * One of several sockets bound to the server's port with SO_REUSEPORT. The kernel hashes each client to a shard, and
+ * the shard owns the sessions of the clients it is given, so shards never share a reader, handler lane or session.
+ *
+ * The rest of the server's state is shared by every shard. The reliable channel, order counters, codecs, reassembler
+ * and reorderer are also reached from the send path, which only knows the peer's address and not its shard. They are
+ * kept in concurrent maps keyed by peer, so shards read and write disjoint entries without taking a lock, and metrics
+ * are striped counters. The pre-authentication filter stays shared on purpose: the kernel hashes by address and port,
+ * so one host's sockets can land on different shards, and per-shard buckets would let a host send at a multiple of
+ * its rate.
+ */
+class ServerShard implements AutoCloseable {
+    private final int index;
+
+    private final DatagramChannel channel;
+
+    private final SessionTable sessionTable;
+
+    private final Dispatcher dispatcher;
+
+    ServerShard(
+        final int index,
+        final DatagramChannel channel,
+        final SessionTable sessionTable,
+        final Dispatcher dispatcher
+    ) {
+        this.index = index;
+        this.channel = requireNonNull(channel, "channel");
+        this.sessionTable = requireNonNull(sessionTable, "sessionTable");
+        this.dispatcher = requireNonNull(dispatcher, "dispatcher");
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    DatagramChannel getChannel() {
+        return channel;
+    }
+
+    SessionTable getSessionTable() {
+        return sessionTable;
+    }
+
+    Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    static DatagramChannel openChannel(final InetSocketAddress address, final boolean reusePort) throws IOException {
+        final DatagramChannel channel = DatagramChannel.open();
+        try {
+            if(reusePort) channel.setOption(reusePortOption(channel), true);
+            return channel.bind(address);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * SO_REUSEPORT only exists from Java 9, so it is looked up at runtime to keep the library building for Java 8.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption(final DatagramChannel channel) {
+        final SocketOption<Boolean> option;
+        try {
+            option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException("SO_REUSEPORT requires Java 9 or later.", e);
+        }
+
+        if(!channel.supportedOptions().contains(option)) {
+            throw new IllegalStateException("SO_REUSEPORT is not supported on this platform.");
+        }
+        return option;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sessionTable.close();
+        dispatcher.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,186 @@
+package us.sodiumlabs.udp.server;
+
+import org.slf4j.Logger;
+import us.sodiumlabs.udp.common.RttHistogram;
+import us.sodiumlabs.udp.common.ThreadMode;
+import us.sodiumlabs.udp.common.TimingWheel;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A concurrent registry of connected clients keyed by client id.
+ *
+ * Every session has one timeout on a {@link TimingWheel}. Seeing a packet from a client only records the time; when
+ * the timeout fires the session is either expired or pushed back to its new deadline, so keeping a busy client alive
+ * costs nothing on the receive path and a sweep never scans the whole table.
+ */
+public class SessionTable implements AutoCloseable {
+    private final ConcurrentMap<UUID, ClientSession> sessions = new ConcurrentHashMap<>();
+
+    private final TimingWheel<ClientSession> wheel;
+
+    private final long timeoutNanos;
+
+    private final Logger logger;
+
+    private final Consumer<ClientSession> expiryListener;
+
+    private final BiConsumer<ClientSession, InetSocketAddress> abandonedAddressListener;
+
+    private ScheduledExecutorService sweeper;
+
+    public SessionTable(final Duration timeout, final Duration sweepInterval, final Logger logger) {
+        this(timeout, sweepInterval, logger, session -> {});
+    }
+
+    /**
+     * @param expiryListener called on the sweeper thread for each session that times out.
+     */
+    public SessionTable(
+        final Duration timeout,
+        final Duration sweepInterval,
+        final Logger logger,
+        final Consumer<ClientSession> expiryListener
+    ) {
+        this(timeout, sweepInterval, logger, expiryListener, (session, address) -> {});
+    }
+
+    /**
+     * @param expiryListener           called on the sweeper thread for each session that times out.
+     * @param abandonedAddressListener called with a session and an address it no longer uses, when the client moves to
+     *                                 another address or opens a new session from one. Runs on the thread that moved or
+     *                                 opened the session.
+     */
+    public SessionTable(
+        final Duration timeout,
+        final Duration sweepInterval,
+        final Logger logger,
+        final Consumer<ClientSession> expiryListener,
+        final BiConsumer<ClientSession, InetSocketAddress> abandonedAddressListener
+    ) {
+        this.timeoutNanos = timeout.toNanos();
+        this.wheel = new TimingWheel<>(sweepInterval.toNanos(), TimeUnit.NANOSECONDS, System.nanoTime());
+        this.logger = requireNonNull(logger, "logger");
+        this.expiryListener = requireNonNull(expiryListener, "expiryListener");
+        this.abandonedAddressListener = requireNonNull(abandonedAddressListener, "abandonedAddressListener");
+    }
+
+    /**
+     * Creates a session for the client, replacing any it already had.
+     */
+    public ClientSession open(final UUID clientId, final InetSocketAddress address) {
+        return open(clientId, address, new RttHistogram());
+    }
+
+    /**
+     * Creates a session for the client, replacing any it already had. A replaced session's address is abandoned if the
+     * new session is at another one.
+     *
+     * @param rttHistogram receives every round trip time measured for the session.
+     */
+    public ClientSession open(final UUID clientId, final InetSocketAddress address, final RttHistogram rttHistogram) {
+        final long now = System.nanoTime();
+        final ClientSession session = new ClientSession(clientId, address, now, rttHistogram);
+        final ClientSession replaced = sessions.put(clientId, session);
+        wheel.schedule(session, now + timeoutNanos);
+        if(null != replaced && !replaced.getAddress().equals(address)) {
+            abandonedAddressListener.accept(replaced, replaced.getAddress());
+        }
+        return session;
+    }
+
+    /**
+     * @return the live session for the client, or null if it is unknown or has timed out.
+     */
+    public ClientSession get(final UUID clientId) {
+        final ClientSession session = sessions.get(clientId);
+        if(null == session || isExpired(session, System.nanoTime())) return null;
+        return session;
+    }
+
+    /**
+     * Records that an authenticated packet arrived from the client. If it came from another address, the session moves
+     * there and its old address is abandoned.
+     *
+     * @return the live session, or null if it is unknown or has timed out.
+     */
+    public ClientSession touch(final UUID clientId, final InetSocketAddress source) {
+        final long now = System.nanoTime();
+        final ClientSession session = sessions.get(clientId);
+        if(null == session || isExpired(session, now)) return null;
+        final InetSocketAddress abandoned = session.touch(source, now);
+        if(null != abandoned) {
+            logger.debug("Client with uuid [{}] moved from [{}] to [{}].", clientId, abandoned, source);
+            abandonedAddressListener.accept(session, abandoned);
+        }
+        return session;
+    }
+
+    public ClientSession remove(final UUID clientId) {
+        return sessions.remove(clientId);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public Collection<ClientSession> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * Expires every session whose timeout has passed. Only one thread may sweep at a time.
+     */
+    public void sweep(final long nowNanos) {
+        wheel.advance(nowNanos, timeout -> {
+            final ClientSession session = timeout.getValue();
+            if(sessions.get(session.getClientId()) != session) return;
+
+            if(isExpired(session, nowNanos)) {
+                if(sessions.remove(session.getClientId(), session)) {
+                    logger.debug("Client with uuid [{}] has timed out.", session.getClientId());
+                    expiryListener.accept(session);
+                }
+            } else {
+                wheel.schedule(timeout, session.getLastSeenNanos() + timeoutNanos);
+            }
+        });
+    }
+
+    private boolean isExpired(final ClientSession session, final long nowNanos) {
+        return nowNanos - session.getLastSeenNanos() >= timeoutNanos;
+    }
+
+    public synchronized void start(final ThreadMode threadMode, final String threadName) {
+        if(null != sweeper) return;
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> threadMode.newDaemonThread(r, threadName));
+        final long tickNanos = wheel.getTickNanos();
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                sweep(System.nanoTime());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to sweep sessions.", e);
+            }
+        }, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if(null != sweeper) sweeper.shutdownNow();
+        sessions.clear();
+    }
+}
@@ -1,18 +1,38 @@
 package us.sodiumlabs.udp.server;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
 import org.immutables.value.Value;
-import us.sodiumlabs.udp.common.Packet;
+import us.sodiumlabs.udp.common.ChannelReaderThread;
+import us.sodiumlabs.udp.common.CompactHeader;
+import us.sodiumlabs.udp.common.CompactSession;
+import us.sodiumlabs.udp.common.Dispatcher;
+import us.sodiumlabs.udp.common.HelloPayload;
+import us.sodiumlabs.udp.common.PacketRouter;
 import us.sodiumlabs.udp.common.PacketType;
+import us.sodiumlabs.udp.common.PacketView;
+import us.sodiumlabs.udp.common.ReceiveMode;
+import us.sodiumlabs.udp.common.ReplayWindow;
 import us.sodiumlabs.udp.common.UdpCommon;
+import us.sodiumlabs.udp.common.UnknownSenderException;
 import us.sodiumlabs.udp.immutables.Style;
 
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 @Style
@@ -23,7 +43,31 @@ public abstract class UdpServer
 {
     public abstract Function<UUID, SecretKeySpec> getClientKeyProvider();
 
-    private AtomicBoolean initiated = new AtomicBoolean(false);
+    private final AtomicBoolean initiated = new AtomicBoolean(false);
+
+    private final List<ServerShard> shards = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger compactSessionIds = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
+    /**
+     * Routes packets from clients with a session. HELLO and DISCONNECT packets open and close sessions, so they are
+     * handled before the session is looked up.
+     */
+    private final PacketRouter<ClientSession> router = PacketRouter.<ClientSession>builder()
+        .withRoute(PacketType.PING, this::onPing)
+        .withRoute(PacketType.PONG, this::onPong)
+        .withRoute(PacketType.DATA_ACK, (session, packet, source) -> {
+            if(!onReliableDataPacket(packet, source)) session.getReplayWindow().unmark(packet.getOrderCount());
+        })
+        .withRoute(PacketType.DATA_NOACK, (session, packet, source) -> onDataPacket(packet, source))
+        .withRoute(PacketType.ACK, (session, packet, source) -> onAckPacket(packet, source))
+        .withRoute(PacketType.BAD_ACK, (session, packet, source) -> onBadAckPacket(packet, source))
+        .withFallback((session, packet, source) -> {
+            if(getLogger().isDebugEnabled()) {
+                getLogger().debug("Received type that is not handled by the server [{}].", packet.getType());
+            }
+        })
+        .build();
 
     @Value.Default
     public InetAddress getDestination() {
@@ -37,58 +81,382 @@ public abstract class UdpServer
     @Value.Default
     public DatagramSocket getSocket() {
         try {
+            if(ReceiveMode.DATAGRAM_CHANNEL == getReceiveMode()) {
+                return ServerShard.openChannel(new InetSocketAddress(getDestination(), getPort()), isSharded())
+                    .socket();
+            }
             return new DatagramSocket(getPort(), getDestination());
-        } catch (SocketException e) {
+        } catch (IOException e) {
             throw new RuntimeException("Unable to create socket.", e);
         }
     }
 
+    /**
+     * The number of sockets bound to the port with SO_REUSEPORT. Each shard has its own reader thread, handler lane
+     * and session table; everything else is shared. Sharding needs {@link ReceiveMode#DATAGRAM_CHANNEL} and Java 9 or
+     * later, and {@link #initializeServer()} throws an {@link IllegalStateException} where SO_REUSEPORT is missing.
+     */
+    @Value.Default
+    public int getShardCount() {
+        return 1;
+    }
+
+    @Value.Default
+    @Override
+    public Dispatcher getDispatcher() {
+        if(isSharded()) {
+            return striped("ServerShard-0");
+        }
+        return super.getDispatcher();
+    }
+
+    @Value.Check
+    protected void check() {
+        Preconditions.checkArgument(getShardCount() > 0, "There must be at least one shard.");
+        Preconditions.checkArgument(!isSharded() || ReceiveMode.DATAGRAM_CHANNEL == getReceiveMode(),
+            "Sharded servers must use the DATAGRAM_CHANNEL receive mode.");
+    }
+
+    private boolean isSharded() {
+        return getShardCount() > 1;
+    }
+
+    /**
+     * How long a client may go without sending an authenticated packet before its session expires.
+     */
+    @Value.Default
+    public Duration getSessionTimeout() {
+        return Duration.ofSeconds(5);
+    }
+
+    /**
+     * The tick of the timing wheel that expires sessions.
+     */
+    @Value.Default
+    public Duration getSessionSweepInterval() {
+        return Duration.ofMillis(100);
+    }
+
+    /**
+     * The checks made on every datagram before its signature is verified. Shared by every shard.
+     */
+    @Value.Default
+    public PreAuthFilter getPreAuthFilter() {
+        return PreAuthFilter.withDefaults();
+    }
+
+    /**
+     * Issues the cookies a client must echo in its HELLO. Shared by every shard.
+     */
+    @Value.Default
+    public HelloCookies getHelloCookies() {
+        return HelloCookies.withDefaults();
+    }
+
+    /**
+     * How far the timestamp of a HELLO may be from the server's clock, either way.
+     */
+    @Value.Default
+    public Duration getHelloTimestampTolerance() {
+        return Duration.ofSeconds(30);
+    }
+
+    /**
+     * The sessions of the first shard, which is every session when the server is not sharded.
+     */
+    @Value.Default
+    public SessionTable getSessionTable() {
+        return newSessionTable();
+    }
+
+    private SessionTable newSessionTable() {
+        return new SessionTable(getSessionTimeout(), getSessionSweepInterval(), getLogger(),
+            session -> {
+                forgetAddress(session.getAddress());
+                getMetrics().removePeer(session.getClientId());
+                fireDisconnect(session.getClientId(), session.getAddress());
+            },
+            (session, abandoned) -> forgetAddress(abandoned));
+    }
+
+    /**
+     * Drops everything kept for an address a client no longer uses, so that nothing leaks when clients leave, time out
+     * or move.
+     */
+    private void forgetAddress(final InetSocketAddress address) {
+        getReliableChannel().forget(address);
+        getPacketParser().forgetPeer(address);
+        forgetCapabilities(address);
+        forgetDelivery(address);
+    }
+
+    /**
+     * @return the live sessions of every shard.
+     */
+    public Collection<ClientSession> getSessions() {
+        if(shards.isEmpty()) return getSessionTable().getSessions();
+
+        final List<ClientSession> sessions = new ArrayList<>(getSessionTable().getSessions());
+        for(final ServerShard shard : shards) {
+            sessions.addAll(shard.getSessionTable().getSessions());
+        }
+        return sessions;
+    }
+
     // Receive Packets
     @VisibleForTesting
-    protected void handlePacket(final DatagramPacket packet) {
+    protected void handlePacket(final ByteBuffer packet, final InetSocketAddress source) {
+        handlePacket(getSessionTable(), packet, source);
+    }
+
+    private void handlePacket(
+        final SessionTable sessionTable,
+        final ByteBuffer packet,
+        final InetSocketAddress source
+    ) {
         try {
-            final Packet parsedPacket = getPacketParser().parsePacket(ByteBuffer.wrap(packet.getData()), getClientKeyProvider());
+            // Everything before the signature check must stay cheap, since none of it is authenticated yet.
+            if(!getPreAuthFilter().tryAcquire(source.getAddress(), System.nanoTime())) {
+                getMetrics().recordRateLimited();
+                return;
+            }
 
-            if(!parsedPacket.getType().isSentFromClient()) {
-                if(getLogger().isDebugEnabled()) {
-                    getLogger().debug(
-                        String.format("Received type that is not handled by the server [%s].", parsedPacket.getType()));
+            final PacketView parsedPacket;
+            try {
+                parsedPacket = wrapPacket(packet, source);
+            } catch (IllegalArgumentException e) {
+                getMetrics().recordFiltered();
+                if(getLogger().isTraceEnabled()) getLogger().trace("Dropped packet with a truncated header.", e);
+                return;
+            }
+            if(!getPreAuthFilter().isWellFormed(parsedPacket)) {
+                getMetrics().recordFiltered();
+                if(getLogger().isTraceEnabled()) {
+                    getLogger().trace("Dropped malformed packet of type [{}].", parsedPacket.getType());
                 }
                 return;
             }
 
+            // Replays are dropped before paying for the signature. A repeated DATA_ACK is still verified, since its
+            // ACK may have been the packet that was lost. Clients do not broadcast, so the filter drops BROADCAST.
+            final ClientSession knownSession = sessionTable.get(parsedPacket.getSenderId());
+            if(null == knownSession && getPreAuthFilter().isUnknownClient(parsedPacket.getSenderId())) {
+                getMetrics().recordUnknownSender();
+                return;
+            }
+            if(PacketType.HELLO == parsedPacket.getType() && !checkHello(parsedPacket, source)) {
+                return;
+            }
+            if(null != knownSession
+                && PacketType.DATA_ACK != parsedPacket.getType()
+                && ReplayWindow.Result.ACCEPTED != knownSession.getReplayWindow().check(parsedPacket.getOrderCount()))
+            {
+                getMetrics().recordReplay();
+                return;
+            }
+
+            if(!getPacketParser().isSignatureValid(parsedPacket, getClientKeyProvider())) {
+                getMetrics().recordSignatureFailure();
+                handleInvalidSignature(sessionTable, parsedPacket, source);
+                return;
+            }
+
             if(PacketType.HELLO == parsedPacket.getType()) {
-                sendAcceptPacket(packet);
-                // TODO: add listener event here.
-                getLogger().info(String.format("Client with uuid [%s] has connected.", parsedPacket.getSenderId()));
+                final UUID clientId = parsedPacket.getSenderId();
+                sessionTable.open(clientId, source, getMetrics().registerPeer(clientId))
+                    .getReplayWindow().startAt(parsedPacket.getOrderCount());
+
+                final int capabilities = agreeCapabilities(source, parsedPacket.getCustomId());
+                final long acceptOrderCount = reserveOrderCount(source);
+                CompactSession compactSession = null;
+                if(0 != (capabilities & CompactHeader.CAPABILITY)) {
+                    compactSession = new CompactSession(compactSessionIds.incrementAndGet(), clientId,
+                        acceptOrderCount, parsedPacket.getOrderCount());
+                    agreeCompactSession(source, compactSession);
+                }
+                sendAcceptPacket(source, capabilities, acceptOrderCount, compactSession);
+                getLogger().info("Client with uuid [{}] has connected.", clientId);
+                notifyPacketHandler(parsedPacket);
+                fireConnect(clientId, source);
+                return;
             }
 
-            else if(PacketType.PING == parsedPacket.getType()) {
-                sendPangPacket(packet);
-                // TODO: add listener event here.
-                getLogger().trace(String.format("Client with uuid [%s] has pinged.", parsedPacket.getSenderId()));
+            if(null != knownSession) {
+                final ReplayWindow.Result replay = knownSession.getReplayWindow().update(parsedPacket.getOrderCount());
+                if(ReplayWindow.Result.ACCEPTED != replay) {
+                    getMetrics().recordReplay();
+                    // Acknowledge a duplicate again, but do not deliver it twice. A DATA_ACK too old to tell may never
+                    // have been delivered, so it is not acknowledged, and the sender's send fails rather than succeeds.
+                    if(PacketType.DATA_ACK == parsedPacket.getType() && ReplayWindow.Result.DUPLICATE == replay) {
+                        getReliableChannel().onData(parsedPacket, source);
+                    }
+                    return;
+                }
             }
 
-            else if(PacketType.PONG == parsedPacket.getType()) {
-                // TODO: add listener event here.
-                getLogger().trace(String.format("Client with uuid [%s] has ponged.", parsedPacket.getSenderId()));
+            if(PacketType.DISCONNECT == parsedPacket.getType()) {
+                sessionTable.remove(parsedPacket.getSenderId());
+                sendRejectPacket(source);
+                forgetAddress(source);
+                getMetrics().removePeer(parsedPacket.getSenderId());
+                getLogger().info("Client with uuid [{}] has disconnected.", parsedPacket.getSenderId());
+                notifyPacketHandler(parsedPacket);
+                fireDisconnect(parsedPacket.getSenderId(), source);
+                return;
             }
+
+            final ClientSession session = sessionTable.touch(parsedPacket.getSenderId(), source);
+            if(null == session) {
+                getMetrics().recordUnknownSender();
+                sendRejectPacket(source);
+                if(getLogger().isDebugEnabled()) {
+                    getLogger().debug("Rejected packet from unknown client [{}].", parsedPacket.getSenderId());
+                }
+                return;
+            }
+
+            notifyPacketHandler(parsedPacket);
+            router.route(session, parsedPacket, source);
+        } catch (UnknownSenderException e) {
+            getMetrics().recordUnknownSender();
+            getPreAuthFilter().recordUnknownClient(e.getSenderId());
+            if(getLogger().isDebugEnabled()) getLogger().debug("Dropped packet from unknown sender.", e);
         } catch (IOException | RuntimeException e) {
+            getMetrics().recordHandlerFailure();
             if(getLogger().isDebugEnabled()) getLogger().debug("Failed to handle packet.", e);
         }
     }
 
+    /**
+     * Drops a HELLO whose timestamp is out of date, and answers one without a valid cookie with a fresh cookie. Neither
+     * verifies the HELLO's signature or keeps any state.
+     *
+     * @return true if the HELLO may go on to be verified and accepted.
+     */
+    private boolean checkHello(final PacketView packet, final InetSocketAddress source) throws IOException {
+        final ByteBuffer payload = packet.getPayload();
+        final long now = System.currentTimeMillis();
+        if(Math.abs(now - HelloPayload.getTimestamp(payload)) > getHelloTimestampTolerance().toMillis()) {
+            getMetrics().recordFiltered();
+            if(getLogger().isDebugEnabled()) getLogger().debug("Dropped HELLO with an out of date timestamp.");
+            return false;
+        }
+
+        if(getHelloCookies().isValid(HelloPayload.getCookie(payload), source, packet.getSenderId(), now)) {
+            return true;
+        }
+
+        sendCookiePacket(source, getHelloCookies().issue(source, packet.getSenderId(), now));
+        return false;
+    }
+
+    private void onPing(final ClientSession session, final PacketView packet, final InetSocketAddress source)
+        throws IOException
+    {
+        session.markPangSent(System.nanoTime());
+        sendPangPacket(source);
+        if(getLogger().isTraceEnabled()) getLogger().trace("Client with uuid [{}] has pinged.", packet.getSenderId());
+        firePing(packet.getSenderId(), source);
+    }
+
+    private void onPong(final ClientSession session, final PacketView packet, final InetSocketAddress source) {
+        final long rttNanos = session.recordPong(System.nanoTime());
+        if(rttNanos >= 0) onRttSample(source, rttNanos);
+        if(getLogger().isTraceEnabled()) getLogger().trace("Client with uuid [{}] has ponged.", packet.getSenderId());
+        firePong(packet.getSenderId(), source);
+    }
+
+    private void handleInvalidSignature(
+        final SessionTable sessionTable,
+        final PacketView packet,
+        final InetSocketAddress source
+    ) throws IOException {
+        if(getLogger().isDebugEnabled()) getLogger().debug("Dropped packet with an invalid signature.");
+
+        // Only answer at the address we already know, so a forged packet cannot aim a BAD_ACK at anyone else.
+        if(PacketType.DATA_ACK != packet.getType()) return;
+        final ClientSession session = sessionTable.get(packet.getSenderId());
+        if(null != session && session.getAddress().equals(source)) {
+            getReliableChannel().sendBadAck(packet, source);
+        }
+    }
+
     // Send Packets
-    private void sendAcceptPacket(final DatagramPacket packet) throws IOException {
-        sendTimestampPacket(PacketType.ACCEPT, packet);
+    /**
+     * Sends the same DATA_NOACK message to every connected client, signing it once rather than once per client.
+     *
+     * @see #broadcast(ByteBuffer, Collection)
+     */
+    public BroadcastResult broadcast(final ByteBuffer payload) {
+        return broadcast(payload, getSessions());
     }
 
-    private void sendRejectPacket(final DatagramPacket packet) throws IOException {
-        sendTimestampPacket(PacketType.REJECT, packet);
+    /**
+     * Sends the same DATA_NOACK message to each of the sessions, signing it once rather than once per client. Server
+     * packets carry the server's id and are signed with its key, so the datagram is the same for every client; it is
+     * sent in the full format and uncompressed. A failed send is reported and the rest still go out. The buffer is not
+     * consumed.
+     *
+     * Broadcasts are numbered by a counter of their own, which clients learn in the ACCEPT and check with a replay
+     * window of their own, so they do not disturb the order counts of anything else sent to a recipient.
+     */
+    public BroadcastResult broadcast(final ByteBuffer payload, final Collection<ClientSession> recipients) {
+        final List<InetSocketAddress> destinations = new ArrayList<>(recipients.size());
+        final Map<InetSocketAddress, UUID> clientIds = new HashMap<>();
+        for(final ClientSession session : recipients) {
+            if(null == clientIds.putIfAbsent(session.getAddress(), session.getClientId())) {
+                destinations.add(session.getAddress());
+            }
+        }
+
+        final ImmutableBroadcastResult.Builder result = BroadcastResult.builder()
+            .withRecipientCount(destinations.size());
+        sendDataToAll(payload, destinations).forEach((destination, failure) -> {
+            if(getLogger().isDebugEnabled()) {
+                getLogger().debug("Failed to broadcast to [{}].", clientIds.get(destination), failure);
+            }
+            result.putFailures(clientIds.get(destination), failure);
+        });
+        return result.build();
     }
 
-    private void sendPangPacket(final DatagramPacket packet) throws IOException {
-        sendTimestampPacket(PacketType.PANG, packet);
+    /**
+     * The payload is the order count of the next broadcast, so the client only takes broadcasts sent after it joined.
+     *
+     * @param capabilities the capabilities agreed on with the client, echoed in the custom ID.
+     */
+    /**
+     * The payload is the next broadcast order count, followed by the compact session id if one was agreed.
+     */
+    private void sendAcceptPacket(
+        final InetSocketAddress destination,
+        final int capabilities,
+        final long orderCount,
+        final CompactSession compactSession
+    ) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(null == compactSession ? 8 : 12);
+        payload.putLong(getPacketParser().getNextBroadcastOrderCount());
+        if(null != compactSession) payload.putInt(compactSession.getSessionId());
+        sendControlPacket(PacketType.ACCEPT, destination, capabilities, orderCount, ByteSource.wrap(payload.array()));
+    }
+
+    /**
+     * Cookie packets do not take an order count, so that answering a HELLO leaves nothing behind for its source.
+     */
+    private void sendCookiePacket(final InetSocketAddress destination, final byte[] cookie) throws IOException {
+        sendControlPacket(PacketType.COOKIE, destination, 0, 0, ByteSource.wrap(cookie));
+    }
+
+    /**
+     * Reject packets do not keep an order counter for a destination that has none, so that answering strangers and
+     * clients that have left leaves nothing behind.
+     */
+    private void sendRejectPacket(final InetSocketAddress destination) throws IOException {
+        sendTimestampPacket(PacketType.REJECT, destination, 0, orderCountWithoutCounter(destination));
+    }
+
+    private void sendPangPacket(final InetSocketAddress destination) throws IOException {
+        sendTimestampPacket(PacketType.PANG, destination);
     }
 
     // Initialization and closing.
@@ -97,16 +465,53 @@ public abstract class UdpServer
 
         getLogger().info("Initializing server...");
 
+        getReliableChannel().start(this);
+        getCoalescer().start(this);
+        getStreamScheduler().start(this);
+        getAsyncWriter().start(this);
+        getPacer().ifPresent(p -> p.start(this));
+        getDispatcher().start(this);
+        getReorderer().start(this);
+        getReassembler().start(this);
+
         // Initialize Reader thread.
-        new Thread(getReaderThreadProvider().apply(this), "ServerReader").start();
+        startThread(getReaderThreadProvider().apply(this), "ServerReader");
 
-        // TODO: Initialize client sweeping thread.
+        // Initialize client sweeping thread.
+        getSessionTable().start(getThreadMode(), "ServerSessionSweeper");
+
+        // Initialize the remaining shards.
+        final InetSocketAddress address = new InetSocketAddress(getDestination(), getPort());
+        for(int i = 1; i < getShardCount(); i++) {
+            final SessionTable sessionTable = newSessionTable();
+            final ServerShard shard = new ServerShard(i,
+                ServerShard.openChannel(address, true),
+                sessionTable,
+                striped("ServerShard-" + i));
+            shards.add(shard);
+            shard.getDispatcher().start(this);
+
+            startThread(
+                new ChannelReaderThread(this, shard.getChannel(), shard.getDispatcher(),
+                    (packet, source) -> handlePacket(sessionTable, packet, source)),
+                "ServerReader-" + i);
+            sessionTable.start(getThreadMode(), "ServerSessionSweeper-" + i);
+        }
 
         initiated.set(true);
 
         getLogger().info("Server initialized.");
     }
 
+    @Override
+    public void close() throws IOException {
+        for(final ServerShard shard : shards) {
+            shard.close();
+        }
+        getSessionTable().close();
+        super.close();
+    }
+
     public static ImmutableUdpServer.Builder builder() {
         return ImmutableUdpServer.builder();
     }
@@ -0,0 +1,53 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncWriterTest {
+    @Test
+    void aQueuedSendFailsAtItsDeadlineWhileTheWriterIsBusy() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final AtomicBoolean written = new AtomicBoolean(false);
+
+            try (final AsyncWriter writer = new AsyncWriter(4, 50, TimeUnit.MILLISECONDS)) {
+                final CompletableFuture<Void> busy = writer.submit(() -> {
+                    await(blocked);
+                    return CompletableFuture.completedFuture(null);
+                });
+                final CompletableFuture<Void> queued = writer.submit(() -> {
+                    written.set(true);
+                    return CompletableFuture.completedFuture(null);
+                });
+
+                final ExecutionException failure = assertThrows(ExecutionException.class, queued::get);
+                assertTrue(failure.getCause() instanceof TimeoutException, failure::toString);
+                assertFalse(busy.isDone(), "The writer is still busy with the first send.");
+
+                blocked.countDown();
+                busy.get();
+                assertFalse(written.get(), "A send that timed out is never written.");
+            }
+        });
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class BufferPoolTest {
+    @Test
+    void tryAcquireRefusesOnceEveryBufferIsOut() {
+        final BufferPool pool = new BufferPool(16, 1, 2, false);
+
+        final ByteBuffer first = pool.tryAcquire();
+        final ByteBuffer second = pool.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(pool.tryAcquire());
+        assertEquals(2, pool.getOutstandingCount());
+
+        pool.release(first);
+        assertSame(first, pool.tryAcquire(), "A released buffer is handed out again.");
+        assertNull(pool.tryAcquire());
+    }
+
+    @Test
+    void acquireIgnoresTheCapButStillCounts() {
+        final BufferPool pool = new BufferPool(16, 1, 1, false);
+
+        final ByteBuffer buffer = pool.acquire();
+        assertNotNull(pool.acquire());
+        assertEquals(2, pool.getOutstandingCount());
+        assertNull(pool.tryAcquire());
+
+        pool.release(buffer);
+        assertEquals(1, pool.getOutstandingCount());
+    }
+
+    @Test
+    void foreignBuffersAreNotCounted() {
+        final BufferPool pool = new BufferPool(16, 1, 1, false);
+
+        assertNotNull(pool.tryAcquire());
+        pool.release(ByteBuffer.allocate(8));
+        assertEquals(1, pool.getOutstandingCount());
+        assertEquals(0, pool.getPooledCount());
+    }
+}
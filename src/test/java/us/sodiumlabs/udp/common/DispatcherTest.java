@@ -0,0 +1,29 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DispatcherTest {
+    @Test
+    void fullPacketStartingWithTheMarkerIsNotTakenForCompact() {
+        final UUID senderId = UUID.randomUUID();
+        final Packet packet = new PacketParser(LoggerFactory.getLogger(DispatcherTest.class)).createPacket(
+            PacketType.DATA_ACK, senderId, 1, ByteSource.wrap(new byte[32]), 0, 0,
+            new SecretKeySpec("key".getBytes(), PacketParser.HMAC_SHA_256));
+        final ByteBuffer datagram = ByteBuffer.allocate(Packet.HEADER_BYTE_SIZE + packet.getLength());
+        packet.writeTo(datagram);
+        datagram.flip();
+        datagram.put(0, (byte) CompactHeader.MARKER);
+
+        assertEquals(CompactHeader.fold(senderId.getMostSignificantBits(), senderId.getLeastSignificantBits()),
+            Dispatcher.senderKey(datagram, null));
+        assertEquals(PacketType.DATA_ACK, PacketView.peekType(datagram, false));
+    }
+}
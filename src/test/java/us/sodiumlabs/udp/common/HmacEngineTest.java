@@ -0,0 +1,42 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HmacEngineTest {
+    private static final SecretKeySpec OWN_KEY = new SecretKeySpec("own".getBytes(), PacketParser.HMAC_SHA_256);
+
+    private static final SecretKeySpec PEER_KEY = new SecretKeySpec("peer".getBytes(), PacketParser.HMAC_SHA_256);
+
+    @Test
+    void verifiesWithTheProvidersKey() throws Exception {
+        final HmacEngine engine = new HmacEngine(16, 1, TimeUnit.MINUTES);
+        final UUID id = UUID.randomUUID();
+        final ByteBuffer region = ByteBuffer.wrap("region".getBytes());
+
+        final byte[] signature = engine.sign(id, PEER_KEY, region);
+
+        assertTrue(engine.verify(id, u -> PEER_KEY, region, ByteBuffer.wrap(signature)));
+    }
+
+    @Test
+    void ownSignatureDoesNotVerifyUnderAnotherKey() throws Exception {
+        final HmacEngine engine = new HmacEngine(16, 1, TimeUnit.MINUTES);
+        final UUID ownId = UUID.randomUUID();
+        final ByteBuffer region = ByteBuffer.wrap("reflected".getBytes());
+
+        // Sign as ourselves, then check a packet claiming our id with the key the provider has for it.
+        final byte[] signature = engine.sign(ownId, OWN_KEY, region);
+
+        assertFalse(engine.verify(ownId, u -> PEER_KEY, region, ByteBuffer.wrap(signature)));
+        engine.sign(ownId, OWN_KEY, region);
+        assertFalse(engine.verify(ownId, u -> PEER_KEY, region, ByteBuffer.wrap(signature)));
+    }
+}
@@ -0,0 +1,85 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PacerTest {
+    private static final InetSocketAddress PEER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 9);
+
+    @Test
+    void tryReserveRefusesWhileTheBucketIsInDebt() {
+        final Pacer pacer = Pacer.fixedRate(1_000, 100);
+        final long now = System.nanoTime();
+
+        assertTrue(pacer.tryReserve(PEER, 100, now));
+        assertTrue(pacer.tryReserve(PEER, 50, now), "An empty bucket is not yet in debt.");
+        assertFalse(pacer.tryReserve(PEER, 1, now));
+        assertTrue(pacer.tryReserve(PEER, 1, now + TimeUnit.MILLISECONDS.toNanos(50)));
+    }
+
+    @Test
+    void deferredDatagramsAreSentInOrderAtThePeersRate() throws Exception {
+        try (final UdpClient owner = owner(); final Pacer pacer = Pacer.fixedRate(10_000, 1_000)) {
+            pacer.start(owner);
+            final BlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+            final long start = System.nanoTime();
+            pacer.reserve(PEER, 1_000, start);
+
+            for(int i = 0; i < 3; i++) {
+                final int index = i;
+                assertTrue(pacer.defer(PEER, 500, () -> sent.add(index)));
+            }
+            assertFalse(pacer.tryReserve(PEER, 1, System.nanoTime()), "Nothing may jump the queue.");
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for(final int expected : Arrays.asList(0, 1, 2)) {
+                    assertEquals(expected, sent.take().intValue());
+                }
+            });
+            // The second and third datagrams each wait for 500 bytes at 10,000 bytes a second.
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis >= 90, () -> "Deferred datagrams took only " + elapsedMillis + " ms.");
+            assertEquals(0, pacer.getQueuedCount(PEER));
+        }
+    }
+
+    @Test
+    void fullQueueDropsAndCounts() throws Exception {
+        try (final UdpClient owner = owner();
+             final Pacer pacer = new Pacer(1, 1, now -> new AimdController(1, 1, 1, 1, now))) {
+            pacer.start(owner);
+            pacer.reserve(PEER, 1_000, System.nanoTime());
+
+            assertTrue(pacer.defer(PEER, 1, () -> {}));
+            assertFalse(pacer.defer(PEER, 1, () -> {}));
+            assertEquals(1, pacer.getQueuedCount(PEER));
+            assertEquals(1, owner.snapshotMetrics().getPacingDrops());
+        }
+    }
+
+    private static UdpClient owner() {
+        final SecretKeySpec key = new SecretKeySpec("key".getBytes(), PacketParser.HMAC_SHA_256);
+        return UdpClient.builder()
+            .withDestination(InetAddress.getLoopbackAddress())
+            .withPort(PEER.getPort())
+            .withId(UUID.randomUUID())
+            .withServerKey(key)
+            .withSecretKey(key)
+            .build();
+    }
+}
@@ -0,0 +1,107 @@
+package us.sodiumlabs.udp.common;
+
+import com.google.common.io.ByteSource;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import us.sodiumlabs.udp.client.UdpClient;
+import us.sodiumlabs.udp.server.UdpServer;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class RejectTest {
+    private static final SecretKeySpec CLIENT_KEY = new SecretKeySpec("client".getBytes(), PacketParser.HMAC_SHA_256);
+
+    private static final SecretKeySpec SERVER_KEY = new SecretKeySpec("server".getBytes(), PacketParser.HMAC_SHA_256);
+
+    @Test
+    void disconnectLeavesNoOrderCounter() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19918;
+            final UUID clientId = UUID.randomUUID();
+            final CountDownLatch rejected = new CountDownLatch(1);
+
+            try (final UdpServer server = server(port, clientId);
+                 final UdpClient client = UdpClient.builder()
+                    .withDestination(InetAddress.getLoopbackAddress())
+                    .withPort(port)
+                    .withId(clientId)
+                    .withServerKey(SERVER_KEY)
+                    .withSecretKey(CLIENT_KEY)
+                    .addPacketListeners(new PacketListener<UdpClient>() {
+                        @Override
+                        public void onDisconnect(final UdpClient c, final UUID peerId, final InetSocketAddress source) {
+                            rejected.countDown();
+                        }
+                    })
+                    .build()
+            ) {
+                server.initializeServer();
+                client.initiateConnection();
+                assertEquals(1, server.getPacketParser().getPeerCount());
+
+                // The client has no way to disconnect yet, so send its DISCONNECT from its socket by hand.
+                final InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+                final long orderCount = client.getPacketParser().nextOrderCount(serverAddress);
+                send(client.getSocket(), port, client.getPacketParser().createPacket(PacketType.DISCONNECT, clientId,
+                    orderCount, ByteSource.wrap("bye".getBytes()), 0, 0, CLIENT_KEY));
+
+                // The client only takes the REJECT if it is numbered after everything else the server sent it.
+                rejected.await();
+                while (0 != server.getPacketParser().getPeerCount()) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+                assertEquals(0, server.getSessions().size());
+            }
+        });
+    }
+
+    @Test
+    void rejectingAStrangerLeavesNoOrderCounter() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), ()-> {
+            final int port = 19919;
+            final UUID clientId = UUID.randomUUID();
+
+            try (final UdpServer server = server(port, clientId); final DatagramSocket socket = new DatagramSocket()) {
+                server.initializeServer();
+
+                // A signed packet from a client without a session is answered with a REJECT.
+                final PacketParser parser = new PacketParser(LoggerFactory.getLogger(RejectTest.class));
+                send(socket, port, parser.createPacket(PacketType.DATA_NOACK, clientId, 1,
+                    ByteSource.wrap("hello".getBytes()), 0, 0, CLIENT_KEY));
+
+                final DatagramPacket reply = new DatagramPacket(new byte[1024], 1024);
+                socket.receive(reply);
+                assertEquals(PacketType.REJECT,
+                    PacketView.peekType(ByteBuffer.wrap(reply.getData(), 0, reply.getLength()), false));
+                assertEquals(0, server.getPacketParser().getPeerCount());
+            }
+        });
+    }
+
+    private static UdpServer server(final int port, final UUID clientId) {
+        return UdpServer.builder()
+            .withClientKeyProvider(u -> u.equals(clientId) ? CLIENT_KEY : null)
+            .withSecretKey(SERVER_KEY)
+            .withPort(port)
+            .withId(UUID.randomUUID())
+            .build();
+    }
+
+    private static void send(final DatagramSocket socket, final int port, final Packet packet) throws Exception {
+        final ByteBuffer datagram = ByteBuffer.allocate(Packet.HEADER_BYTE_SIZE + packet.getLength());
+        packet.writeTo(datagram);
+        socket.send(new DatagramPacket(datagram.array(), datagram.position(), InetAddress.getLoopbackAddress(), port));
+    }
+}
@@ -0,0 +1,61 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReorderBufferTest {
+    private static final long HOLE_TIMEOUT = 1_000;
+
+    @Test
+    void reliableBufferRefusesMessagesTooFarAhead() {
+        final List<Integer> delivered = new ArrayList<>();
+        final ReorderBuffer buffer = reliable(delivered);
+
+        assertTrue(buffer.offer(0, message(0), 0, 0));
+        assertFalse(buffer.offer(9, message(9), 0, 0), "A message past the ring should be refused.");
+        assertTrue(buffer.offer(2, message(2), 0, 0));
+        assertTrue(buffer.offer(1, message(1), 0, 0));
+        assertTrue(buffer.offer(9, message(9), 0, 0), "The retransmission fits once the stream catches up.");
+
+        assertEquals(Arrays.asList(0, 1, 2), delivered);
+        assertEquals(1, buffer.getBufferedCount());
+    }
+
+    @Test
+    void reliableBufferRefusesMessagesItHasSkipped() {
+        final List<Integer> delivered = new ArrayList<>();
+        final ReorderBuffer buffer = reliable(delivered);
+
+        assertTrue(buffer.offer(1, message(1), 0, 0));
+        buffer.skipExpired(HOLE_TIMEOUT);
+        assertFalse(buffer.offer(0, message(0), 0, HOLE_TIMEOUT), "A late message must not be acknowledged.");
+
+        assertEquals(Arrays.asList(1), delivered);
+    }
+
+    @Test
+    void heldMessageIsAcceptedAgain() {
+        final List<Integer> delivered = new ArrayList<>();
+        final ReorderBuffer buffer = reliable(delivered);
+
+        assertTrue(buffer.offer(3, message(3), 0, 0));
+        assertTrue(buffer.offer(3, message(3), 0, 0), "A message already held may be acknowledged again.");
+        assertEquals(1, buffer.getBufferedCount());
+    }
+
+    private static ReorderBuffer reliable(final List<Integer> delivered) {
+        return new ReorderBuffer(8, HOLE_TIMEOUT, true, (m, f) -> delivered.add(m.getInt()), new UdpMetrics());
+    }
+
+    private static ByteBuffer message(final int index) {
+        return (ByteBuffer) ByteBuffer.allocate(4).putInt(index).flip();
+    }
+}
@@ -0,0 +1,116 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static us.sodiumlabs.udp.common.ReplayWindow.Result.ACCEPTED;
+import static us.sodiumlabs.udp.common.ReplayWindow.Result.DUPLICATE;
+import static us.sodiumlabs.udp.common.ReplayWindow.Result.TOO_OLD;
+
+public class ReplayWindowTest {
+    @Test
+    void marksEachOrderCountOnce() {
+        final ReplayWindow window = new ReplayWindow();
+
+        assertEquals(ACCEPTED, window.update(10));
+        assertEquals(DUPLICATE, window.update(10));
+        assertEquals(ACCEPTED, window.update(5));
+        assertEquals(DUPLICATE, window.check(5));
+        assertEquals(ACCEPTED, window.check(6));
+        assertEquals(ACCEPTED, window.update(70));
+        assertEquals(DUPLICATE, window.update(10));
+        assertEquals(70, window.getHighest());
+    }
+
+    @Test
+    void checkDoesNotMark() {
+        final ReplayWindow window = new ReplayWindow();
+
+        assertEquals(ACCEPTED, window.check(3));
+        assertEquals(ACCEPTED, window.check(3));
+        assertEquals(-1, window.getHighest());
+    }
+
+    @Test
+    void orderCountsBelowTheWindowAreTooOld() {
+        final ReplayWindow window = new ReplayWindow();
+        final long highest = 10 * ReplayWindow.WINDOW_SIZE;
+
+        assertEquals(ACCEPTED, window.update(highest));
+        assertEquals(ACCEPTED, window.update(highest - ReplayWindow.WINDOW_SIZE + 1));
+        assertEquals(TOO_OLD, window.update(highest - ReplayWindow.WINDOW_SIZE));
+        assertEquals(TOO_OLD, window.check(0));
+        assertEquals(TOO_OLD, window.check(-1));
+    }
+
+    @Test
+    void slidingClearsTheReusedWords() {
+        final ReplayWindow window = new ReplayWindow();
+
+        // Mark every order count in the window, then slide it forward around the ring more than once.
+        long previous = ReplayWindow.WINDOW_SIZE - 1;
+        for(long i = 0; i <= previous; i++) {
+            assertEquals(ACCEPTED, window.update(i));
+        }
+        for(long step = 1; step <= 3; step++) {
+            final long highest = previous + ReplayWindow.WINDOW_SIZE / 2 + 7;
+            assertEquals(ACCEPTED, window.update(highest));
+            for(long i = previous + 1; i < highest; i++) {
+                assertEquals(ACCEPTED, window.check(i), "Order count " + i + " should not have been seen.");
+            }
+            for(long i = highest - ReplayWindow.WINDOW_SIZE + 1; i <= previous; i++) {
+                assertEquals(DUPLICATE, window.check(i), "Order count " + i + " should have been seen.");
+            }
+            assertEquals(TOO_OLD, window.check(highest - ReplayWindow.WINDOW_SIZE));
+
+            for(long i = previous + 1; i < highest; i++) {
+                window.update(i);
+            }
+            previous = highest;
+        }
+    }
+
+    @Test
+    void wrapsPastASingleWord() {
+        final ReplayWindow window = new ReplayWindow();
+
+        assertEquals(ACCEPTED, window.update(63));
+        assertEquals(ACCEPTED, window.update(64));
+        assertEquals(ACCEPTED, window.update(65));
+        assertEquals(DUPLICATE, window.update(63));
+        assertEquals(DUPLICATE, window.update(64));
+        assertEquals(ACCEPTED, window.update(62));
+    }
+
+    @Test
+    void unmarkedOrderCountIsAcceptedAgain() {
+        final ReplayWindow window = new ReplayWindow();
+
+        assertEquals(ACCEPTED, window.update(100));
+        assertEquals(ACCEPTED, window.update(101));
+        window.unmark(100);
+        assertEquals(ACCEPTED, window.update(100));
+        assertEquals(DUPLICATE, window.update(101));
+
+        window.unmark(102);
+        assertEquals(101, window.getHighest());
+    }
+
+    @Test
+    void startAtMarksEverythingUpToTheOrderCount() {
+        final ReplayWindow window = new ReplayWindow();
+        final long start = 1_000_000_007L;
+
+        window.startAt(start);
+
+        assertEquals(start, window.getHighest());
+        assertEquals(DUPLICATE, window.check(start));
+        assertEquals(DUPLICATE, window.check(start - 1));
+        assertEquals(DUPLICATE, window.check(start - start % 64));
+        assertEquals(DUPLICATE, window.check(start - ReplayWindow.WINDOW_SIZE + 1));
+        assertEquals(TOO_OLD, window.check(start - ReplayWindow.WINDOW_SIZE));
+        assertEquals(ACCEPTED, window.update(start + 1));
+        assertEquals(ACCEPTED, window.update(start + 64));
+        assertEquals(ACCEPTED, window.check(start + 2));
+    }
+}
@@ -0,0 +1,32 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RttHistogramTest {
+    @Test
+    void bucketsCoverEveryValueUpToTheCap() {
+        final long top = RttHistogram.highestValueAt(RttHistogram.BUCKET_COUNT - 1);
+        assertEquals((1L << (RttHistogram.MAX_EXPONENT + 1)) - 1, top);
+        assertEquals(RttHistogram.BUCKET_COUNT - 1, RttHistogram.indexOf(top));
+
+        for(final long value : new long[] { 0, 31, 32, 1_000, 1_000_000, 1L << RttHistogram.MAX_EXPONENT }) {
+            final int index = RttHistogram.indexOf(value);
+            assertTrue(RttHistogram.highestValueAt(index) >= value);
+            assertTrue(0 == index || RttHistogram.highestValueAt(index - 1) < value);
+        }
+    }
+
+    @Test
+    void longerValuesAreClampedIntoTheTopBucket() {
+        final RttHistogram histogram = new RttHistogram();
+        histogram.record(1L << 50);
+        histogram.record(1L << (RttHistogram.MAX_EXPONENT + 1));
+
+        assertEquals(RttHistogram.BUCKET_COUNT - 1, RttHistogram.indexOf(Long.MAX_VALUE));
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(RttHistogram.highestValueAt(RttHistogram.BUCKET_COUNT - 1), snapshot.getMax());
+    }
+}
@@ -0,0 +1,119 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+import us.sodiumlabs.udp.client.UdpClient;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class StripedDispatcherTest {
+    @Test
+    void priorityShedsTheLowestButKeepsArrivalOrder() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<String> handled = new CopyOnWriteArrayList<>();
+        final List<String> shed = new CopyOnWriteArrayList<>();
+
+        try (final UdpClient owner = owner();
+             final StripedDispatcher dispatcher =
+                 new StripedDispatcher(1, 4, SheddingPolicy.PRIORITY, "TestLane", ThreadMode.PLATFORM)
+        ) {
+            dispatcher.start(owner);
+            final CountDownLatch running = new CountDownLatch(1);
+            dispatcher.dispatch(0, PacketType.DATA_NOACK, () -> {
+                running.countDown();
+                await(blocked);
+            }, () -> {});
+            running.await();
+
+            dispatch(dispatcher, PacketType.DATA_NOACK, "a", handled, shed);
+            dispatch(dispatcher, PacketType.PING, "b", handled, shed);
+            dispatch(dispatcher, PacketType.DATA_NOACK, "c", handled, shed);
+            dispatch(dispatcher, PacketType.DATA_ACK, "d", handled, shed);
+            dispatch(dispatcher, PacketType.DISCONNECT, "e", handled, shed);
+            dispatch(dispatcher, PacketType.DATA_NOACK, "f", handled, shed);
+            assertEquals(Arrays.asList("a", "f"), shed);
+
+            blocked.countDown();
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                while (handled.size() < 4) {
+                    Thread.sleep(5);
+                }
+            });
+            assertEquals(Arrays.asList("b", "c", "d", "e"), handled);
+
+            final MetricsSnapshot snapshot = owner.snapshotMetrics();
+            assertEquals(2L, (long) snapshot.getShedPackets().get(PacketType.DATA_NOACK));
+            assertEquals(1L, snapshot.getEvictedPackets());
+        }
+    }
+
+    @Test
+    void aFullLaneDoesNotShedAnother() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<String> handled = new CopyOnWriteArrayList<>();
+        final List<String> shed = new CopyOnWriteArrayList<>();
+
+        try (final StripedDispatcher dispatcher =
+                 new StripedDispatcher(2, 1, SheddingPolicy.DROP_NEWEST, "TestLane", ThreadMode.PLATFORM)
+        ) {
+            final long busy = 0;
+            long idle = 1;
+            while (dispatcher.laneFor(idle) == dispatcher.laneFor(busy)) {
+                idle++;
+            }
+
+            final CountDownLatch running = new CountDownLatch(1);
+            dispatcher.dispatch(busy, PacketType.DATA_NOACK, () -> {
+                running.countDown();
+                await(blocked);
+            }, () -> {});
+            running.await();
+            dispatcher.dispatch(busy, PacketType.DATA_NOACK, () -> handled.add("queued"), () -> shed.add("queued"));
+            dispatcher.dispatch(busy, PacketType.DATA_NOACK, () -> handled.add("over"), () -> shed.add("over"));
+
+            final CountDownLatch other = new CountDownLatch(1);
+            dispatcher.dispatch(idle, PacketType.DATA_NOACK, other::countDown, () -> shed.add("other"));
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> other.await());
+            assertEquals(Arrays.asList("over"), shed);
+            blocked.countDown();
+        }
+    }
+
+    private static void dispatch(
+        final StripedDispatcher dispatcher,
+        final PacketType type,
+        final String name,
+        final List<String> handled,
+        final List<String> shed
+    ) {
+        dispatcher.dispatch(0, type, () -> handled.add(name), () -> shed.add(name));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static UdpClient owner() {
+        final SecretKeySpec key = new SecretKeySpec("key".getBytes(), PacketParser.HMAC_SHA_256);
+        return UdpClient.builder()
+            .withDestination(InetAddress.getLoopbackAddress())
+            .withPort(9)
+            .withId(UUID.randomUUID())
+            .withServerKey(key)
+            .withSecretKey(key)
+            .build();
+    }
+}
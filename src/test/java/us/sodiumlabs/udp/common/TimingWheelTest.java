@@ -0,0 +1,66 @@
+package us.sodiumlabs.udp.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimingWheelTest {
+    @Test
+    void timeoutsCascadeDownFromEveryLevel() {
+        final TimingWheel<String> wheel = new TimingWheel<>(1, TimeUnit.NANOSECONDS, 0);
+        // One tick per nanosecond: level 0 spans 64 ticks, level 1 4,096, level 2 262,144 and level 3 16,777,216.
+        wheel.schedule("level 0", 10);
+        wheel.schedule("level 1", 100);
+        wheel.schedule("level 2", 5_000);
+        wheel.schedule("level 3", 300_000);
+
+        assertEquals(Collections.emptyList(), advance(wheel, 9));
+        assertEquals(Arrays.asList("level 0"), advance(wheel, 10));
+        assertEquals(Collections.emptyList(), advance(wheel, 99));
+        assertEquals(Arrays.asList("level 1"), advance(wheel, 100));
+        assertEquals(Collections.emptyList(), advance(wheel, 4_999));
+        assertEquals(Arrays.asList("level 2"), advance(wheel, 5_000));
+        assertEquals(Collections.emptyList(), advance(wheel, 299_999));
+        assertEquals(Arrays.asList("level 3"), advance(wheel, 300_000));
+    }
+
+    @Test
+    void timeoutsBeyondTheTopLevelWaitInTheOverflowList() {
+        final TimingWheel<String> wheel = new TimingWheel<>(1, TimeUnit.NANOSECONDS, 0);
+        final long topLevelSpan = 1L << 24;
+        wheel.schedule("overflow", topLevelSpan + 5);
+        wheel.schedule("far overflow", 2 * topLevelSpan + 7);
+
+        assertEquals(Collections.emptyList(), advance(wheel, topLevelSpan + 4));
+        assertEquals(Arrays.asList("overflow"), advance(wheel, topLevelSpan + 5));
+        assertEquals(Collections.emptyList(), advance(wheel, 2 * topLevelSpan + 6));
+        assertEquals(Arrays.asList("far overflow"), advance(wheel, 2 * topLevelSpan + 7));
+    }
+
+    @Test
+    void aTimeoutCancelledAfterCascadingNeverFires() {
+        final TimingWheel<String> wheel = new TimingWheel<>(1, TimeUnit.NANOSECONDS, 0);
+        final TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 100);
+        wheel.schedule("kept", 100);
+
+        // Tick 64 moves both timeouts from level 1 down to level 0.
+        assertEquals(Collections.emptyList(), advance(wheel, 64));
+        cancelled.cancel();
+
+        assertEquals(Arrays.asList("kept"), advance(wheel, 200));
+        assertTrue(cancelled.isCancelled());
+    }
+
+    private static List<String> advance(final TimingWheel<String> wheel, final long nowNanos) {
+        final List<String> fired = new ArrayList<>();
+        wheel.advance(nowNanos, timeout -> fired.add(timeout.getValue()));
+        return fired;
+    }
+}
@@ -0,0 +1,71 @@
+package us.sodiumlabs.udp.server;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionTableTest {
+    private static final InetSocketAddress FIRST = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40_001);
+
+    private static final InetSocketAddress SECOND = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40_002);
+
+    private final List<ClientSession> expired = new ArrayList<>();
+
+    private final List<InetSocketAddress> abandoned = new ArrayList<>();
+
+    private final SessionTable table = new SessionTable(Duration.ofSeconds(1), Duration.ofMillis(10),
+        LoggerFactory.getLogger(SessionTableTest.class), expired::add, (session, address) -> abandoned.add(address));
+
+    @Test
+    void movingAbandonsTheOldAddress() {
+        final UUID clientId = UUID.randomUUID();
+        final ClientSession session = table.open(clientId, FIRST);
+
+        assertSame(session, table.touch(clientId, FIRST));
+        assertTrue(abandoned.isEmpty());
+
+        assertSame(session, table.touch(clientId, SECOND));
+        assertEquals(SECOND, session.getAddress());
+        assertEquals(1, abandoned.size());
+        assertEquals(FIRST, abandoned.get(0));
+    }
+
+    @Test
+    void reopeningFromAnotherAddressAbandonsTheOldOne() {
+        final UUID clientId = UUID.randomUUID();
+        table.open(clientId, FIRST);
+        table.open(clientId, FIRST);
+        assertTrue(abandoned.isEmpty());
+
+        table.open(clientId, SECOND);
+        assertEquals(1, abandoned.size());
+        assertEquals(FIRST, abandoned.get(0));
+    }
+
+    @Test
+    void expiredSessionIsReportedOnceAtItsLatestAddress() {
+        final UUID clientId = UUID.randomUUID();
+        final ClientSession session = table.open(clientId, FIRST);
+        table.touch(clientId, SECOND);
+
+        table.sweep(System.nanoTime() + Duration.ofSeconds(2).toNanos());
+        table.sweep(System.nanoTime() + Duration.ofSeconds(4).toNanos());
+
+        assertEquals(1, expired.size());
+        assertSame(session, expired.get(0));
+        assertEquals(SECOND, expired.get(0).getAddress());
+        assertNull(table.get(clientId));
+        assertEquals(0, table.size());
+    }
+}